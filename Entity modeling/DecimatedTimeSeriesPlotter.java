@@ -0,0 +1,214 @@
+package desmoj.demo.vc_model;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import desmoj.extensions.experimentation.ui.GraphicalObserverContext;
+
+/**
+ * Plots time series with a bounded amount of work and memory per series.
+ *
+ * Every series is recorded into a fixed number of buckets of equal width in
+ * simulation time, each keeping the minimum and maximum value seen within
+ * it. When the simulation time passes the last bucket, neighbouring buckets
+ * are merged pairwise and the bucket width doubles. The plot shows the
+ * min/max envelope of each bucket, so spikes stay visible however long the
+ * run gets.
+ */
+public class DecimatedTimeSeriesPlotter extends SnapshotPlotter {
+
+	/**
+	 * The values of a series.
+	 */
+	public interface Source {
+
+		/**
+		 * Returns the current value, called on the simulation thread.
+		 */
+		double value();
+	}
+
+	/** Colors of the series, in the order they were added */
+	private static final Color[] COLORS = { Color.BLUE, Color.RED, Color.GREEN.darker(), Color.MAGENTA };
+
+	/**
+	 * The snapshot of all series.
+	 */
+	private static class Snapshot {
+		final double bucketWidth;
+		final int buckets;
+		final double[][] minima;
+		final double[][] maxima;
+
+		Snapshot(double bucketWidth, int buckets, double[][] minima, double[][] maxima) {
+			this.bucketWidth = bucketWidth;
+			this.buckets = buckets;
+			this.minima = minima;
+			this.maxima = maxima;
+		}
+	}
+
+	/** Number of buckets per series */
+	private final int capacity;
+
+	/** Names and sources of the series */
+	private final List<String> names = new ArrayList<String>();
+	private final List<Source> sources = new ArrayList<Source>();
+
+	/** Bucket minima and maxima per series, NaN for empty buckets */
+	private double[][] minima = new double[0][];
+	private double[][] maxima = new double[0][];
+
+	/** Width of a bucket in simulation time */
+	private double bucketWidth;
+
+	/** Number of buckets in use */
+	private int buckets = 0;
+
+	/**
+	 * Creates a plotter.
+	 *
+	 * @param title String  title of the plot
+	 * @param context GraphicalObserverContext  the context to show it in
+	 * @param initialBucketWidth double  bucket width in simulation time until
+	 *            the buckets are full for the first time
+	 * @param width int  width of the plot, also the number of buckets
+	 * @param height int  height of the plot
+	 * @param x int  horizontal position of the plot
+	 * @param y int  vertical position of the plot
+	 */
+	public DecimatedTimeSeriesPlotter(String title, GraphicalObserverContext context, double initialBucketWidth,
+			int width, int height, int x, int y) {
+		super(title, context, 25, width, height, x, y);
+		this.capacity = width;
+		this.bucketWidth = initialBucketWidth;
+	}
+
+	/**
+	 * Adds a series to plot. Series have to be added before the simulation
+	 * starts.
+	 *
+	 * @param name String  name of the series
+	 * @param source Source  provides the values of the series
+	 */
+	public void addSeries(String name, Source source) {
+		names.add(name);
+		sources.add(source);
+		minima = Arrays.copyOf(minima, sources.size());
+		maxima = Arrays.copyOf(maxima, sources.size());
+		minima[sources.size() - 1] = empty();
+		maxima[sources.size() - 1] = empty();
+	}
+
+	protected void record(double time) {
+		int bucket = (int) (time / bucketWidth);
+		while (bucket >= capacity) {
+			merge();
+			bucket = (int) (time / bucketWidth);
+		}
+		buckets = Math.max(buckets, bucket + 1);
+		for (int i = 0; i < sources.size(); i++) {
+			double value = sources.get(i).value();
+			double[] min = minima[i];
+			double[] max = maxima[i];
+			if (!(min[bucket] <= value)) {
+				min[bucket] = value;
+			}
+			if (!(max[bucket] >= value)) {
+				max[bucket] = value;
+			}
+		}
+	}
+
+	/**
+	 * Merges neighbouring buckets pairwise and doubles the bucket width.
+	 */
+	private void merge() {
+		for (int i = 0; i < sources.size(); i++) {
+			double[] min = minima[i];
+			double[] max = maxima[i];
+			for (int b = 0; b < capacity / 2; b++) {
+				min[b] = lower(min[2 * b], min[2 * b + 1]);
+				max[b] = upper(max[2 * b], max[2 * b + 1]);
+			}
+			Arrays.fill(min, capacity / 2, capacity, Double.NaN);
+			Arrays.fill(max, capacity / 2, capacity, Double.NaN);
+		}
+		bucketWidth *= 2;
+		buckets = (buckets + 1) / 2;
+	}
+
+	protected Object snapshot() {
+		double[][] min = new double[sources.size()][];
+		double[][] max = new double[sources.size()][];
+		for (int i = 0; i < sources.size(); i++) {
+			min[i] = Arrays.copyOf(minima[i], buckets);
+			max[i] = Arrays.copyOf(maxima[i], buckets);
+		}
+		return new Snapshot(bucketWidth, buckets, min, max);
+	}
+
+	protected void paintSnapshot(Graphics2D g, Object data, int width, int height) {
+		Snapshot s = (Snapshot) data;
+		double top = Double.NEGATIVE_INFINITY;
+		for (double[] max : s.maxima) {
+			for (double value : max) {
+				top = upper(top, value);
+			}
+		}
+		if (s.buckets == 0 || !(top > 0)) {
+			return;
+		}
+		int left = 40;
+		int bottom = height - 20;
+		int plotHeight = bottom - 24;
+		double xScale = (width - left - 8) / (double) capacity;
+
+		g.setColor(Color.GRAY);
+		g.drawLine(left, bottom, width - 8, bottom);
+		g.drawLine(left, bottom, left, 24);
+		g.drawString(String.valueOf((long) top), 4, 30);
+		g.drawString(String.valueOf((long) (s.bucketWidth * s.buckets)), left + (int) (s.buckets * xScale) - 20,
+				height - 4);
+
+		for (int i = 0; i < s.minima.length; i++) {
+			g.setColor(COLORS[i % COLORS.length]);
+			g.drawString(names.get(i), left + 8 + 100 * i, 40);
+			for (int b = 0; b < s.buckets; b++) {
+				if (Double.isNaN(s.minima[i][b])) {
+					continue;
+				}
+				int x = left + (int) (b * xScale);
+				int y1 = bottom - (int) (s.minima[i][b] / top * plotHeight);
+				int y2 = bottom - (int) (s.maxima[i][b] / top * plotHeight);
+				g.drawLine(x, y1, x, y2);
+			}
+		}
+	}
+
+	/**
+	 * Returns an array of empty buckets.
+	 */
+	private double[] empty() {
+		double[] buckets = new double[capacity];
+		Arrays.fill(buckets, Double.NaN);
+		return buckets;
+	}
+
+	/**
+	 * Returns the smaller value, ignoring NaN.
+	 */
+	private static double lower(double a, double b) {
+		return Double.isNaN(a) ? b : Double.isNaN(b) ? a : Math.min(a, b);
+	}
+
+	/**
+	 * Returns the larger value, ignoring NaN.
+	 */
+	private static double upper(double a, double b) {
+		return Double.isNaN(a) ? b : Double.isNaN(b) ? a : Math.max(a, b);
+	}
+}
@@ -0,0 +1,171 @@
+package desmoj.demo.vc_model;
+
+/**
+ * This class provides the closed-form steady state metrics of an M/M/c
+ * queue (Erlang-C formula).
+ *
+ * The Vancarrier model with exponential truck arrivals, exponential service
+ * times and vcNumber VCs is such a queue, so these values serve as a
+ * regression oracle for the simulation output and can answer pure M/M/c
+ * design points without simulating at all.
+ *
+ * All times are given in the same unit as the means passed to the
+ * constructor.
+ */
+public class ErlangC {
+
+	/** Number of servers c */
+	private final int servers;
+
+	/** Arrival rate lambda */
+	private final double arrivalRate;
+
+	/** Service rate mu of a single server */
+	private final double serviceRate;
+
+	/**
+	 * Creates the analytic model of an M/M/c queue.
+	 *
+	 * @param servers int  number of identical servers
+	 * @param meanInterarrivalTime double  mean time between two arrivals
+	 * @param meanServiceTime double  mean service time of one customer
+	 */
+	public ErlangC(int servers, double meanInterarrivalTime, double meanServiceTime) {
+		if (servers < 1 || meanInterarrivalTime <= 0 || meanServiceTime <= 0) {
+			throw new IllegalArgumentException("Invalid M/M/c configuration: c=" + servers + ", mean interarrival time="
+					+ meanInterarrivalTime + ", mean service time=" + meanServiceTime);
+		}
+		this.servers = servers;
+		this.arrivalRate = 1.0 / meanInterarrivalTime;
+		this.serviceRate = 1.0 / meanServiceTime;
+	}
+
+	/**
+	 * Returns the offered load a = lambda / mu in Erlang.
+	 */
+	public double getOfferedLoad() {
+		return arrivalRate / serviceRate;
+	}
+
+	/**
+	 * Returns the utilization rho = lambda / (c * mu) of a single server.
+	 */
+	public double getUtilization() {
+		return getOfferedLoad() / servers;
+	}
+
+	/**
+	 * Returns true if the queue has a steady state, i.e. rho < 1. All
+	 * other metrics are infinite otherwise.
+	 */
+	public boolean isStable() {
+		return getUtilization() < 1.0;
+	}
+
+	/**
+	 * Returns the probability that an arriving customer has to wait
+	 * (Erlang-C formula).
+	 *
+	 * Computed via the Erlang-B recursion, which does not overflow for
+	 * large numbers of servers.
+	 */
+	public double getWaitProbability() {
+		if (!isStable()) {
+			return 1.0;
+		}
+		double a = getOfferedLoad();
+		double erlangB = 1.0;
+		for (int k = 1; k <= servers; k++) {
+			erlangB = a * erlangB / (k + a * erlangB);
+		}
+		double rho = getUtilization();
+		return erlangB / (1.0 - rho * (1.0 - erlangB));
+	}
+
+	/**
+	 * Returns the mean time a customer waits in the queue before its
+	 * service starts (Wq).
+	 */
+	public double getMeanWait() {
+		if (!isStable()) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return getWaitProbability() / (servers * serviceRate - arrivalRate);
+	}
+
+	/**
+	 * Returns the mean time a customer spends in the system, i.e. waiting
+	 * plus service (W).
+	 */
+	public double getMeanResponseTime() {
+		return getMeanWait() + 1.0 / serviceRate;
+	}
+
+	/**
+	 * Returns the mean number of customers waiting in the queue (Lq).
+	 */
+	public double getMeanQueueLength() {
+		return arrivalRate * getMeanWait();
+	}
+
+	/**
+	 * Returns the probability that a customer waits longer than the given
+	 * time, P(Wq > t).
+	 *
+	 * @param t double  the wait time threshold
+	 */
+	public double getWaitExceedProbability(double t) {
+		if (!isStable()) {
+			return 1.0;
+		}
+		if (t < 0) {
+			return 1.0;
+		}
+		return getWaitProbability() * Math.exp(-(servers * serviceRate - arrivalRate) * t);
+	}
+
+	/**
+	 * Returns the relaxation time tau of the queue, the time constant with
+	 * which the mean wait of an initially empty queue approaches its steady
+	 * state. Approximated by the relaxation time 1 / (mu (1 - sqrt(rho))^2)
+	 * of an M/M/1 queue with the pooled service rate c * mu, which is exact
+	 * for c = 1 and good in heavy traffic.
+	 */
+	public double getRelaxationTime() {
+		if (!isStable()) {
+			return Double.POSITIVE_INFINITY;
+		}
+		double gap = 1.0 - Math.sqrt(getUtilization());
+		return 1.0 / (servers * serviceRate * gap * gap);
+	}
+
+	/**
+	 * Checks a simulated mean wait of runs without warm-up period against
+	 * the analytic one.
+	 *
+	 * Runs starting empty and idle miss part of the steady-state wait while
+	 * the queue builds up. The deficit of the mean wait decays roughly like
+	 * Wq * exp(-t / tau), so the mean over a run of the given length is biased
+	 * low by up to about Wq * tau / runLength (see getRelaxationTime()). That
+	 * bias is tolerated on top of three standard errors. Near rho = 1 it
+	 * exceeds the mean wait and the check becomes meaningless.
+	 *
+	 * @param simulatedMeanWait double  mean over independent replications
+	 * @param standardError double  standard error of that mean
+	 * @param runLength double  length of every replication
+	 * @return boolean true if the analytic mean wait lies within three
+	 *         standard errors of the simulated one, widened by the transient
+	 *         bias below it
+	 */
+	public boolean agreesWith(double simulatedMeanWait, double standardError, double runLength) {
+		double bias = getMeanWait() * getRelaxationTime() / runLength;
+		double deviation = simulatedMeanWait - getMeanWait();
+		return deviation <= 3.0 * standardError && deviation >= -3.0 * standardError - bias;
+	}
+
+
+	public String toString() {
+		return "M/M/" + servers + " (lambda=" + arrivalRate + ", mu=" + serviceRate + ", rho=" + getUtilization()
+				+ ")";
+	}
+}
@@ -0,0 +1,120 @@
+package desmoj.demo.vc_model;
+
+/**
+ * This class is a fast path for the Vancarrier model.
+ *
+ * With a FIFO truck queue and vcNumber identical VCs the wait of every truck
+ * follows the Kiefer-Wolfowitz recursion: the n-th truck is taken by the VC
+ * that becomes free first, so its wait is the time from its arrival until
+ * that VC is free again. Instead of running trucks and VCs as processes the
+ * kernel keeps the points of time the VCs become free in a plain array and
+ * walks through the arrivals in a tight loop.
+ *
+ * Arrival and service times are drawn from the model's own random streams
+ * in the same order as in the full simulation (one arrival gap per truck,
+ * one service time per truck taken into service before the stop time), so
+ * the wait time samples are the same up to the rounding of the simulation
+ * clock. Only the waitTimeHistogram and the truck counters are filled, the
+ * queues and time series need a running simulation clock and stay empty
+ * (VancarrierModel.writeSummary() leaves the queues out of the record).
+ *
+ * The IPA derivatives of the waits (see WaitGradient) are carried along in
+ * the same loop: every VC keeps the derivatives of the point of time it
+ * becomes free next to that point of time.
+ */
+public class FifoWaitKernel {
+
+	/**
+	 * Not to be instantiated, all methods are static
+	 */
+	private FifoWaitKernel() {
+	}
+
+	/**
+	 * Checks if a run of the given model may be computed by the kernel
+	 * instead of the full simulation. This is the case if the fast path
+	 * was requested, no trace period was set for the model's experiment
+	 * (see VancarrierModel.tracePeriod()), as the kernel sends no trace
+	 * notes, and the model is a plain FIFO multi-server station (see
+	 * VancarrierModel.isFifoStation()).
+	 *
+	 * @param model VancarrierModel  connected but not yet started model
+	 * @return boolean true if run() gives the same samples as the simulation
+	 */
+	public static boolean isApplicable(VancarrierModel model) {
+		return model.useFastPath && !model.isTraced() && model.isFifoStation();
+	}
+
+	/**
+	 * Computes the truck wait times of one run up to the given stop time.
+	 *
+	 * The model has to be connected to its experiment, so its random streams
+	 * and statistics are initialised, but the experiment must not be started.
+	 *
+	 * @param model VancarrierModel  the model to draw samples from and to
+	 *            record the wait times into
+	 * @param stopTime double  the time the simulation would be stopped at
+	 */
+	public static void run(VancarrierModel model, double stopTime) {
+
+		// points of time the VCs become free, all of them idle at start
+		double[] vcFree = new double[model.vcNumber];
+
+		// derivatives of these points of time with respect to the arrival
+		// and the service mean, only tracked if they are valid
+		boolean gradient = model.isGradientValid();
+		double[] vcFreeArrivalDerivative = gradient ? new double[model.vcNumber] : null;
+		double[] vcFreeServiceDerivative = gradient ? new double[model.vcNumber] : null;
+
+		// the first arrival is drawn just as in doInitialSchedules()
+		double arrival = model.getTruckArrivalTime(0);
+
+		while (arrival <= stopTime) {
+			model.arrivedTrucks++;
+
+			// the VC that becomes free first takes the truck
+			int vc = 0;
+			for (int i = 1; i < vcFree.length; i++) {
+				if (vcFree[i] < vcFree[vc]) {
+					vc = i;
+				}
+			}
+			double serviceStart = Math.max(arrival, vcFree[vc]);
+
+			// the arrival is a sum of arrival gaps, so it scales with their
+			// mean, the service start follows the later of arrival and VC
+			double arrivalDerivative = 0;
+			double startArrivalDerivative = 0;
+			double startServiceDerivative = 0;
+			if (gradient) {
+				arrivalDerivative = arrival / model.truckArrivalMean;
+				boolean idle = arrival >= vcFree[vc];
+				startArrivalDerivative = idle ? arrivalDerivative : vcFreeArrivalDerivative[vc];
+				startServiceDerivative = idle ? 0 : vcFreeServiceDerivative[vc];
+			}
+
+			// service is only drawn for trucks taken before the stop time,
+			// just like the VC process would do
+			if (serviceStart <= stopTime) {
+				double serviceTime = model.getServiceTime();
+				double departure = serviceStart + serviceTime;
+				vcFree[vc] = departure;
+				if (gradient) {
+					vcFreeArrivalDerivative[vc] = startArrivalDerivative;
+					vcFreeServiceDerivative[vc] = startServiceDerivative + serviceTime / model.serviceMean;
+				}
+
+				// only trucks leaving in time record their wait
+				if (departure <= stopTime) {
+					model.servicedTrucks++;
+					model.waitTimeHistogram.update(serviceStart - arrival);
+					if (gradient) {
+						model.waitGradient.update(startArrivalDerivative - arrivalDerivative, startServiceDerivative);
+					}
+				}
+			}
+
+			arrival += model.getTruckArrivalTime(arrival);
+		}
+	}
+}
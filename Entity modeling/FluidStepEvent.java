@@ -0,0 +1,63 @@
+package desmoj.demo.vc_model;
+
+import co.paralleluniverse.fibers.SuspendExecution;
+import desmoj.core.simulator.ExternalEvent;
+import desmoj.core.simulator.Model;
+import desmoj.demo.shared.FlightRecorderEvents;
+/**
+ * This class advances the fluid part of the truck queue during a fluid
+ * phase (see VancarrierModel.fluidThreshold).
+ *
+ * Instead of one truck process per arrival it adds the trucks arriving
+ * within the last fluid step as one cohort, wakes up idle VCs to
+ * serve it and reschedules itself one step later. Once the backlog has
+ * drained below half the threshold, the remaining fluid is turned back
+ * into truck processes and the truck generator takes over again.
+ */
+public class FluidStepEvent extends ExternalEvent {
+
+	/**
+	* Keeps a reference to the model this actor is a part of 
+	* useful shortcut to access the model infrastructure
+	*/
+	private VancarrierModel myModel;
+
+	/**
+	 * FluidStepEvent constructor.
+	 * @param owner desmoj.Model     the associated model
+	 * @param name java.lang.String  of this event
+	 * @param showInTrace boolean    show in trace file or not show in trace
+	 */
+	public FluidStepEvent(Model owner, String name, boolean showInTrace) {
+		super(owner, name, showInTrace);
+
+		myModel = (VancarrierModel) owner;
+	}
+
+	/**
+	 * Integrates the arrivals of the last fluid step and decides whether the
+	 * fluid phase goes on.
+	 */
+	public void eventRoutine() throws SuspendExecution {
+		FlightRecorderEvents.Dispatch dispatch = FlightRecorderEvents.dispatch(this);
+
+		double now = presentTime().getTimeAsDouble();
+
+		// the arrivals of the step form one cohort
+		myModel.addFluidArrivals(now);
+
+		// idle VCs get to work on the fluid
+		int units = (int) myModel.fluidTrucks.mass();
+		while (units-- > 0 && !myModel.idleVCQueue.isEmpty()) {
+			VC vancarrier = myModel.takeIdleVC(-1);
+			vancarrier.activate();
+		}
+
+		if (myModel.truckQueue.length() + myModel.fluidTrucks.mass() < myModel.fluidThreshold / 2.0) {
+			myModel.endFluidPhase();
+		} else {
+			schedule(myModel.timeSpan(myModel.fluidStep));
+		}
+		dispatch.commit();
+	}
+}
@@ -0,0 +1,206 @@
+package desmoj.demo.vc_model;
+
+import java.io.File;
+import java.io.IOException;
+
+import desmoj.core.simulator.Experiment;
+import desmoj.core.simulator.TimeInstant;
+import desmoj.demo.shared.FlightRecorderEvents;
+import desmoj.demo.shared.LiveMetrics;
+import desmoj.demo.shared.ReplicationCache;
+import desmoj.demo.shared.ReplicationFarm;
+
+/**
+ * Headless entry point for replication workers of the Vancarrier model.
+ *
+ * Unlike Runner this class does not touch the Swing experiment UI
+ * (ExperimentStarterApplication, plotters) or the progress bar, so a worker
+ * JVM loads no AWT/Swing classes and the UI jars may be left off its
+ * classpath. Runner and the plotters it uses are the only classes of this
+ * package depending on them.
+ *
+ * The Maven module in "Headless build" packages this class as the main
+ * class of a jar without Runner and the plotters, instruments all classes
+ * ahead of time with Quasar's instrumentation task, so workers start
+ * without the -javaagent, and records an AppCDS archive by a training run
+ * with -XX:ArchiveClassesAtExit, see its pom.xml.
+ *
+ * Usage: HeadlessRunner [firstReplication [replications [stopTime]]]
+ * prints one line per replication: index, mean wait, arrived and serviced
+ * trucks. If the system property vancarrier.cache names a directory,
+ * replications are taken from and stored into a ReplicationCache there.
+ * With the system property desmoj.metrics.port, progress is published by
+ * LiveMetrics. Model parameters are set by vancarrier.model.* system
+ * properties (see VancarrierModel.setParametersFromSystemProperties()).
+ */
+public class HeadlessRunner {
+
+	/**
+	 * Code version of the Vancarrier results for ReplicationCache: the
+	 * classes of this package and of the shared utilities it uses.
+	 */
+	private static final String CODE_VERSION = ReplicationCache.codeVersion(VancarrierModel.class,
+			ReplicationCache.class);
+
+	/**
+	 * Not to be instantiated, all methods are static
+	 */
+	private HeadlessRunner() {
+	}
+
+	/**
+	 * Simulates one replication of the given model without trace, report or
+	 * progress bar. A model with the analyticShortCut parameter set is
+	 * answered by the Erlang-C formula where it applies, without an
+	 * experiment (see VancarrierModel.answerAnalytically()). Otherwise the
+	 * FifoWaitKernel is used if applicable. The experiment is named after
+	 * the model and the seed, so models simulated side by side should be
+	 * named after their configurations.
+	 *
+	 * A model that has run a replication before is reset and run again if
+	 * VancarrierModel.isReusable() allows, which saves building a new
+	 * experiment, model, streams and statistics for every fast path
+	 * replication. Full simulations need a new model each, as DESMO-J cannot
+	 * rewind an experiment.
+	 *
+	 * @param model VancarrierModel  a configured model, not yet connected or
+	 *            reusable
+	 * @param seed long  seed of the replication
+	 * @param stopTime double  the time the simulation stops at
+	 * @return VancarrierModel the given model holding the results
+	 */
+	public static VancarrierModel runReplication(VancarrierModel model, long seed, double stopTime) {
+		if (model.answerAnalytically()) {
+			LiveMetrics.replicationCompleted();
+			return model;
+		}
+		FlightRecorderEvents.Replication replication = FlightRecorderEvents.replication(model.getName(), seed);
+		if (model.getExperiment() != null) {
+			if (!model.isReusable()) {
+				throw new IllegalStateException("Model " + model.getName()
+						+ " has simulated a replication already, DESMO-J cannot rewind its experiment");
+			}
+			model.resetReplication(seed);
+			FifoWaitKernel.run(model, stopTime);
+			replication.commit();
+			LiveMetrics.replicationCompleted();
+			return model;
+		}
+
+		// no output files, so runs in parallel threads don't clash
+		Experiment experiment = new Experiment(model.getName().replace(' ', '_') + "_" + seed, false);
+		experiment.setSeedGenerator(seed);
+		experiment.setShowProgressBar(false);
+
+		model.connectToExperiment(experiment);
+		model.seedStreams(seed);
+
+		if (FifoWaitKernel.isApplicable(model)) {
+			FifoWaitKernel.run(model, stopTime);
+		} else {
+			experiment.stop(new TimeInstant(stopTime));
+			experiment.start();
+		}
+		experiment.finish();
+		replication.commit();
+		LiveMetrics.replicationCompleted();
+		return model;
+	}
+
+	/**
+	 * Returns the summary of a replication run by runReplication(). An
+	 * analytic run only has its mean wait, the other figures are NaN or 0.
+	 *
+	 * @param model VancarrierModel  the model holding the results
+	 * @param replication int  index of the replication
+	 * @param seed long  seed of the replication
+	 * @return ReplicationFarm.Summary the summary of the replication
+	 */
+	public static ReplicationFarm.Summary summary(VancarrierModel model, int replication, long seed) {
+		if (model.isAnsweredAnalytically()) {
+			return new ReplicationFarm.Summary(replication, seed, model.getMeanWait(), Double.NaN, 0, 0, 0);
+		}
+		return new ReplicationFarm.Summary(replication, seed, model.waitTimeHistogram.getMean(),
+				model.waitTimeHistogram.getStdDev(), model.waitTimeHistogram.getObservations(), model.arrivedTrucks,
+				model.servicedTrucks);
+	}
+
+	/**
+	 * Computes the ReplicationCache key of a Vancarrier replication from the
+	 * model's parameters.
+	 *
+	 * @param model VancarrierModel  the configured model
+	 * @param stopTime double  the time the simulation stops at
+	 * @param seed long  seed of the replication
+	 * @return String the key as hex string
+	 */
+	public static String cacheKey(VancarrierModel model, double stopTime, long seed) throws IOException {
+		return ReplicationCache.key(VancarrierModel.class, ReplicationCache.parameters(model), CODE_VERSION,
+				stopTime, seed);
+	}
+
+	/**
+	 * Returns the results of one replication of the given model from the
+	 * cache, simulating it only if it is not cached yet. Analytic runs are
+	 * cheaper than a cache lookup and are not cached.
+	 *
+	 * @param cache ReplicationCache  the cache to use
+	 * @param model VancarrierModel  a configured model, not yet connected
+	 * @param replication int  index of the replication
+	 * @param seed long  seed of the replication
+	 * @param stopTime double  the time the simulation stops at
+	 * @return ReplicationCache.Entry the results of the replication
+	 */
+	public static ReplicationCache.Entry runCached(ReplicationCache cache, VancarrierModel model, int replication,
+			long seed, double stopTime) throws IOException {
+		if (model.answerAnalytically()) {
+			LiveMetrics.replicationCompleted();
+			return new ReplicationCache.Entry(summary(model, replication, seed), new long[0]);
+		}
+		String key = cacheKey(model, stopTime, seed);
+		ReplicationCache.Entry entry = cache.get(key);
+		if (entry == null) {
+			runReplication(model, seed, stopTime);
+			entry = new ReplicationCache.Entry(summary(model, replication, seed),
+					ReplicationCache.cells(model.waitTimeHistogram));
+			cache.put(key, entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * Runs the replications given on the command line.
+	 *
+	 * @param args
+	 *            : first replication index (0), number of replications (1)
+	 *            and stop time (1500)
+	 */
+	public static void main(java.lang.String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+		LiveMetrics.startIfConfigured();
+
+		int first = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+		int replications = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+		double stopTime = args.length > 2 ? Double.parseDouble(args[2]) : 1500;
+		String cacheDirectory = System.getProperty("vancarrier.cache");
+		ReplicationCache cache = cacheDirectory == null ? null
+				: new ReplicationCache(new File(cacheDirectory), 256L * 1024 * 1024);
+
+		VancarrierModel model = null;
+		for (int k = first; k < first + replications; k++) {
+			if (model == null || !model.isReusable()) {
+				model = new VancarrierModel(null, "Vancarrier Model", false, false);
+				model.setParametersFromSystemProperties();
+			}
+			long seed = VancarrierModel.REPLICATION_SEED + k;
+			if (cache != null) {
+				ReplicationFarm.Summary summary = runCached(cache, model, k, seed, stopTime).summary;
+				System.out.println(k + " " + summary.meanWait + " " + summary.arrived + " " + summary.serviced);
+			} else {
+				runReplication(model, seed, stopTime);
+				System.out.println(k + " " + model.getMeanWait() + " " + model.arrivedTrucks + " "
+						+ model.servicedTrucks);
+			}
+		}
+	}
+}
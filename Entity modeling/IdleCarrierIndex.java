@@ -0,0 +1,166 @@
+package desmoj.demo.vc_model;
+
+import java.util.Arrays;
+
+/**
+ * The idle VCs of a yard, indexed by their positions to find the one
+ * nearest to a container stack.
+ *
+ * The VCs are numbered from 0 and parked at points of a YardLayout. Every
+ * slot of the layout's k-d tree counts the idle VCs parked in its subtree,
+ * and every point keeps a list of the idle VCs parked at it. Parking and
+ * taking a VC update the counts on the path from its point to the root,
+ * which takes logarithmic time as the tree is balanced. The nearest search
+ * descends the tree towards the stack first and skips every subtree that
+ * holds no idle VC or lies farther away than the nearest VC found so far,
+ * so it visits about a logarithmic number of slots, unless only a few VCs
+ * are idle in a large yard. A VC moves while it is busy and thus not in the
+ * index, it is parked again at the stack it served.
+ *
+ * An index belongs to a single model and is not thread-safe.
+ */
+public class IdleCarrierIndex {
+
+	/** The layout the VCs are parked in */
+	private final YardLayout layout;
+
+	/** Number of idle VCs in the subtree of every slot */
+	private final int[] count;
+
+	/** First idle VC parked at every point, -1 if none */
+	private final int[] first;
+
+	/** Next and previous idle VC parked at the same point, -1 if none */
+	private final int[] next;
+	private final int[] previous;
+
+	/** The point every VC is parked at, -1 if it is busy */
+	private final int[] parkedAt;
+
+	/** Number of idle VCs */
+	private int size = 0;
+
+	/** Nearest VC and its distance found so far by the running search */
+	private int nearest;
+	private double nearestDistance;
+
+	/**
+	 * Creates an empty index.
+	 *
+	 * @param layout YardLayout  the layout of the yard
+	 * @param carriers int  number of VCs
+	 */
+	public IdleCarrierIndex(YardLayout layout, int carriers) {
+		this.layout = layout;
+		count = new int[layout.getPoints()];
+		first = new int[layout.getPoints()];
+		Arrays.fill(first, -1);
+		next = new int[carriers];
+		previous = new int[carriers];
+		parkedAt = new int[carriers];
+		Arrays.fill(parkedAt, -1);
+	}
+
+	/**
+	 * Parks an idle VC at a point.
+	 *
+	 * @param carrier int  number of the VC, not parked yet
+	 * @param point int  the point of the layout it is at
+	 */
+	public void park(int carrier, int point) {
+		if (parkedAt[carrier] >= 0) {
+			throw new IllegalStateException("VC " + carrier + " is already parked at " + parkedAt[carrier]);
+		}
+		parkedAt[carrier] = point;
+		previous[carrier] = -1;
+		next[carrier] = first[point];
+		if (first[point] >= 0) {
+			previous[first[point]] = carrier;
+		}
+		first[point] = carrier;
+		for (int slot = layout.getSlotOf(point); slot >= 0; slot = layout.getParent(slot)) {
+			count[slot]++;
+		}
+		size++;
+	}
+
+	/**
+	 * Takes a VC out of the index as it gets busy.
+	 *
+	 * @param carrier int  number of the VC
+	 * @return boolean true if it was parked
+	 */
+	public boolean take(int carrier) {
+		int point = parkedAt[carrier];
+		if (point < 0) {
+			return false;
+		}
+		if (previous[carrier] >= 0) {
+			next[previous[carrier]] = next[carrier];
+		} else {
+			first[point] = next[carrier];
+		}
+		if (next[carrier] >= 0) {
+			previous[next[carrier]] = previous[carrier];
+		}
+		parkedAt[carrier] = -1;
+		for (int slot = layout.getSlotOf(point); slot >= 0; slot = layout.getParent(slot)) {
+			count[slot]--;
+		}
+		size--;
+		return true;
+	}
+
+	/**
+	 * Returns the idle VC nearest to a point, without taking it.
+	 *
+	 * @param point int  a point of the layout, usually a stack
+	 * @return int number of the nearest idle VC, -1 if all are busy
+	 */
+	public int nearest(int point) {
+		nearest = -1;
+		nearestDistance = Double.POSITIVE_INFINITY;
+		search(layout.getRoot(), point, layout.getX(point), layout.getY(point));
+		return nearest;
+	}
+
+	/**
+	 * Returns the point a VC is parked at, -1 if it is busy.
+	 */
+	public int getPoint(int carrier) {
+		return parkedAt[carrier];
+	}
+
+	/**
+	 * Returns the number of idle VCs.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Searches the subtree of a slot for an idle VC nearer to the point
+	 * than the nearest one found so far.
+	 */
+	private void search(int slot, int point, double x, double y) {
+		if (slot < 0 || count[slot] == 0) {
+			return;
+		}
+		int here = layout.getPointAt(slot);
+		if (first[here] >= 0) {
+			double distance = layout.getDistance(point, here);
+			if (distance < nearestDistance) {
+				nearest = first[here];
+				nearestDistance = distance;
+			}
+		}
+		double offset = layout.getOffset(slot, x, y);
+		int near = offset < 0 ? layout.getLeft(slot) : layout.getRight(slot);
+		int far = offset < 0 ? layout.getRight(slot) : layout.getLeft(slot);
+		search(near, point, x, y);
+		// every point beyond the splitting line is at least the offset away
+		if (Math.abs(offset) < nearestDistance) {
+			search(far, point, x, y);
+		}
+	}
+}
@@ -0,0 +1,265 @@
+package desmoj.demo.vc_model;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Estimates the probability of rare long truck waits by multilevel
+ * splitting.
+ *
+ * The event of interest is that some truck arriving before the horizon
+ * waits longer than a threshold. Long waits need long queues, so the truck
+ * queue length serves as importance function: whenever a trajectory reaches
+ * the next of increasing queue length levels, it is split into several
+ * copies which continue independently. Each copy carries the weight of its
+ * parent divided by the number of copies, so the sum of the weights of all
+ * trajectories hitting the event, divided by the number of root
+ * trajectories, is an unbiased estimate of its probability. The roots are
+ * independent, which gives the relative error of the estimate.
+ *
+ * DESMO-J cannot copy a running experiment, its event-list and processes.
+ * The trajectories are therefore simulated with the Kiefer-Wolfowitz
+ * recursion of FifoWaitKernel, whose state (the points of time the VCs
+ * become free and the service starts of the waiting trucks) is copied at
+ * every split. Every trajectory draws from its own random number generator,
+ * exponential arrival gaps with a constant mean and exponential service
+ * times, so only pure M/M/c configurations (see
+ * VancarrierModel.isMMc()) are accepted: reneging, balking, appointments,
+ * the fluid mode, a yard, a terminal network or a time-varying arrival
+ * rate would make the recursion estimate a different model.
+ *
+ * The McBurger model is not covered: its clients pass two stations (a
+ * dependent, then a chef), which a single-station recursion does not
+ * describe, and McBurger has no splitting estimator of its own.
+ */
+public class RareWaitSplitting {
+
+	/**
+	 * A probability estimate.
+	 */
+	public static class Estimate {
+
+		/** Estimated probability */
+		public final double probability;
+
+		/** Standard error divided by the probability */
+		public final double relativeError;
+
+		/** Number of simulated trajectories, roots and copies */
+		public final long trajectories;
+
+		Estimate(double probability, double relativeError, long trajectories) {
+			this.probability = probability;
+			this.relativeError = relativeError;
+			this.trajectories = trajectories;
+		}
+
+		public String toString() {
+			return probability + " (relative error " + relativeError + ", " + trajectories + " trajectories)";
+		}
+	}
+
+	/**
+	 * The state of one trajectory.
+	 */
+	private static class Trajectory {
+
+		/** Arrival time of the latest truck */
+		double arrival;
+
+		/** Points of time the VCs become free */
+		double[] vcFree;
+
+		/** Service starts of the trucks still waiting at the latest arrival */
+		ArrayDeque<Double> waiting;
+
+		/** Number of levels reached */
+		int level;
+
+		/** Weight of the trajectory */
+		double weight;
+
+		/** Random numbers of the trajectory */
+		Random random;
+
+		/**
+		 * Returns a copy continuing with the given random numbers.
+		 */
+		Trajectory copy(Random random, double weight) {
+			Trajectory copy = new Trajectory();
+			copy.arrival = arrival;
+			copy.vcFree = vcFree.clone();
+			copy.waiting = new ArrayDeque<Double>(waiting);
+			copy.level = level;
+			copy.weight = weight;
+			copy.random = random;
+			return copy;
+		}
+	}
+
+	/** Outcomes of run() */
+	private static final int HIT = 0, LEVEL = 1, HORIZON = 2;
+
+	/** Number of VCs */
+	private final int vcNumber;
+
+	/** Means of the exponential arrival gaps and service times */
+	private final double truckArrivalMean, serviceMean;
+
+	/** Wait the event of interest exceeds */
+	private final double waitThreshold;
+
+	/** Arrivals after this point of time are not simulated */
+	private final double horizon;
+
+	/** Increasing truck queue lengths to split at */
+	private final int[] levels;
+
+	/** Number of copies a trajectory is split into at every level */
+	private final int splits;
+
+	/**
+	 * Creates a splitting estimator for the given model configuration.
+	 *
+	 * @param model VancarrierModel  model holding vcNumber, truckArrivalMean
+	 *            and serviceMean, a pure M/M/c queue
+	 * @param waitThreshold double  wait the event of interest exceeds
+	 * @param horizon double  the time the simulation would be stopped at
+	 * @param levels int[]  increasing truck queue lengths to split at
+	 * @param splits int  copies per split, at least 1
+	 * @throws IllegalArgumentException if the model is no M/M/c queue or the
+	 *             levels or splits are invalid
+	 */
+	public RareWaitSplitting(VancarrierModel model, double waitThreshold, double horizon, int[] levels, int splits) {
+		if (!model.isMMc()) {
+			throw new IllegalArgumentException("Splitting only models pure M/M/c configurations, see "
+					+ "VancarrierModel.isMMc()");
+		}
+		if (splits < 1) {
+			throw new IllegalArgumentException("Invalid splitting setup: splits=" + splits);
+		}
+		for (int i = 1; i < levels.length; i++) {
+			if (levels[i] <= levels[i - 1]) {
+				throw new IllegalArgumentException("Levels have to increase: " + Arrays.toString(levels));
+			}
+		}
+		this.vcNumber = model.vcNumber;
+		this.truckArrivalMean = model.truckArrivalMean;
+		this.serviceMean = model.serviceMean;
+		this.waitThreshold = waitThreshold;
+		this.horizon = horizon;
+		this.levels = levels.clone();
+		this.splits = splits;
+	}
+
+	/**
+	 * Estimates the probability that some truck arriving before the horizon
+	 * waits longer than the threshold.
+	 *
+	 * @param roots int  number of independent root trajectories, at least 2
+	 * @param seed long  seed of the random numbers
+	 * @return Estimate the probability and its relative error
+	 */
+	public Estimate estimate(int roots, long seed) {
+		Random seeds = new Random(seed);
+		double sum = 0;
+		double squares = 0;
+		long trajectories = 0;
+		ArrayDeque<Trajectory> open = new ArrayDeque<Trajectory>();
+
+		for (int root = 0; root < roots; root++) {
+			Trajectory start = new Trajectory();
+			start.vcFree = new double[vcNumber];
+			start.waiting = new ArrayDeque<Double>();
+			start.weight = 1;
+			start.random = new Random(seeds.nextLong());
+			open.push(start);
+
+			// weighted hits of this root and all its copies
+			double hits = 0;
+			while (!open.isEmpty()) {
+				Trajectory trajectory = open.pop();
+				trajectories++;
+				int outcome = run(trajectory);
+				if (outcome == HIT) {
+					hits += trajectory.weight;
+				} else if (outcome == LEVEL) {
+					// continue the trajectory as several copies
+					double weight = trajectory.weight / splits;
+					for (int i = 0; i < splits; i++) {
+						open.push(trajectory.copy(new Random(seeds.nextLong()), weight));
+					}
+				}
+			}
+			sum += hits;
+			squares += hits * hits;
+		}
+
+		double probability = sum / roots;
+		double variance = Math.max(squares - roots * probability * probability, 0) / (roots - 1);
+		double relativeError = probability > 0 ? Math.sqrt(variance / roots) / probability : Double.NaN;
+		return new Estimate(probability, relativeError, trajectories);
+	}
+
+	/**
+	 * Continues a trajectory until a truck waits longer than the threshold,
+	 * the truck queue reaches the next level or the horizon is passed.
+	 *
+	 * @return int HIT, LEVEL or HORIZON
+	 */
+	private int run(Trajectory trajectory) {
+		while (true) {
+			trajectory.arrival += exponential(trajectory.random, truckArrivalMean);
+			if (trajectory.arrival > horizon) {
+				return HORIZON;
+			}
+
+			// the VC that becomes free first takes the truck
+			double[] vcFree = trajectory.vcFree;
+			int vc = 0;
+			for (int i = 1; i < vcFree.length; i++) {
+				if (vcFree[i] < vcFree[vc]) {
+					vc = i;
+				}
+			}
+			double serviceStart = Math.max(trajectory.arrival, vcFree[vc]);
+			if (serviceStart - trajectory.arrival > waitThreshold) {
+				return HIT;
+			}
+			vcFree[vc] = serviceStart + exponential(trajectory.random, serviceMean);
+
+			// trucks taken into service by now have left the queue
+			while (!trajectory.waiting.isEmpty() && trajectory.waiting.peekFirst() <= trajectory.arrival) {
+				trajectory.waiting.pollFirst();
+			}
+			if (serviceStart > trajectory.arrival) {
+				trajectory.waiting.addLast(serviceStart);
+			}
+
+			if (trajectory.level < levels.length && trajectory.waiting.size() >= levels[trajectory.level]) {
+				trajectory.level++;
+				return LEVEL;
+			}
+		}
+	}
+
+	/**
+	 * Returns an exponential sample with the given mean by inversion.
+	 */
+	private static double exponential(Random random, double mean) {
+		return -mean * Math.log(1 - random.nextDouble());
+	}
+
+	/**
+	 * Estimates the probability that a truck waits longer than 60 minutes
+	 * within 1500 minutes of the default Vancarrier configuration.
+	 */
+	public static void main(java.lang.String[] args) {
+		VancarrierModel model = new VancarrierModel(null, "Vancarrier Model", false, false);
+		model.setParametersFromSystemProperties();
+		RareWaitSplitting splitting = new RareWaitSplitting(model, 60, 1500,
+				new int[] { 4, 8, 12, 16, 20, 24, 28, 32 }, 4);
+		System.out.println("P(Truck Wait Time > 60): " + splitting.estimate(5000, VancarrierModel.REPLICATION_SEED));
+	}
+}
@@ -0,0 +1,71 @@
+package desmoj.demo.vc_model;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+
+import desmoj.demo.shared.ReplicationCache;
+import desmoj.demo.shared.ReplicationFarm;
+
+/**
+ * Worker process of a ReplicationFarm running Vancarrier replications.
+ *
+ * Reads replications from the standard input and answers each of them with
+ * a ReplicationFarm.Summary on the standard output, until it receives a
+ * negative replication index or the input is closed. If the system property
+ * vancarrier.cache names a directory, cached replications are answered from
+ * the ReplicationCache there without simulating. The worker JVMs inherit
+ * the coordinator's JVM options, so its vancarrier.model.* properties set
+ * the model parameters of the workers (see
+ * VancarrierModel.setParametersFromSystemProperties()).
+ */
+public class ReplicationWorker {
+
+	/**
+	 * Serves replications for the coordinator.
+	 *
+	 * @param args
+	 *            : ignored
+	 */
+	public static void main(java.lang.String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+
+		DataOutputStream out = ReplicationFarm.openWorkerOutput();
+		DataInputStream in = ReplicationFarm.openWorkerInput();
+		String cacheDirectory = System.getProperty("vancarrier.cache");
+		ReplicationCache cache = cacheDirectory == null ? null
+				: new ReplicationCache(new File(cacheDirectory), 256L * 1024 * 1024);
+		VancarrierModel model = null;
+		try {
+			while (true) {
+				int replication = in.readInt();
+				if (replication < 0) {
+					break;
+				}
+				long seed = in.readLong();
+				double stopTime = in.readDouble();
+
+				// fast path models serve all replications of the worker
+				if (model == null || !model.isReusable()) {
+					model = new VancarrierModel(null, "Vancarrier Model", false, false);
+					model.setParametersFromSystemProperties();
+				}
+				if (cache != null) {
+					ReplicationFarm.Summary cached = HeadlessRunner.runCached(cache, model, replication, seed,
+							stopTime).summary;
+					// the cached entry may come from a run with another index
+					new ReplicationFarm.Summary(replication, seed, cached.meanWait, cached.stdDevWait,
+							cached.observations, cached.arrived, cached.serviced).write(out);
+				} else {
+					HeadlessRunner.runReplication(model, seed, stopTime);
+					HeadlessRunner.summary(model, replication, seed).write(out);
+				}
+				out.flush();
+			}
+		} catch (EOFException e) {
+			// the coordinator went away, nothing left to do
+		}
+	}
+}
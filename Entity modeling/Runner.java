@@ -5,8 +5,6 @@ import java.util.concurrent.TimeUnit;
 
 import desmoj.extensions.experimentation.ui.ExperimentStarterApplication;
 import desmoj.extensions.experimentation.ui.GraphicalObserverContext;
-import desmoj.extensions.experimentation.ui.HistogramPlotter;
-import desmoj.extensions.experimentation.ui.TimeSeriesPlotter;
 import desmoj.extensions.experimentation.util.AccessUtil;
 import desmoj.extensions.experimentation.util.ExperimentRunner;
 import desmoj.core.util.AccessPoint;
@@ -30,10 +28,19 @@ public class Runner extends ExperimentRunner {
 	}
 	
 	public SimRunListener[] createSimRunListeners(GraphicalObserverContext c) {
-		VancarrierModel model = (VancarrierModel)getModel();
-		TimeSeriesPlotter tp1 = new TimeSeriesPlotter("Trucks",c, model.trucksArrived, 360,360);
-		tp1.addTimeSeries(model.trucksServiced);
-		HistogramPlotter hp = new HistogramPlotter("Truck Wait Times", c, model.waitTimeHistogram,"h", 360,360, 365,0);
+		final VancarrierModel model = (VancarrierModel)getModel();
+		DecimatedTimeSeriesPlotter tp1 = new DecimatedTimeSeriesPlotter("Trucks", c, 1.0, 360,360, 0,0);
+		tp1.addSeries("arrived", new DecimatedTimeSeriesPlotter.Source() {
+			public double value() {
+				return model.arrivedTrucks;
+			}
+		});
+		tp1.addSeries("finished", new DecimatedTimeSeriesPlotter.Source() {
+			public double value() {
+				return model.servicedTrucks;
+			}
+		});
+		SnapshotHistogramPlotter hp = new SnapshotHistogramPlotter("Truck Wait Times", c, model.waitTimeHistogram, 360,360, 365,0);
 		return new SimRunListener[] {tp1, hp};
 	}
 	
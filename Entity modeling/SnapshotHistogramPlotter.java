@@ -0,0 +1,74 @@
+package desmoj.demo.vc_model;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+
+import desmoj.core.statistic.Histogram;
+import desmoj.extensions.experimentation.ui.GraphicalObserverContext;
+
+/**
+ * Plots a histogram from snapshots of its cell counts, which are copied on
+ * the simulation thread at most a few times per second (see
+ * SnapshotPlotter). Underflow and overflow cells are shown at the edges.
+ */
+public class SnapshotHistogramPlotter extends SnapshotPlotter {
+
+	/** The histogram to plot */
+	private final Histogram histogram;
+
+	/**
+	 * Creates a plotter.
+	 *
+	 * @param title String  title of the plot
+	 * @param context GraphicalObserverContext  the context to show it in
+	 * @param histogram Histogram  the histogram to plot
+	 * @param width int  width of the plot
+	 * @param height int  height of the plot
+	 * @param x int  horizontal position of the plot
+	 * @param y int  vertical position of the plot
+	 */
+	public SnapshotHistogramPlotter(String title, GraphicalObserverContext context, Histogram histogram, int width,
+			int height, int x, int y) {
+		super(title, context, 10, width, height, x, y);
+		this.histogram = histogram;
+	}
+
+	protected void record(double time) {
+		// the histogram records itself, only its snapshots are taken
+	}
+
+	protected Object snapshot() {
+		// cells 0 and cells + 1 are underflow and overflow
+		long[] counts = new long[histogram.getCells() + 2];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = histogram.getObservationsInCell(i);
+		}
+		return counts;
+	}
+
+	protected void paintSnapshot(Graphics2D g, Object data, int width, int height) {
+		long[] counts = (long[]) data;
+		long top = 0;
+		for (long count : counts) {
+			top = Math.max(top, count);
+		}
+		if (top == 0) {
+			return;
+		}
+		int left = 8;
+		int bottom = height - 20;
+		int plotHeight = bottom - 24;
+		int barWidth = (width - 2 * left) / counts.length;
+
+		for (int i = 0; i < counts.length; i++) {
+			int barHeight = (int) (counts[i] * plotHeight / top);
+			g.setColor(i == 0 || i == counts.length - 1 ? Color.GRAY : Color.BLUE);
+			g.fillRect(left + i * barWidth + 1, bottom - barHeight, barWidth - 2, barHeight);
+			if (i > 0 && i < counts.length - 1) {
+				g.setColor(Color.BLACK);
+				g.drawString(String.valueOf((long) histogram.getLowerLimit(i)), left + i * barWidth, height - 4);
+			}
+		}
+		g.drawString(String.valueOf(top), left, 30);
+	}
+}
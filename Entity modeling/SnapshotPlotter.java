@@ -0,0 +1,154 @@
+package desmoj.demo.vc_model;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+
+import desmoj.core.util.SimRunEvent;
+import desmoj.core.util.SimRunListener;
+import desmoj.extensions.experimentation.ui.GraphicalObserverContext;
+
+/**
+ * Base class of plotters that keep the Swing event dispatch thread (EDT)
+ * and the simulation thread apart.
+ *
+ * The simulation thread records every step into a fixed-size buffer of the
+ * subclass (record()), which is cheap and never blocks. At most framesPerSecond
+ * times per second it turns the buffer into an immutable snapshot
+ * (snapshot()) and asks the EDT to repaint, unless a repaint is still
+ * pending. The EDT paints the latest snapshot (paintSnapshot()). A slow GUI
+ * thus drops frames instead of slowing the simulation, and the cost per
+ * step does not grow with the length of the run.
+ */
+public abstract class SnapshotPlotter implements SimRunListener {
+
+	/** Steps between two looks at the wall clock */
+	private static final int CLOCK_CHECK_STEPS = 64;
+
+	/** Background of the plots */
+	protected static final Color BACKGROUND = Color.WHITE;
+
+	/** Title of the plot */
+	private final String title;
+
+	/** Wall clock nanoseconds between two snapshots */
+	private final long frameNanos;
+
+	/** Steps since the last look at the wall clock */
+	private int steps = 0;
+
+	/** Wall clock time of the last snapshot */
+	private long lastFrame = 0;
+
+	/** The latest snapshot, read by the EDT */
+	private volatile Object snapshot;
+
+	/** Tells if a repaint was requested but not done yet */
+	private final AtomicBoolean repaintPending = new AtomicBoolean(false);
+
+	/** The component painting the snapshots */
+	private final JComponent component = new JComponent() {
+		private static final long serialVersionUID = 1L;
+
+		protected void paintComponent(Graphics graphics) {
+			Graphics2D g = (Graphics2D) graphics;
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			g.setColor(BACKGROUND);
+			g.fillRect(0, 0, getWidth(), getHeight());
+			g.setColor(Color.BLACK);
+			g.drawString(title, 8, 16);
+			Object current = snapshot;
+			if (current != null) {
+				paintSnapshot(g, current, getWidth(), getHeight());
+			}
+		}
+	};
+
+	/** Asks the component to repaint, run on the EDT */
+	private final Runnable repaint = new Runnable() {
+		public void run() {
+			repaintPending.set(false);
+			component.repaint();
+		}
+	};
+
+	/**
+	 * Creates a plotter and adds its component to the observer context.
+	 *
+	 * @param title String  title of the plot
+	 * @param context GraphicalObserverContext  the context to show it in
+	 * @param framesPerSecond int  largest number of repaints per second
+	 * @param width int  width of the plot
+	 * @param height int  height of the plot
+	 * @param x int  horizontal position of the plot
+	 * @param y int  vertical position of the plot
+	 */
+	protected SnapshotPlotter(String title, GraphicalObserverContext context, int framesPerSecond, int width,
+			int height, int x, int y) {
+		this.title = title;
+		this.frameNanos = 1000000000L / framesPerSecond;
+		context.add(component, width, height, x, y);
+	}
+
+	/**
+	 * Records the current state of the simulation, on the simulation thread.
+	 *
+	 * @param time double  the current simulation time
+	 */
+	protected abstract void record(double time);
+
+	/**
+	 * Returns an immutable snapshot of the recorded data, on the simulation
+	 * thread.
+	 */
+	protected abstract Object snapshot();
+
+	/**
+	 * Paints a snapshot, on the EDT.
+	 *
+	 * @param g Graphics2D  the graphics to paint with
+	 * @param snapshot Object  a snapshot returned by snapshot()
+	 * @param width int  width of the plot
+	 * @param height int  height of the plot
+	 */
+	protected abstract void paintSnapshot(Graphics2D g, Object snapshot, int width, int height);
+
+	public void simulationRunning(SimRunEvent e) {
+		record(e.getCurrentTime().getTimeAsDouble());
+		if (++steps < CLOCK_CHECK_STEPS) {
+			return;
+		}
+		steps = 0;
+		long now = System.nanoTime();
+		if (now - lastFrame >= frameNanos) {
+			lastFrame = now;
+			publish();
+		}
+	}
+
+	public void simulationStopped(SimRunEvent e) {
+		publish();
+	}
+
+	public void simulationPaused(SimRunEvent e) {
+		publish();
+	}
+
+	public void simulationInitialized(SimRunEvent e) {
+	}
+
+	/**
+	 * Publishes a new snapshot and requests a repaint if none is pending.
+	 */
+	private void publish() {
+		snapshot = snapshot();
+		if (repaintPending.compareAndSet(false, true)) {
+			SwingUtilities.invokeLater(repaint);
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package desmoj.demo.vc_model;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+
+import desmoj.core.dist.Distribution;
+import desmoj.core.simulator.QueueBased;
+import desmoj.core.simulator.Reportable;
+import desmoj.core.simulator.TimeSpan;
+import desmoj.core.statistic.Count;
+import desmoj.core.statistic.ValueStatistics;
+
+/**
+ * Writes one compact JSON record per replication instead of DESMO-J's HTML
+ * report, in the JSON lines format (one object per line), e.g.
+ *
+ * {"model":"Vancarrier Model","replication":0,"seed":979,
+ *  "counters":{"arrivedTrucks":741,...},
+ *  "queues":{"Truck Queue":{"observations":741,"averageLength":1.9,...}},
+ *  "statistics":{"Truck Wait Times":{"observations":738,"mean":3.8,...}},
+ *  "counts":{"Reneged Trucks":0},"streams":{"TruckArrivalTimeStream":742}}
+ *
+ * (wrapped here, written as a single line). Queues, value statistics such
+ * as histograms and tallies, counts and distributions are recognized among
+ * the given reportables, the latter are listed with their number of draws.
+ * Runs writing summaries create their experiments without output files, see
+ * VancarrierModel.main(), so no report or trace is written at all.
+ *
+ * Records may be written from several threads.
+ */
+public class SummaryReporter {
+
+	/** Name of the system property naming the summary file, - for stdout */
+	public static final String PROPERTY = "desmoj.summary";
+
+	/** Where the records go */
+	private final Writer out;
+
+	/** Tells if close() closes out, false if it only flushes it */
+	private final boolean owned;
+
+	/**
+	 * Creates a reporter writing to the given writer, which close() closes.
+	 *
+	 * @param out Writer  the writer taking the records
+	 */
+	public SummaryReporter(Writer out) {
+		this(out, true);
+	}
+
+	/**
+	 * Creates a reporter writing to the given writer.
+	 *
+	 * @param out Writer  the writer taking the records
+	 * @param owned boolean  true if close() closes the writer, false if it
+	 *            only flushes it, e.g. for a writer on the standard output
+	 */
+	public SummaryReporter(Writer out, boolean owned) {
+		this.out = out;
+		this.owned = owned;
+	}
+
+	/**
+	 * Returns a reporter writing to the file named by the system property
+	 * desmoj.summary, or to the standard output if it is "-".
+	 *
+	 * @return SummaryReporter the reporter, null if the property is not set
+	 */
+	public static SummaryReporter fromProperty() throws IOException {
+		String file = System.getProperty(PROPERTY);
+		if (file == null || file.isEmpty()) {
+			return null;
+		}
+		// the standard output is only flushed on close(), it stays open
+		boolean stdout = file.equals("-");
+		Writer out = stdout ? new OutputStreamWriter(System.out) : new FileWriter(file);
+		return new SummaryReporter(new BufferedWriter(out, 1 << 16), !stdout);
+	}
+
+	/**
+	 * Writes the record of a replication.
+	 *
+	 * @param model String  name of the model
+	 * @param replication int  index of the replication
+	 * @param seed long  seed of the replication
+	 * @param counters Map  plain counters of the model by name
+	 * @param reportables Reportable[]  the statistics to summarize
+	 */
+	public void write(String model, int replication, long seed, Map<String, ? extends Number> counters,
+			Reportable... reportables) throws IOException {
+		StringBuilder queues = new StringBuilder();
+		StringBuilder statistics = new StringBuilder();
+		StringBuilder counts = new StringBuilder();
+		StringBuilder streams = new StringBuilder();
+		for (Reportable reportable : reportables) {
+			if (reportable instanceof QueueBased) {
+				QueueBased queue = (QueueBased) reportable;
+				TimeSpan longestWait = queue.maxWaitTime();
+				double maxWait = longestWait == null ? Double.NaN : longestWait.getTimeAsDouble();
+				object(queues, queue.getName())
+						.append("\"observations\":").append(queue.getObservations())
+						.append(",\"averageLength\":").append(number(queue.averageLength()))
+						.append(",\"maxLength\":").append(queue.maxLength())
+						.append(",\"averageWait\":").append(number(queue.averageWaitTime()))
+						.append(",\"maxWait\":").append(number(maxWait))
+						.append(",\"zeroWaits\":").append(queue.zeroWaits()).append('}');
+			} else if (reportable instanceof ValueStatistics) {
+				ValueStatistics values = (ValueStatistics) reportable;
+				object(statistics, values.getName())
+						.append("\"observations\":").append(values.getObservations())
+						.append(",\"mean\":").append(number(values.getMean()))
+						.append(",\"stdDev\":").append(number(values.getStdDev()))
+						.append(",\"min\":").append(number(values.getMinimum()))
+						.append(",\"max\":").append(number(values.getMaximum())).append('}');
+			} else if (reportable instanceof Count) {
+				member(counts, reportable.getName()).append(((Count) reportable).getValue());
+			} else if (reportable instanceof Distribution) {
+				member(streams, reportable.getName()).append(reportable.getObservations());
+			}
+		}
+
+		StringBuilder record = new StringBuilder(256 + queues.length() + statistics.length());
+		record.append("{\"model\":").append(string(model))
+				.append(",\"replication\":").append(replication)
+				.append(",\"seed\":").append(seed)
+				.append(",\"counters\":{");
+		boolean first = true;
+		for (Map.Entry<String, ? extends Number> counter : counters.entrySet()) {
+			if (!first) {
+				record.append(',');
+			}
+			first = false;
+			record.append(string(counter.getKey())).append(':').append(number(counter.getValue().doubleValue()));
+		}
+		record.append("},\"queues\":{").append(queues)
+				.append("},\"statistics\":{").append(statistics)
+				.append("},\"counts\":{").append(counts)
+				.append("},\"streams\":{").append(streams)
+				.append("}}\n");
+		synchronized (this) {
+			out.write(record.toString());
+		}
+	}
+
+	/**
+	 * Flushes the output and closes it, unless the reporter does not own
+	 * it, as for the standard output.
+	 */
+	public synchronized void close() throws IOException {
+		if (owned) {
+			out.close();
+		} else {
+			out.flush();
+		}
+	}
+
+	/**
+	 * Appends the name of a member to a JSON object's members.
+	 */
+	private static StringBuilder member(StringBuilder members, String name) {
+		if (members.length() > 0) {
+			members.append(',');
+		}
+		return members.append(string(name)).append(':');
+	}
+
+	/**
+	 * Appends the name of a member holding an object and opens the object.
+	 */
+	private static StringBuilder object(StringBuilder members, String name) {
+		return member(members, name).append('{');
+	}
+
+	/**
+	 * Returns a number as JSON, whole numbers without fraction, NaN and
+	 * infinities as null.
+	 */
+	private static String number(double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			return "null";
+		}
+		if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			return Long.toString((long) value);
+		}
+		return Double.toString(value);
+	}
+
+	/**
+	 * Returns a string as JSON string literal.
+	 */
+	private static String string(String value) {
+		StringBuilder literal = new StringBuilder(value.length() + 2).append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				literal.append('\\').append(c);
+			} else if (c < 0x20) {
+				literal.append(String.format("\\u%04x", (int) c));
+			} else {
+				literal.append(c);
+			}
+		}
+		return literal.append('"').toString();
+	}
+}
@@ -0,0 +1,275 @@
+package desmoj.demo.vc_model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import desmoj.core.simulator.Experiment;
+import desmoj.core.simulator.TimeInstant;
+
+/**
+ * A network of container terminals sharing truck traffic, simulated in
+ * parallel.
+ *
+ * Every terminal is a VancarrierModel with its own experiment, and thus its
+ * own event-list, driven by its own thread (a logical process). After being
+ * serviced a truck moves on to another terminal with a given probability.
+ * It travels as a timestamped transfer message and arrives there after the
+ * transit time.
+ *
+ * The terminals are synchronised conservatively in time windows (YAWNS
+ * style): the transit time is the lookahead, so a truck sent during the
+ * window [T, T + lookahead) cannot arrive before T + lookahead. All
+ * terminals simulate a window in parallel, wait for each other at the end of
+ * it, and the messages sent are delivered before the next window starts.
+ * Messages are delivered sorted by arrival time, sending terminal and send
+ * order, so results do not depend on thread timing.
+ */
+public class TerminalNetwork {
+
+	/**
+	 * A truck travelling from one terminal to another.
+	 */
+	private static class TruckTransfer implements Comparable<TruckTransfer> {
+
+		/** Point of time the truck arrives at the target terminal */
+		final double arrivalTime;
+
+		/** Index of the sending terminal */
+		final int source;
+
+		/** Index of the receiving terminal */
+		final int target;
+
+		/** Send order within the sending terminal */
+		final long sequence;
+
+		TruckTransfer(double arrivalTime, int source, int target, long sequence) {
+			this.arrivalTime = arrivalTime;
+			this.source = source;
+			this.target = target;
+			this.sequence = sequence;
+		}
+
+		public int compareTo(TruckTransfer other) {
+			int result = Double.compare(arrivalTime, other.arrivalTime);
+			if (result == 0) {
+				result = Integer.compare(source, other.source);
+			}
+			if (result == 0) {
+				result = Long.compare(sequence, other.sequence);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * A terminal of the network: one model, its experiment and its mailboxes.
+	 * Only the terminal's own thread touches the model and the outbox while a
+	 * window is simulated, the inbox is only filled between windows.
+	 */
+	private static class Terminal {
+
+		final VancarrierModel model;
+
+		final Experiment experiment;
+
+		/** Single thread the terminal is simulated by */
+		final ExecutorService thread = Executors.newSingleThreadExecutor();
+
+		/** Trucks arriving from other terminals, to be scheduled */
+		final List<TruckTransfer> inbox = new ArrayList<TruckTransfer>();
+
+		/** Trucks sent to other terminals during the current window */
+		final List<TruckTransfer> outbox = new ArrayList<TruckTransfer>();
+
+		/** Number of trucks sent so far */
+		long sent = 0;
+
+		/** True once the experiment has been started */
+		boolean started = false;
+
+		Terminal(VancarrierModel model, Experiment experiment) {
+			this.model = model;
+			this.experiment = experiment;
+		}
+
+		/**
+		 * Schedules the delivered trucks and simulates up to the end of the
+		 * window.
+		 */
+		void simulateUntil(double windowEnd) {
+			if (!inbox.isEmpty()) {
+				double now = experiment.getSimClock().getTime().getTimeAsDouble();
+				for (TruckTransfer transfer : inbox) {
+					TruckTransferArrival arrival = new TruckTransferArrival(model, "TruckTransferArrival", false);
+					arrival.schedule(transfer.arrivalTime - now);
+				}
+				inbox.clear();
+			}
+
+			experiment.stop(new TimeInstant(windowEnd));
+			if (started) {
+				experiment.proceed();
+			} else {
+				started = true;
+				experiment.start();
+			}
+		}
+	}
+
+	/** The terminals, index is VancarrierModel.terminalIndex */
+	private final List<Terminal> terminals = new ArrayList<Terminal>();
+
+	/** Probability a serviced truck moves on to another terminal */
+	private final double forwardProbability;
+
+	/** Transit time between two terminals, also the lookahead */
+	private final double transitTime;
+
+	/**
+	 * Builds a network of identical terminals.
+	 *
+	 * @param terminalCount int  number of terminals
+	 * @param forwardProbability double  probability a serviced truck moves on
+	 *            to another terminal, chosen uniformly
+	 * @param transitTime double  time a truck needs from one terminal to
+	 *            another, must be positive as it is the lookahead
+	 * @param seed long  base seed, terminal i uses seed + i
+	 */
+	public TerminalNetwork(int terminalCount, double forwardProbability, double transitTime, long seed) {
+		if (terminalCount < 2 || transitTime <= 0) {
+			throw new IllegalArgumentException("A terminal network needs at least two terminals and a positive "
+					+ "transit time: terminals=" + terminalCount + ", transit time=" + transitTime);
+		}
+		this.forwardProbability = forwardProbability;
+		this.transitTime = transitTime;
+
+		// the time settings must be made before the first experiment
+		VancarrierModel.configureTime();
+		for (int i = 0; i < terminalCount; i++) {
+			Experiment experiment = new Experiment("Vancarrier Network Terminal " + i, false);
+			experiment.setSeedGenerator(seed + i);
+			experiment.setShowProgressBar(false);
+
+			VancarrierModel model = new VancarrierModel(null, "Vancarrier Terminal " + i, true, false);
+			model.setParametersFromSystemProperties();
+			model.network = this;
+			model.terminalIndex = i;
+			// transferred trucks would break the chain of batch arrivals
+			model.batchArrivals = false;
+			model.connectToExperiment(experiment);
+			model.seedStreams(seed + i);
+
+			terminals.add(new Terminal(model, experiment));
+		}
+	}
+
+	/**
+	 * Called by every truck leaving a terminal after service. Decides if the
+	 * truck moves on, and posts it to the terminal's outbox if so.
+	 *
+	 * Runs in the thread of the given terminal.
+	 *
+	 * @param terminal VancarrierModel  the terminal the truck leaves
+	 * @param now double  the current time of that terminal
+	 */
+	void truckLeaves(VancarrierModel terminal, double now) {
+		if (terminal.getRoutingSample() >= forwardProbability) {
+			return;
+		}
+		// any other terminal, uniformly chosen
+		int target = (int) (terminal.getRoutingSample() * (terminals.size() - 1));
+		if (target >= terminal.terminalIndex) {
+			target++;
+		}
+		Terminal source = terminals.get(terminal.terminalIndex);
+		source.outbox.add(new TruckTransfer(now + transitTime, terminal.terminalIndex, target, source.sent++));
+	}
+
+	/**
+	 * Simulates all terminals up to the given stop time.
+	 *
+	 * @param stopTime double  the time the simulation stops at
+	 */
+	public void run(double stopTime) throws InterruptedException, ExecutionException {
+		List<Future<?>> window = new ArrayList<Future<?>>(terminals.size());
+		for (long i = 0; i * transitTime < stopTime; i++) {
+			final double windowEnd = Math.min((i + 1) * transitTime, stopTime);
+
+			// simulate the window on all terminals in parallel...
+			for (final Terminal terminal : terminals) {
+				window.add(terminal.thread.submit(new Runnable() {
+					public void run() {
+						terminal.simulateUntil(windowEnd);
+					}
+				}));
+			}
+			// ...and wait for all of them
+			for (Future<?> done : window) {
+				done.get();
+			}
+			window.clear();
+
+			// deliver the trucks sent during the window
+			for (Terminal terminal : terminals) {
+				for (TruckTransfer transfer : terminal.outbox) {
+					terminals.get(transfer.target).inbox.add(transfer);
+				}
+				terminal.outbox.clear();
+			}
+			for (Terminal terminal : terminals) {
+				Collections.sort(terminal.inbox);
+			}
+		}
+	}
+
+	/**
+	 * Stops the terminal threads and closes all experiments.
+	 */
+	public void finish() {
+		for (Terminal terminal : terminals) {
+			terminal.thread.shutdown();
+			terminal.experiment.finish();
+		}
+	}
+
+	/**
+	 * Returns the terminal with the given index.
+	 */
+	public VancarrierModel getTerminal(int index) {
+		return terminals.get(index).model;
+	}
+
+	/**
+	 * Returns the number of terminals.
+	 */
+	public int size() {
+		return terminals.size();
+	}
+
+	/**
+	 * Simulates a network of 50 terminals for 1500 minutes, where 30% of the
+	 * trucks move on to another terminal, 30 minutes away.
+	 */
+	public static void main(java.lang.String[] args) throws Exception {
+		TerminalNetwork network = new TerminalNetwork(50, 0.3, 30.0, 979L);
+
+		long start = System.currentTimeMillis();
+		network.run(1500);
+		long wallTime = System.currentTimeMillis() - start;
+
+		double totalWaitTime = 0;
+		for (int i = 0; i < network.size(); i++) {
+			totalWaitTime += network.getTerminal(i).waitTimeHistogram.getMean();
+		}
+		network.finish();
+
+		System.out.println("Truck Wait Times Mean of " + network.size() + " terminals: "
+				+ (totalWaitTime / network.size()) + " (" + wallTime + " ms)");
+	}
+}
@@ -1,10 +1,12 @@
 package desmoj.demo.vc_model;
 
+import java.util.Comparator;
+
 import co.paralleluniverse.fibers.SuspendExecution;
 import desmoj.core.simulator.Model;
 import desmoj.core.simulator.SimProcess;
-import desmoj.core.simulator.TimeInstant;
-import desmoj.core.simulator.TimeOperations;
+import desmoj.demo.shared.FlightRecorderEvents;
+import desmoj.demo.shared.HeapQueue;
 /**
  * This class is part of the "Vancarrier_1st_p_model".
  * See the description() method of the model class for
@@ -20,7 +22,17 @@ import desmoj.core.simulator.TimeOperations;
  *
  * @author: Olaf Neidhardt
  */
-public class Truck extends SimProcess {
+public class Truck extends SimProcess implements HeapQueue.Member {
+
+	/**
+	 * Discipline of the truck queue putting trucks with an appointment
+	 * before trucks without one (see VancarrierModel.appointmentShare)
+	 */
+	public static final Comparator<Truck> APPOINTMENTS_FIRST = new Comparator<Truck>() {
+		public int compare(Truck a, Truck b) {
+			return Boolean.compare(b.appointment, a.appointment);
+		}
+	};
 
 	/**
 	* Keeps a reference to the model this actor is a part of 
@@ -45,52 +57,132 @@ public class Truck extends SimProcess {
 
 	}
 	
-	private TimeInstant startWait;
-	
-	private TimeInstant endWait;
+	/**
+	 * Point of time this truck entered the parking-lot, kept as a plain
+	 * double in the experiment's reference unit
+	 */
+	private double startWait = Double.NaN;
 	
+	/**
+	 * Point of time this truck was taken out of the queue by a VC
+	 */
+	private double endWait = Double.NaN;
+
+	/** Tells if this truck has an appointment */
+	private boolean appointment = false;
+
+	/** Tells if this truck ran out of patience before being serviced */
+	private boolean reneged = false;
+
+	/** Position of this truck in the heap of the truck queue */
+	private int queueIndex = -1;
+
+	/** The stack of this truck's container in the yard, -1 without a yard */
+	private int stack = -1;
+
+	/**
+	 * Derivatives of the wait with respect to truckArrivalMean and
+	 * serviceMean, set by the VC taking the truck if the model's gradient
+	 * is valid (see WaitGradient)
+	 */
+	private double waitDerivArrival;
+	private double waitDerivService;
+
+	/** Number of times this truck was reused, see recycle() */
+	private long visit = 0;
+
 	/**
 	 * This lifeCycle() describes what the truck does when it
 	 * becomes activated by DESMO-J, thus when it enters the parking-lot.
-	 * 
+	 *
+	 * Each activation is one visit to the terminal (see visitTerminal()).
+	 * A truck that is not shown in the trace is handed back to the model
+	 * afterwards and waits passively until the model reuses it for a later
+	 * arrival (see VancarrierModel.newTruck()). A traced truck ends its
+	 * life cycle after its visit.
+	 *
+	 * The eventRoutine()/lifeCycle() methods are one of the most import
+	 * methods within DESMO-J based simulations. This is where the real
+	 * action happens.
+	 */
+	public void lifeCycle() throws SuspendExecution {
+		while (true) {
+			visitTerminal();
+			if (!myModel.releaseTruck(this)) {
+				return;
+			}
+			passivate();
+		}
+	}
+
+	/**
+	 * Describes a single visit of the truck to the terminal.
+	 *
 	 * It will check if the vancarrier is available.
 	 * If it will activate the vancarrier to get serviced and
 	 * transfer the control to the VC.
 	 * Otherwise it inserts itself into the queue of waiting trucks
 	 * and passivates (it parks and waits).
 	 * It leaves the system after service.
-	 *
-	 * The eventRoutine()/lifeCycle() methods are one of the most import
-	 * methods within DESMO-J based simulations. This is where the real
-	 * action happens.
 	 */
-	public void lifeCycle() throws SuspendExecution {
+	private void visitTerminal() throws SuspendExecution {
+		FlightRecorderEvents.ProcessRun run = FlightRecorderEvents.processRun(this);
+
+		// in batch arrival mode the arriving truck releases its successor
+		if (myModel.batchArrivals) {
+			myModel.truckGenerator.truckArrived();
+		}
+
+		// a truck seeing too long a queue does not even enter
+		if (myModel.balkLength > 0 && myModel.truckQueue.length() >= myModel.balkLength) {
+			sendTraceNote("Truck balks at the queue and leaves system.");
+			myModel.balkedTrucks.update();
+			run.commit();
+			return;
+		}
 
 		// Truck enters parking-lot
 		myModel.truckQueue.insert(this);
-		startWait = presentTime();
+		FlightRecorderEvents.queueOperation(myModel.truckQueue, "insert");
+		if (Double.isNaN(startWait)) {
+			startWait = presentTime().getTimeAsDouble();
+		}
 		sendTraceNote("TruckQueuelength: " + myModel.truckQueue.length());
 
 		// is the VC available ?
 		if (!myModel.idleVCQueue.isEmpty()) { // it is available
 
-			//get the first (and only) VC from the idle VC queue
-			VC vancarrier = myModel.idleVCQueue.first();
-			//to get it does not mean it is removed yet (?!), so do it now:
-			myModel.idleVCQueue.remove(vancarrier);
+			//get an idle VC, in a yard the one nearest to my container,
+			//and remove it from the idle VC queue
+			VC vancarrier = myModel.takeIdleVC(stack);
 
 			//place the VC on the event-list right after me,
 			//to ensure that I will be the next customer to get serviced
 			vancarrier.activateAfter(this);
 
 			//thats all, I can sit back and wait
+			run.commit();
 			passivate();
 
 		} else { // it is NOT available
 
-			// thus I do nothing and wait for service
+			// thus I do nothing and wait for service, as long as my
+			// patience lasts
+			if (myModel.patienceMean > 0) {
+				TruckRenegeEvent renege = new TruckRenegeEvent(myModel, "TruckRenege", false, this);
+				renege.schedule(myModel.timeSpan(myModel.getPatience()));
+			}
+			run.commit();
 			passivate();
 		}
+		run = FlightRecorderEvents.processRun(this);
+
+		if (reneged) {
+			sendTraceNote("Truck ran out of patience and leaves system.");
+			myModel.renegedTrucks.update();
+			run.commit();
+			return;
+		}
 
 		// Ok, I am back online again, which means I was serviced
 		// by the VC. I can leave the systems now.
@@ -101,16 +193,114 @@ public class Truck extends SimProcess {
 		sendTraceNote("Truck was serviced and leaves system.");
 		myModel.trucksServiced.update(++myModel.servicedTrucks);
 		myModel.waitTimeHistogram.update(getWaitTime());
+		if (myModel.isGradientValid()) {
+			myModel.waitGradient.update(waitDerivArrival, waitDerivService);
+		}
+
+		// within a terminal network the truck may move on
+		if (myModel.network != null) {
+			myModel.network.truckLeaves(myModel, presentTime().getTimeAsDouble());
+		}
+		run.commit();
 	}
 	
+	/**
+	 * Prepares this truck for another visit: it forgets its wait, its
+	 * appointment, its container and its fate on the last visit.
+	 */
+	void recycle() {
+		startWait = Double.NaN;
+		endWait = Double.NaN;
+		appointment = false;
+		reneged = false;
+		stack = -1;
+		waitDerivArrival = 0;
+		waitDerivService = 0;
+		visit++;
+	}
+
+	/**
+	 * Returns the number of times this truck was reused, which tells its
+	 * visits to the terminal apart.
+	 */
+	public long getVisit() {
+		return visit;
+	}
+
+	/**
+	 * Presets the arrival time of a truck that has already been waiting as
+	 * part of the fluid truck queue before becoming a process.
+	 *
+	 * @param time double  the estimated arrival time
+	 */
+	public void arrivedAt(double time) {
+		startWait = time;
+	}
+
+	public int getStack() {
+		return stack;
+	}
+
+	public void setStack(int stack) {
+		this.stack = stack;
+	}
+
+	public boolean hasAppointment() {
+		return appointment;
+	}
+
+	public void setAppointment(boolean appointment) {
+		this.appointment = appointment;
+	}
+
+	/**
+	 * Marks this truck as having left the queue unserviced, see
+	 * TruckRenegeEvent.
+	 */
+	public void renege() {
+		reneged = true;
+	}
+
+	public int getQueueIndex() {
+		return queueIndex;
+	}
+
+	public void setQueueIndex(int index) {
+		queueIndex = index;
+	}
+
 	public void endWait() {
-		endWait = presentTime();
+		endWait = presentTime().getTimeAsDouble();
+	}
+
+	/**
+	 * Returns the derivative of this truck's arrival time with respect to
+	 * truckArrivalMean. The arrival time is the sum of all arrival gaps so
+	 * far, so it scales with truckArrivalMean, and it does not depend on
+	 * serviceMean.
+	 */
+	public double getArrivalDerivative() {
+		return startWait / myModel.truckArrivalMean;
+	}
+
+	/**
+	 * Sets the derivatives of this truck's wait with respect to the model's
+	 * stream means.
+	 *
+	 * @param arrival double  derivative with respect to truckArrivalMean
+	 * @param service double  derivative with respect to serviceMean
+	 */
+	public void setWaitDerivative(double arrival, double service) {
+		waitDerivArrival = arrival;
+		waitDerivService = service;
 	}
 	
+	/**
+	 * Returns the time this truck spent on the parking-lot, measured in the
+	 * experiment's reference unit, or NaN if it has not been serviced yet.
+	 */
 	public double getWaitTime() {
-		if (startWait != null && endWait != null) 
-			return TimeOperations.diff(startWait, endWait).getTimeAsDouble();
-		else
-			return Double.NaN;
+		// NaN propagates if either end of the wait is missing
+		return endWait - startWait;
 	}
 }
@@ -0,0 +1,58 @@
+package desmoj.demo.vc_model;
+
+/**
+ * Checks that every truck of a Vancarrier run with reneging and balking is
+ * accounted for: at the stop time every arrived truck has been serviced,
+ * has reneged or balked, still waits in the truck queue or is being served
+ * by a busy VC.
+ *
+ * A truck lost on the way, e.g. one the VC could not activate after its
+ * service, breaks this balance. The check also requires some trucks to
+ * renege, so the renege path is actually exercised. It exits with status 1
+ * on the first violation.
+ */
+public class TruckAccountingCheck {
+
+	/**
+	 * Configurations checked: vcNumber, patienceMean and balkLength
+	 */
+	private static final double[][] CONFIGURATIONS = { { 3, 2, 0 }, { 2, 5, 0 }, { 2, 5, 4 } };
+
+	/**
+	 * Runs the check.
+	 *
+	 * @param args optionally the number of replications per configuration
+	 *            (5) and the stop time (1500)
+	 */
+	public static void main(java.lang.String[] args) {
+		int replications = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		double stopTime = args.length > 1 ? Double.parseDouble(args[1]) : 1500;
+
+		for (double[] configuration : CONFIGURATIONS) {
+			for (int r = 0; r < replications; r++) {
+				String name = "Vancarrier Model " + (int) configuration[0] + " VCs patience " + configuration[1]
+						+ " balk " + (int) configuration[2];
+				VancarrierModel model = new VancarrierModel(null, name, false, false);
+				model.setParametersFromSystemProperties();
+				model.vcNumber = (int) configuration[0];
+				model.patienceMean = configuration[1];
+				model.balkLength = (int) configuration[2];
+				HeadlessRunner.runReplication(model, VancarrierModel.REPLICATION_SEED + r, stopTime);
+
+				long reneged = model.renegedTrucks.getValue();
+				long balked = model.balkedTrucks.getValue();
+				long waiting = model.truckQueue.length();
+				long inService = model.vcNumber - model.idleVCQueue.length();
+				long accounted = model.servicedTrucks + reneged + balked + waiting + inService;
+				if (accounted != model.arrivedTrucks || reneged == 0) {
+					System.err.println("MISMATCH: " + name + ", replication " + r + ": " + model.arrivedTrucks
+							+ " arrived, " + model.servicedTrucks + " serviced, " + reneged + " reneged, " + balked
+							+ " balked, " + waiting + " waiting, " + inService + " in service");
+					System.exit(1);
+				}
+			}
+		}
+		System.out.println(CONFIGURATIONS.length * replications
+				+ " replications with reneging account for all their trucks");
+	}
+}
@@ -1,9 +1,11 @@
 package desmoj.demo.vc_model;
 
+import java.util.Arrays;
+
 import co.paralleluniverse.fibers.SuspendExecution;
 import desmoj.core.simulator.ExternalEvent;
 import desmoj.core.simulator.Model;
-import desmoj.core.simulator.TimeSpan;
+import desmoj.demo.shared.FlightRecorderEvents;
 /**
  * This class represents a process source, which produces continuous
  * truck arrivals in order to keep the simulation running.
@@ -11,6 +13,14 @@ import desmoj.core.simulator.TimeSpan;
  * It will produce a new truck, schedule it now and 
  * place itself on the event-list, when the next truck is expected.
  *
+ * In batch arrival mode (see VancarrierModel.batchArrivals) the generator
+ * only fires once. It pre-draws the arrival times of a whole block of
+ * simulated time into a sorted buffer and hands out one truck at a time:
+ * every arriving truck releases its successor, so just one pending arrival
+ * sits on the event-list and the generator itself causes no further events.
+ * The interarrival times are drawn from the same stream in the same order,
+ * so the arrival process is unchanged.
+ *
  * Creation date: (30.03.00 14:15:47)
  * @author: Olaf Neidhardt
  */
@@ -22,6 +32,18 @@ public class TruckGenerator extends ExternalEvent {
 	*/
 	private VancarrierModel myModel;
 
+	/**
+	 * Absolute arrival times of the current block in ascending order,
+	 * only used in batch arrival mode
+	 */
+	private double[] arrivals = new double[32];
+
+	/** Number of valid entries in the arrival buffer */
+	private int bufferedArrivals = 0;
+
+	/** Index of the next arrival to be released from the buffer */
+	private int nextArrival = 0;
+
 	/**
 	 * TruckGenerator constructor comment.
 	 * @param owner desmoj.Model
@@ -43,22 +65,99 @@ public class TruckGenerator extends ExternalEvent {
 	 * action happens.
 	 */
 	public void eventRoutine() throws SuspendExecution {
+		FlightRecorderEvents.Dispatch dispatch = FlightRecorderEvents.dispatch(this);
+
+		if (myModel.batchArrivals) {
+			//the first truck opens the buffer, every later truck
+			//is released by its predecessor (see truckArrived())
+			fillBlock(presentTime().getTimeAsDouble());
+			releaseNextTruck();
+			dispatch.commit();
+			return;
+		}
 
 		//The truck generator was activated, let's create a new truck
-		Truck newTruck = new Truck(myModel, "Truck", true);
+		Truck newTruck = myModel.newTruck();
 
 		//now let the newly created truck roll on the parking-lot
 		//which means we will activate it after this truck generator has ended
 		newTruck.activate();
 
+		myModel.trucksArrived.update(++myModel.arrivedTrucks);
+
+		//if the parking-lot is overloaded, the truck queue switches to
+		//its fluid representation and takes over the arrivals; the new
+		//truck is counted, it joins the queue only after this generator
+		if (myModel.fluidThreshold > 0 && myModel.truckQueue.length() + 1 >= myModel.fluidThreshold) {
+			myModel.startFluidPhase();
+			dispatch.commit();
+			return;
+		}
+
 		//because we need another truck arrival we will activate
 		//this truck generator again at the next truck arrival time
-		this.schedule(new TimeSpan(myModel.getTruckArrivalTime()));
+		this.schedule(myModel.getTruckArrivalTime(presentTime().getTimeAsDouble()));
 		
 		//from inside to outside...
 		//we draw a new arrival time (difference)
-		//we make a TimeSpan object out of it and
-		//we schedule ourselves at this point of time
+		//and we schedule ourselves at this point of time
+		dispatch.commit();
+	}
+
+	/**
+	 * Called by every truck when it rolls on the parking-lot in batch
+	 * arrival mode. Counts the arrival and puts the next truck from the
+	 * buffer on the event-list.
+	 */
+	public void truckArrived() {
 		myModel.trucksArrived.update(++myModel.arrivedTrucks);
+		releaseNextTruck();
+	}
+
+	/**
+	 * Creates the truck for the next buffered arrival time and activates it
+	 * at that time. Draws a new block first if only the carry-over arrival
+	 * of the current block is left.
+	 */
+	private void releaseNextTruck() {
+		if (nextArrival == bufferedArrivals - 1) {
+			fillBlock(arrivals[nextArrival]);
+		}
+		double arrivalTime = arrivals[nextArrival++];
+
+		Truck newTruck = myModel.newTruck();
+		newTruck.activate(myModel.timeSpan(arrivalTime - presentTime().getTimeAsDouble()));
+	}
+
+	/**
+	 * Pre-draws all arrivals from the given arrival time up to the end of
+	 * the block. The last drawn arrival lies beyond the block end and is
+	 * kept as the first arrival of the next block, so no sample is wasted.
+	 *
+	 * @param start double  absolute time of the first arrival of the block
+	 */
+	private void fillBlock(double start) {
+		double end = start + myModel.arrivalBlockLength;
+		double time = start;
+		arrivals[0] = start;
+		bufferedArrivals = 1;
+		do {
+			time += myModel.getTruckArrivalTime(time);
+			if (bufferedArrivals == arrivals.length) {
+				arrivals = Arrays.copyOf(arrivals, 2 * arrivals.length);
+			}
+			arrivals[bufferedArrivals++] = time;
+		} while (time < end);
+		nextArrival = 0;
+	}
+
+	/**
+	 * Schedules this truck generator after the given delay
+	 * (see VancarrierModel.timeSpan()).
+	 *
+	 * @param delay double  time until activation, in the reference unit
+	 */
+	public void schedule(double delay) {
+		schedule(myModel.timeSpan(delay));
 	}
 }
@@ -0,0 +1,73 @@
+package desmoj.demo.vc_model;
+
+import co.paralleluniverse.fibers.SuspendExecution;
+import desmoj.core.simulator.ExternalEvent;
+import desmoj.core.simulator.Model;
+import desmoj.demo.shared.FlightRecorderEvents;
+/**
+ * This class represents the end of a truck's patience on the parking-lot.
+ *
+ * It is scheduled when a truck has to wait for a VC. If the truck is
+ * still waiting when the event occurs, it leaves the queue without
+ * service. A truck taken into service before is no longer in the queue,
+ * and the event does nothing: the timeout is cancelled lazily rather than
+ * searched and removed from the event-list when the VC takes the truck.
+ * Trucks are reused (see VancarrierModel.newTruck()), so the event also
+ * checks that the truck is still on the visit the timeout was scheduled
+ * for.
+ *
+ * The event is an ExternalEvent holding its truck instead of an event
+ * scheduled for the truck: DESMO-J considers an entity with a pending
+ * event-note as scheduled, and activate() refuses to activate a scheduled
+ * process, so the VC could not wake a truck it took while its timeout was
+ * pending.
+ */
+public class TruckRenegeEvent extends ExternalEvent {
+
+	/**
+	* Keeps a reference to the model this actor is a part of 
+	* useful shortcut to access the model infrastructure
+	*/
+	private VancarrierModel myModel;
+
+	/**
+	 * The waiting truck whose patience ends
+	 */
+	private final Truck truck;
+
+	/**
+	 * The visit of the truck this timeout belongs to
+	 */
+	private final long visit;
+
+	/**
+	 * TruckRenegeEvent constructor.
+	 * @param owner desmoj.Model     the model of this event
+	 * @param name java.lang.String  of this event
+	 * @param showInTrace boolean    show in trace file or not show in trace
+	 * @param truck Truck            the waiting truck
+	 */
+	public TruckRenegeEvent(Model owner, String name, boolean showInTrace, Truck truck) {
+		super(owner, name, showInTrace);
+
+		myModel = (VancarrierModel) owner;
+		this.truck = truck;
+		visit = truck.getVisit();
+	}
+
+	/**
+	 * Lets the truck leave the parking-lot if it is still waiting. The
+	 * truck's position in the queue is its handle (see HeapQueue.Member),
+	 * so checking and removing it takes no search.
+	 */
+	public void eventRoutine() throws SuspendExecution {
+		FlightRecorderEvents.Dispatch dispatch = FlightRecorderEvents.dispatch(this);
+
+		if (truck.getVisit() == visit && myModel.truckQueue.remove(truck)) {
+			FlightRecorderEvents.queueOperation(myModel.truckQueue, "remove");
+			truck.renege();
+			truck.activate();
+		}
+		dispatch.commit();
+	}
+}
@@ -0,0 +1,56 @@
+package desmoj.demo.vc_model;
+
+import co.paralleluniverse.fibers.SuspendExecution;
+import desmoj.core.simulator.ExternalEvent;
+import desmoj.core.simulator.Model;
+import desmoj.demo.shared.FlightRecorderEvents;
+/**
+ * This class represents the arrival of a truck coming from another
+ * terminal of a TerminalNetwork.
+ *
+ * It is scheduled by the network when the truck's transfer message is
+ * delivered to this terminal and lets the truck roll on the parking-lot
+ * just like a truck produced by the TruckGenerator.
+ */
+public class TruckTransferArrival extends ExternalEvent {
+
+	/**
+	* Keeps a reference to the model this actor is a part of 
+	* useful shortcut to access the model infrastructure
+	*/
+	private VancarrierModel myModel;
+
+	/**
+	 * TruckTransferArrival constructor.
+	 * @param owner desmoj.Model     the terminal the truck arrives at
+	 * @param name java.lang.String  of this event
+	 * @param showInTrace boolean    show in trace file or not show in trace
+	 */
+	public TruckTransferArrival(Model owner, String name, boolean showInTrace) {
+		super(owner, name, showInTrace);
+
+		myModel = (VancarrierModel) owner;
+	}
+
+	/**
+	 * Creates the arriving truck and activates it right after this event.
+	 */
+	public void eventRoutine() throws SuspendExecution {
+		FlightRecorderEvents.Dispatch dispatch = FlightRecorderEvents.dispatch(this);
+
+		Truck newTruck = myModel.newTruck();
+		newTruck.activate();
+
+		myModel.trucksArrived.update(++myModel.arrivedTrucks);
+		dispatch.commit();
+	}
+
+	/**
+	 * Schedules this arrival after the given delay.
+	 *
+	 * @param delay double  time until the arrival, in the reference unit
+	 */
+	public void schedule(double delay) {
+		schedule(myModel.timeSpan(delay));
+	}
+}
@@ -3,7 +3,8 @@ package desmoj.demo.vc_model;
 import co.paralleluniverse.fibers.SuspendExecution;
 import desmoj.core.simulator.Model;
 import desmoj.core.simulator.SimProcess;
-import desmoj.core.simulator.TimeSpan;
+import desmoj.demo.shared.FlightRecorderEvents;
+import desmoj.demo.shared.HeapQueue;
 /**
  * This class is part of the "Vancarrier_1st_p_model".
  * See the description() method of the model class for
@@ -20,13 +21,40 @@ import desmoj.core.simulator.TimeSpan;
  * Creation date: (29.03.00 14:13:13)
  * @author: Olaf Neidhardt
  */
-public class VC extends SimProcess {
+public class VC extends SimProcess implements HeapQueue.Member {
 
 	/**
 	* Keeps a reference to the model this actor is a part of 
 	* useful shortcut to access the model infrastructure
 	*/
 	private VancarrierModel myModel;
+
+	/**
+	 * Tells if this VC waited in the idle VC queue before its current
+	 * truck arrived
+	 */
+	private boolean idle = true;
+
+	/**
+	 * Derivatives of the point of time this VC became free with respect to
+	 * truckArrivalMean and serviceMean (see WaitGradient)
+	 */
+	private double freeDerivArrival;
+	private double freeDerivService;
+
+	/**
+	 * The JFR event timing the current activation of this VC
+	 */
+	private FlightRecorderEvents.ProcessRun run;
+
+	/** Number of this VC in a yard, see VancarrierModel.vancarriers */
+	private int number = -1;
+
+	/** The point of the yard this VC is at, -1 without a yard */
+	private int location = -1;
+
+	/** Position of this VC in the heap of the idle VC queue */
+	private int queueIndex = -1;
 	
 	/**
 	 * This method constructs a new VC
@@ -61,17 +89,39 @@ public class VC extends SimProcess {
 	 * 
 	 */
 	public void lifeCycle() throws SuspendExecution {
+		run = FlightRecorderEvents.processRun(this);
 	    
 		//the servicer is always on duty and will never stop working
 		while (true) {
 			//check if there is someone waiting
-			if (myModel.truckQueue.isEmpty()) { // NO,there is no one waiting
+			if (myModel.truckQueue.isEmpty() && myModel.fluidTrucks.mass() >= 1) {
+				// only the fluid part of the queue is left, serve one unit
+				// of it, its wait is measured from the estimated arrival
+				double wait = presentTime().getTimeAsDouble() - myModel.fluidTrucks.takeOne();
+				double travelTime = 0;
+				if (myModel.yard != null) {
+					int stack = myModel.getContainerStack();
+					travelTime = myModel.getTravelTime(location, stack);
+					location = stack;
+				}
+				hold(travelTime + myModel.getServiceTime());
+				myModel.trucksServiced.update(++myModel.servicedTrucks);
+				myModel.waitTimeHistogram.update(wait);
+
+			} else if (myModel.truckQueue.isEmpty()) { // NO,there is no one waiting
 
 				// insert yourself into the idle VC queue
 				myModel.idleVCQueue.insert(this);
+				FlightRecorderEvents.queueOperation(myModel.idleVCQueue, "insert");
+				if (myModel.idleCarriers != null) {
+					myModel.idleCarriers.park(number, location);
+				}
+				idle = true;
 
 				// and wait for things to happen
+				run.commit();
 				passivate();
+				run = FlightRecorderEvents.processRun(this);
 				
 			} else { //YES,there is a customer (truck) waiting
 
@@ -79,22 +129,81 @@ public class VC extends SimProcess {
 				Truck nextTruck = myModel.truckQueue.first();
 				//again first() does not mean it is removed yet, so...
 				myModel.truckQueue.remove(nextTruck);
+				FlightRecorderEvents.queueOperation(myModel.truckQueue, "remove");
 				nextTruck.endWait();
 
+				// an idle VC starts the service at the arrival of the truck,
+				// a busy one at the point of time it became free
+				boolean gradient = myModel.isGradientValid();
+				double startDerivArrival = 0;
+				double startDerivService = 0;
+				if (gradient) {
+					double arrivalDerivative = nextTruck.getArrivalDerivative();
+					startDerivArrival = idle ? arrivalDerivative : freeDerivArrival;
+					startDerivService = idle ? 0 : freeDerivService;
+					nextTruck.setWaitDerivative(startDerivArrival - arrivalDerivative, startDerivService);
+				}
+
+				//in a yard the VC first drives to the truck's container
+				double travelTime = 0;
+				if (myModel.yard != null) {
+					travelTime = myModel.getTravelTime(location, nextTruck.getStack());
+					location = nextTruck.getStack();
+				}
+
 				//now service it
 				//service time is represented by a hold to the VC process
-				hold(new TimeSpan(myModel.getServiceTime()));
+				double serviceTime = myModel.getServiceTime();
+				hold(travelTime + serviceTime);
 				//from inside to outside...
 				//...draw a new period of service time
-				//...make a TimeInstant object out of it
 				//...and hold for this amount of time
+				if (gradient) {
+					freeDerivArrival = startDerivArrival;
+					freeDerivService = startDerivService + serviceTime / myModel.serviceMean;
+				}
+				idle = false;
 
 				//now the truck has received its container and can leave
 				//we will reactivate it though, to allow him to do some
 				//more message sending
-				nextTruck.activate(new TimeSpan(0.0));
+				nextTruck.activate();
 				//the VC can return to top and check for a new customer
 			}
 		}
 	}
+
+	/**
+	 * Places this VC in the yard.
+	 *
+	 * @param number int  number of this VC in the idle VC index
+	 * @param location int  the point of the yard it starts at
+	 */
+	public void placeInYard(int number, int location) {
+		this.number = number;
+		this.location = location;
+	}
+
+	public int getNumber() {
+		return number;
+	}
+
+	public int getQueueIndex() {
+		return queueIndex;
+	}
+
+	public void setQueueIndex(int index) {
+		queueIndex = index;
+	}
+
+	/**
+	 * Holds this VC for the given duration (see VancarrierModel.timeSpan()).
+	 *
+	 * @param duration double  time to hold, in the reference unit
+	 */
+	protected void hold(double duration) throws SuspendExecution {
+		run.commit();
+		hold(myModel.timeSpan(duration));
+		run = FlightRecorderEvents.processRun(this);
+	}
 }
@@ -0,0 +1,29 @@
+package desmoj.demo.vc_model;
+
+import desmoj.demo.shared.ReplicationFarm;
+
+/**
+ * Runs Vancarrier replications in a ReplicationFarm of ReplicationWorker
+ * JVMs.
+ */
+public class VancarrierFarm {
+
+	/**
+	 * Runs 20 Vancarrier replications on one worker per processor and prints
+	 * the merged mean wait.
+	 *
+	 * @param args is an array of command-line arguments (will be ignored here)
+	 */
+	public static void main(java.lang.String[] args) throws Exception {
+		ReplicationFarm farm = new ReplicationFarm(Runtime.getRuntime().availableProcessors(),
+				VancarrierModel.REPLICATION_SEED, ReplicationWorker.class.getName());
+		ReplicationFarm.Summary[] summaries = farm.run(20, 1500);
+
+		double totalWaitTime = 0;
+		for (ReplicationFarm.Summary summary : summaries) {
+			totalWaitTime += summary.meanWait;
+		}
+		System.out.println("Truck Wait Times Mean of " + summaries.length + " iterations: "
+				+ (totalWaitTime / summaries.length));
+	}
+}
@@ -0,0 +1,65 @@
+package desmoj.demo.vc_model;
+
+import desmoj.demo.shared.RankingAndSelection;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Selects the number of VCs for the Vancarrier model with the KN
+ * ranking-and-selection procedure (see RankingAndSelection).
+ *
+ * The cost of a configuration per minute is the cost of the VCs plus the
+ * cost of the trucks' waiting time: a VC costs 1 and a waiting truck 0.5 per
+ * minute.
+ */
+public class VancarrierFleetSelection {
+
+	/**
+	 * Runs the selection over 2 to 6 VCs.
+	 *
+	 * @param args is an array of command-line arguments (will be ignored here)
+	 */
+	public static void main(java.lang.String[] args) throws Exception {
+		final double vcCost = 1.0;
+		final double waitCost = 0.5;
+
+		List<RankingAndSelection.Candidate> candidates = new ArrayList<RankingAndSelection.Candidate>();
+		for (int vcs = 2; vcs <= 6; vcs++) {
+			final int vcNumber = vcs;
+			candidates.add(new RankingAndSelection.Candidate() {
+				/**
+				 * The model of this candidate last run by a thread, reused
+				 * for the thread's next replication if it allows
+				 */
+				private final ThreadLocal<VancarrierModel> models = new ThreadLocal<VancarrierModel>();
+
+				public String getName() {
+					return vcNumber + " VCs";
+				}
+
+				public double simulate(long seed) {
+					VancarrierModel model = models.get();
+					if (model == null || !model.isReusable()) {
+						model = new VancarrierModel(null, "Vancarrier Model " + getName(), false, false);
+						model.setParametersFromSystemProperties();
+						model.vcNumber = vcNumber;
+						models.set(model);
+					}
+					HeadlessRunner.runReplication(model, seed, 1500);
+					// trucks arrive at 1 / truckArrivalMean per minute, each
+					// of them waits meanWait minutes on average
+					return vcNumber * vcCost + waitCost * model.getMeanWait() / model.truckArrivalMean;
+				}
+			});
+		}
+
+		RankingAndSelection selection = new RankingAndSelection(candidates, 10, 0.1, 0.05, 200,
+				VancarrierModel.REPLICATION_SEED, Runtime.getRuntime().availableProcessors());
+		RankingAndSelection.Candidate best = selection.select();
+		for (RankingAndSelection.Candidate candidate : candidates) {
+			System.out.println(candidate.getName() + ": " + selection.getReplications(candidate)
+					+ " replications, mean cost " + selection.getMean(candidate));
+		}
+		System.out.println("Selected: " + best.getName());
+	}
+}
@@ -1,19 +1,35 @@
 package desmoj.demo.vc_model;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Random;
 import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 
 import desmoj.core.dist.ContDistExponential;
 import desmoj.core.dist.ContDistUniform;
+import desmoj.core.dist.Distribution;
 import desmoj.core.simulator.Experiment;
 import desmoj.core.simulator.Model;
-import desmoj.core.simulator.ProcessQueue;
+import desmoj.core.simulator.ModelComponent;
 import desmoj.core.simulator.TimeInstant;
 import desmoj.core.simulator.TimeSpan;
 import desmoj.core.util.AccessPoint;
 import desmoj.core.util.Parameterizable;
+import desmoj.demo.shared.ArrivalRateProfile;
+import desmoj.demo.shared.ControlVariates;
+import desmoj.demo.shared.FlightRecorderEvents;
+import desmoj.demo.shared.FluidQueue;
+import desmoj.demo.shared.HeapQueue;
+import desmoj.demo.shared.LiveMetrics;
+import desmoj.demo.shared.ModelParameters;
+import desmoj.demo.shared.TimeSpanCache;
+import desmoj.demo.shared.WaitGradient;
 import desmoj.extensions.experimentation.reflect.MutableFieldAccessPoint;
+import desmoj.core.statistic.Count;
 import desmoj.core.statistic.Histogram;
 import desmoj.core.statistic.TimeSeries;
 
@@ -42,14 +58,39 @@ public class VancarrierModel extends Model implements Parameterizable {
 	//private ContDistUniform serviceTime;
 	private ContDistExponential serviceTime;
 
+	/**
+	 * Random stream deciding if and where a serviced truck moves on, only
+	 * used if this model is a terminal of a TerminalNetwork.
+	 */
+	private ContDistUniform truckRouting;
+
+	/**
+	 * Random stream drawing the patience of a waiting truck, only used if
+	 * patienceMean is positive.
+	 */
+	private ContDistExponential truckPatience;
+
+	/**
+	 * Random stream deciding if an arriving truck has an appointment, only
+	 * used if appointmentShare is positive.
+	 */
+	private ContDistUniform truckAppointment;
+
+	/**
+	 * Random stream drawing the stack of a truck's container, only used with
+	 * a yard layout.
+	 */
+	private ContDistUniform containerStack;
+
 	/**
 	 * A waiting-queue object is used to represent the parking area for the
 	 * trucks. Every time a truck arrives it is inserted into this queue (it
 	 * parks) and will be removed by the VC for service.
 	 *
 	 * This way all necessary basic statistics are monitored by the queue.
+	 * With appointments the trucks having one are served first.
 	 */
-	protected ProcessQueue<Truck> truckQueue;
+	protected HeapQueue<Truck> truckQueue;
 
 	/**
 	 * A waiting-queue object is used to represent the parking spot for the VC.
@@ -58,12 +99,153 @@ public class VancarrierModel extends Model implements Parameterizable {
 	 * to statistical reasons.)
 	 *
 	 * This way all idle time statistics of the VC are monitored by the queue.
+	 * In a yard the VC nearest to a truck's container is taken out of the
+	 * middle of the queue, which the heap does in logarithmic time.
+	 */
+	protected HeapQueue<VC> idleVCQueue;
+
+	/**
+	 * Model parameter: file of the yard layout (see YardLayout), empty for
+	 * a yard without positions. With a layout every truck's container is at
+	 * a stack drawn uniformly, the nearest idle VC is dispatched to it, and
+	 * the service time is the travel time of the VC to the stack plus a
+	 * handling time drawn from the service time stream.
 	 */
-	protected ProcessQueue<VC> idleVCQueue;
+	protected String yardLayoutFile = "";
+
+	/**
+	 * Model parameter: travel speed of a VC in the yard, in distance units
+	 * of the layout per time unit
+	 */
+	protected double vcSpeed = 300.0;
+
+	/** The yard layout, null without one */
+	protected YardLayout yard;
+
+	/** The idle VCs by their positions in the yard, null without a layout */
+	protected IdleCarrierIndex idleCarriers;
+
+	/** The VCs by their numbers in idleCarriers, null without a layout */
+	protected VC[] vancarriers;
 
 	/** Model parameter: number of VCs */
 	protected int vcNumber;
 
+	/** Model parameter: mean time between two truck arrivals */
+	protected double truckArrivalMean = 2.0;
+
+	/**
+	 * Model parameter: file of a time-varying truck arrival rate (see
+	 * ArrivalRateProfile), empty for a constant rate of 1 / truckArrivalMean.
+	 * The arrival gaps are then drawn by inversion of the profile from
+	 * the same stream, normalized by truckArrivalMean.
+	 */
+	protected String arrivalProfileFile = "";
+
+	/** The time-varying truck arrival rate, null if it is constant */
+	protected ArrivalRateProfile truckArrivalProfile;
+
+	/**
+	 * Model parameter: share of the trucks having an appointment, which
+	 * are served before the trucks without one. 0 keeps the truck queue
+	 * FIFO.
+	 */
+	protected double appointmentShare = 0;
+
+	/**
+	 * Model parameter: mean of the exponential patience of a truck that has
+	 * to wait. A truck still waiting when its patience ends leaves without
+	 * service (see TruckRenegeEvent). 0 for trucks waiting forever.
+	 */
+	protected double patienceMean = 0;
+
+	/**
+	 * Model parameter: truck queue length at which arriving trucks leave
+	 * right away, 0 for trucks always joining the queue.
+	 */
+	protected int balkLength = 0;
+
+	/** Model parameter: mean service time of a VC */
+	protected double serviceMean = 4.0;
+
+	/**
+	 * Model parameter: if true, the mean truck wait is taken from the
+	 * Erlang-C formula instead of simulating, as far as this model is a
+	 * stable pure M/M/c queue (see answerAnalytically())
+	 */
+	protected boolean analyticShortCut = false;
+
+	/** Mean truck wait of a run answered analytically, NaN if simulated */
+	private double analyticMeanWait = Double.NaN;
+
+	/**
+	 * Model parameter: if true, truck arrivals are pre-drawn block-wise
+	 * by the truck generator instead of rescheduling it for every truck
+	 */
+	protected boolean batchArrivals = false;
+
+	/**
+	 * Model parameter: length of simulated time covered by one block of
+	 * pre-drawn truck arrivals in batch arrival mode
+	 */
+	protected double arrivalBlockLength = 60.0;
+
+	/** The TimeSpans handed out by timeSpan(), built by init() */
+	private TimeSpanCache timeSpans;
+
+	/** Trucks done with their visit, reused by newTruck() outside the trace window */
+	private final ArrayDeque<Truck> freeTrucks = new ArrayDeque<Truck>();
+
+	/**
+	 * Component shown in the trace, which sends trace notes exactly while
+	 * the experiment is within its trace window (see inTraceWindow())
+	 */
+	private ModelComponent traceWindow;
+
+	/** Tells if a trace period was set through tracePeriod() */
+	private boolean traced = false;
+
+	/** The truck generator, needed by arriving trucks in batch arrival mode */
+	protected TruckGenerator truckGenerator;
+
+	/** The network this model is a terminal of, null if it stands alone */
+	protected TerminalNetwork network;
+
+	/** Index of this terminal within its network */
+	protected int terminalIndex;
+
+	/**
+	 * Model parameter: truck queue length from which the queue switches to
+	 * its fluid representation (see FluidStepEvent), 0 disables the hybrid
+	 * mode. Only used with per-arrival truck generation.
+	 *
+	 * During a fluid phase the trucks arriving within a fluid step are not
+	 * turned into processes but join the fluid queue as one cohort. Their
+	 * arrivals are still drawn one by one from the truck arrival stream (see
+	 * addFluidArrivals()), so their number scatters as in discrete mode and
+	 * the trucks are taken into service at the same times. Only their
+	 * arrival times are replaced by the mean arrival time of their cohort,
+	 * which moves the wait of a truck by less than fluidStep and leaves the
+	 * mean wait of the cohort unchanged. Service times are drawn one by one
+	 * as well.
+	 */
+	protected int fluidThreshold = 0;
+
+	/** Model parameter: length of a fluid integration step */
+	protected double fluidStep = 5.0;
+
+	/** Fluid part of the truck queue, only filled during fluid phases */
+	protected FluidQueue fluidTrucks = new FluidQueue();
+
+	/** Arrival time of the next truck of a fluid phase, drawn ahead */
+	private double nextFluidArrival = 0;
+
+	/**
+	 * Model parameter: if true, runs without tracing are computed by the
+	 * FifoWaitKernel whenever it is applicable instead of the full simulation
+	 */
+	protected boolean useFastPath = false;
+
 	/** Records numbers of arrived */
 	protected TimeSeries trucksArrived;
 
@@ -73,12 +255,50 @@ public class VancarrierModel extends Model implements Parameterizable {
 	/** Records truck wait times */
 	protected Histogram waitTimeHistogram;
 
+	/** Counts trucks leaving the queue unserviced */
+	protected Count renegedTrucks;
+
+	/** Counts trucks leaving at the sight of the queue */
+	protected Count balkedTrucks;
+
+	/** Index of truckArrivalMean in waitGradient */
+	public static final int ARRIVAL_MEAN = 0;
+
+	/** Index of serviceMean in waitGradient */
+	public static final int SERVICE_MEAN = 1;
+
+	/**
+	 * IPA estimates of the derivatives of the mean truck wait with respect
+	 * to truckArrivalMean and serviceMean, see isGradientValid()
+	 */
+	protected WaitGradient waitGradient;
+
 	/** Number of arrived trucks */
 	protected int arrivedTrucks = 0;
 
 	/** Number of finished trucks */
 	protected int servicedTrucks = 0;
 
+	/** Number and sum of the draws from truckArrivalTime, for control variates */
+	private long arrivalDraws = 0;
+	private double arrivalDrawSum = 0;
+
+	/** Number and sum of the draws from serviceTime, for control variates */
+	private long serviceDraws = 0;
+	private double serviceDrawSum = 0;
+
+	/** Seed of the first replication, replication k uses this seed + k */
+	public static final long REPLICATION_SEED = 979L;
+
+	/**
+	 * Prefix of the system properties setting model parameters, see
+	 * setParametersFromSystemProperties()
+	 */
+	public static final String PARAMETER_PROPERTY_PREFIX = "vancarrier.model.";
+
+	/** Set once DESMO-J's JVM-wide time settings have been made */
+	private static boolean timeConfigured = false;
+
 	/**
 	 * Vancarrier_1st_p_model constructor.
 	 *
@@ -96,6 +316,7 @@ public class VancarrierModel extends Model implements Parameterizable {
 	 */
 	public VancarrierModel(Model owner, String modelName, boolean showInReport, boolean showInTrace) {
 		super(owner, modelName, showInReport, showInTrace);
+		configureTime();
 		// vcNumber = 2;
 		vcNumber = 3;
 	}
@@ -135,8 +356,16 @@ public class VancarrierModel extends Model implements Parameterizable {
 	public void doInitialSchedules() {
 
 		// create the servicer, here make a vancarrier
+		if (yard != null) {
+			vancarriers = new VC[vcNumber];
+			idleCarriers = new IdleCarrierIndex(yard, vcNumber);
+		}
 		for (int i = 0; i < vcNumber; i++) {
 			VC vancarrier = new VC(this, "Van Carrier", true);
+			if (yard != null) {
+				vancarriers[i] = vancarrier;
+				vancarrier.placeInYard(i, yard.getStartPoint(i, vcNumber));
+			}
 
 			// put the vancarrier on duty with placing it on the event-list
 			// first
@@ -146,12 +375,12 @@ public class VancarrierModel extends Model implements Parameterizable {
 		}
 
 		// create a truck spring
-		TruckGenerator firstarrival = new TruckGenerator(this, "TruckArrival", false);
+		truckGenerator = new TruckGenerator(this, "TruckArrival", false);
 
 		// place the truck generator on the event-list, in order to
 		// start producing truck arrivals when the first truck comes
 		// therefore we must use "schedule" instead of "activate"
-		firstarrival.schedule(new TimeSpan(getTruckArrivalTime()));
+		truckGenerator.schedule(getTruckArrivalTime(0));
 
 	}
 
@@ -165,19 +394,448 @@ public class VancarrierModel extends Model implements Parameterizable {
 	 * @return double a serviceTime sample
 	 */
 	public double getServiceTime() {
-		return serviceTime.sample();
+		double sample = serviceTime.sample();
+		serviceDraws++;
+		serviceDrawSum += sample;
+		return sample;
 	}
 
 	/**
-	 * Returns a sample out of the random stream used to measure the next truck
-	 * arrival time.
+	 * Returns a sample out of the random stream used to draw the stack of
+	 * a truck's container in the yard.
+	 *
+	 * @return int a stack of the yard layout
+	 */
+	public int getContainerStack() {
+		return Math.min((int) (containerStack.sample() * yard.getStacks()), yard.getStacks() - 1);
+	}
+
+	/**
+	 * Returns the time a VC needs to drive between two points of the yard.
+	 *
+	 * @param from int  the point the VC is at
+	 * @param to int  the point it drives to
+	 * @return double the travel time
+	 */
+	public double getTravelTime(int from, int to) {
+		return yard.getDistance(from, to) / vcSpeed;
+	}
+
+	/**
+	 * Takes an idle VC out of the idle VC queue. In a yard the idle VC
+	 * nearest to the given stack is taken, found by the idleCarriers index,
+	 * otherwise the one idle the longest.
+	 *
+	 * @param stack int  the stack the VC is needed at, -1 for any
+	 * @return VC the VC, or null if none is idle
+	 */
+	protected VC takeIdleVC(int stack) {
+		VC vancarrier;
+		if (idleCarriers != null && stack >= 0) {
+			int nearest = idleCarriers.nearest(stack);
+			vancarrier = nearest < 0 ? null : vancarriers[nearest];
+		} else {
+			vancarrier = idleVCQueue.first();
+		}
+		if (vancarrier != null) {
+			idleVCQueue.remove(vancarrier);
+			FlightRecorderEvents.queueOperation(idleVCQueue, "remove");
+			if (idleCarriers != null) {
+				idleCarriers.take(vancarrier.getNumber());
+			}
+		}
+		return vancarrier;
+	}
+
+	/**
+	 * Returns the time from the given truck arrival to the next one, drawn
+	 * from the random stream of the truck arrivals. With a time-varying
+	 * arrival rate the sample is turned into the next arrival by inversion
+	 * of truckArrivalProfile.
 	 *
 	 * Creation date: (30.03.00 12:00:05)
 	 * 
+	 * @param time double  the point of time of the latest arrival
 	 * @return double a truckArrivalTime sample
 	 */
-	public double getTruckArrivalTime() {
-		return truckArrivalTime.sample();
+	public double getTruckArrivalTime(double time) {
+		double sample = truckArrivalTime.sample();
+		arrivalDraws++;
+		arrivalDrawSum += sample;
+		if (truckArrivalProfile == null) {
+			return sample;
+		}
+		return truckArrivalProfile.nextArrival(time, sample / truckArrivalMean) - time;
+	}
+
+
+	/**
+	 * Returns a sample out of the random stream used to draw the patience
+	 * of a waiting truck.
+	 *
+	 * @return double a truckPatience sample
+	 */
+	public double getPatience() {
+		return truckPatience.sample();
+	}
+
+	/**
+	 * Returns the control variates of this replication: the sample means of
+	 * the truck arrival gaps and service times drawn so far minus their true
+	 * means. Both have expectation zero (see ControlVariates).
+	 *
+	 * @return double[] the arrival and the service control
+	 */
+	public double[] getControls() {
+		return new double[] { arrivalDraws == 0 ? 0 : arrivalDrawSum / arrivalDraws - truckArrivalMean,
+				serviceDraws == 0 ? 0 : serviceDrawSum / serviceDraws - serviceMean };
+	}
+
+	/**
+	 * Makes DESMO-J's time settings: the reference unit is a minute, the
+	 * unit of all model parameters, and the epsilon is a second. The time
+	 * spans of a model then fall on few distinct tick counts, which
+	 * timeSpan() shares. DESMO-J keeps the settings JVM-wide, so they are
+	 * made only once, by the first model built, before its experiment runs.
+	 */
+	public static synchronized void configureTime() {
+		if (!timeConfigured) {
+			Experiment.setEpsilon(TimeUnit.SECONDS);
+			Experiment.setReferenceUnit(TimeUnit.MINUTES);
+			timeConfigured = true;
+		}
+	}
+
+	/**
+	 * Returns a time span of the given duration.
+	 *
+	 * The trucks, the VCs and the truck generator draw their delays as plain
+	 * doubles from the random streams and turn them into TimeSpans here.
+	 * Durations of the same number of epsilon ticks share one TimeSpan kept
+	 * by a TimeSpanCache, so only delays longer than the cache allocate one.
+	 *
+	 * @param duration double  the duration in the reference unit
+	 * @return TimeSpan the time span
+	 */
+	public TimeSpan timeSpan(double duration) {
+		return timeSpans.get(duration);
+	}
+
+	/**
+	 * Switches the truck queue to its fluid representation. The truck
+	 * generator stops, and a FluidStepEvent takes over the arrivals.
+	 */
+	protected void startFluidPhase() {
+		sendTraceNote("Truck queue switches to fluid mode at length " + truckQueue.length());
+		double now = presentTime().getTimeAsDouble();
+		nextFluidArrival = now + getTruckArrivalTime(now);
+		FluidStepEvent fluidStep = new FluidStepEvent(this, "FluidStep", false);
+		fluidStep.schedule(timeSpan(this.fluidStep));
+	}
+
+	/**
+	 * Returns a truck that has not arrived yet, with an appointment if the
+	 * truckAppointment stream says so, and in a yard with the stack of its
+	 * container.
+	 *
+	 * Within the trace window every truck is a new process shown in the
+	 * trace. Outside of it a truck that has left is reused instead: it waits
+	 * passively at the end of its life cycle loop (see Truck.lifeCycle()),
+	 * so its process is built, named and registered with DESMO-J once, and
+	 * the number of truck processes stays at the largest number of trucks at
+	 * the terminal at the same time.
+	 *
+	 * @return Truck a truck not activated yet
+	 */
+	protected Truck newTruck() {
+		Truck truck;
+		if (inTraceWindow()) {
+			truck = new Truck(this, "Truck", true);
+		} else {
+			truck = freeTrucks.pollLast();
+			if (truck == null) {
+				truck = new Truck(this, "Truck", false);
+			} else {
+				truck.recycle();
+			}
+		}
+		if (truckAppointment != null) {
+			truck.setAppointment(truckAppointment.sample() < appointmentShare);
+		}
+		if (yard != null) {
+			truck.setStack(getContainerStack());
+		}
+		return truck;
+	}
+
+	/**
+	 * Takes back a truck that has left the terminal for reuse by newTruck().
+	 * Trucks shown in the trace are not reused, so the trace never shows one
+	 * truck twice.
+	 *
+	 * @param truck the truck that has left
+	 * @return boolean true if the truck is kept for reuse and has to
+	 *         passivate, false if its life cycle ends
+	 */
+	protected boolean releaseTruck(Truck truck) {
+		if (truck.traceIsOn()) {
+			return false;
+		}
+		freeTrucks.addLast(truck);
+		return true;
+	}
+
+	/**
+	 * Checks if the experiment is within its trace window, i.e. if
+	 * components shown in the trace currently send trace notes.
+	 *
+	 * @return boolean true within the trace window
+	 */
+	protected boolean inTraceWindow() {
+		return traceWindow.currentlySendTraceNotes();
+	}
+
+	/**
+	 * Sets the period of the experiment's trace (see
+	 * Experiment.tracePeriod()). The model has to be connected to its
+	 * experiment. A traced model is always fully simulated, see
+	 * FifoWaitKernel.isApplicable().
+	 *
+	 * @param start TimeInstant  point of time the trace starts at
+	 * @param stop TimeInstant  point of time the trace stops at
+	 */
+	public void tracePeriod(TimeInstant start, TimeInstant stop) {
+		getExperiment().tracePeriod(start, stop);
+		traced = true;
+	}
+
+	/**
+	 * Tells if a trace period was set for this model's experiment.
+	 *
+	 * @return boolean true if the experiment writes a trace
+	 */
+	public boolean isTraced() {
+		return traced;
+	}
+
+	/**
+	 * Ends a fluid phase. The remaining whole trucks of the fluid are turned
+	 * back into truck processes keeping their estimated arrival times, and
+	 * the truck generator is restarted at the next arrival already drawn.
+	 */
+	protected void endFluidPhase() {
+		while (fluidTrucks.mass() >= 1) {
+			Truck truck = newTruck();
+			truck.arrivedAt(fluidTrucks.takeOne());
+			truck.activate();
+		}
+		fluidTrucks.clear();
+		sendTraceNote("Truck queue switches back to discrete mode");
+		truckGenerator.schedule(nextFluidArrival - presentTime().getTimeAsDouble());
+	}
+
+	/**
+	 * Draws the truck arrivals of a fluid phase up to the given time, one
+	 * gap per truck as the truck generator would, and adds them to the fluid
+	 * queue as one cohort at their mean arrival time.
+	 *
+	 * @param to double  the end of the fluid step
+	 */
+	protected void addFluidArrivals(double to) {
+		int arrivals = 0;
+		double arrivalTimes = 0;
+		while (nextFluidArrival <= to) {
+			arrivals++;
+			arrivalTimes += nextFluidArrival;
+			nextFluidArrival += getTruckArrivalTime(nextFluidArrival);
+		}
+		if (arrivals > 0) {
+			fluidTrucks.add(arrivalTimes / arrivals, arrivals);
+			arrivedTrucks += arrivals;
+			trucksArrived.update(arrivedTrucks);
+		}
+	}
+
+	/**
+	 * Seeds all random streams of this model for a replication. Every
+	 * stream gets its own seed from a java.util.Random seeded with the
+	 * replication seed, in a fixed order whether the stream is used or not,
+	 * so the samples of a stream don't depend on which other streams the
+	 * configuration needs. The draw counts of the streams start from zero.
+	 *
+	 * Every path running a replication calls this after connecting the model
+	 * (main, HeadlessRunner.runReplication(), TerminalNetwork) or resetting
+	 * it (resetReplication()), so a replication draws the same samples on
+	 * all of them.
+	 *
+	 * @param seed long  seed of the replication
+	 */
+	public void seedStreams(long seed) {
+		Random seeds = new Random(seed);
+		Distribution[] streams = { truckArrivalTime, serviceTime, truckRouting, truckPatience, truckAppointment,
+				containerStack };
+		for (Distribution stream : streams) {
+			long streamSeed = seeds.nextLong();
+			if (stream != null) {
+				stream.reset(streamSeed);
+			}
+		}
+	}
+
+	/**
+	 * Returns this model to the start of a new replication: all random
+	 * streams are seeded by seedStreams(), all statistics built by init()
+	 * are reset and all counters are set back to zero. The already built
+	 * streams, queues and statistics are reused.
+	 *
+	 * DESMO-J cannot rewind the clock and event-list of an experiment, so a
+	 * reset model can only be reused for runs that don't start the
+	 * experiment, i.e. FifoWaitKernel runs, which need useFastPath (e.g.
+	 * -Dvancarrier.model.useFastPath=true). The state of the processes (VCs,
+	 * truck generator, a yard's idle VCs) is not reset, it only exists in
+	 * full simulations, which still need a new experiment and model per
+	 * replication. main and HeadlessRunner.runReplication() reset the
+	 * models isReusable() allows to run again.
+	 *
+	 * @param seed long  seed of the replication
+	 */
+	public void resetReplication(long seed) {
+		seedStreams(seed);
+
+		trucksArrived.reset();
+		trucksServiced.reset();
+		waitTimeHistogram.reset();
+		renegedTrucks.reset();
+		balkedTrucks.reset();
+		waitGradient.reset();
+		truckQueue.reset();
+		idleVCQueue.reset();
+
+		arrivedTrucks = 0;
+		servicedTrucks = 0;
+		arrivalDraws = 0;
+		arrivalDrawSum = 0;
+		serviceDraws = 0;
+		serviceDrawSum = 0;
+		fluidTrucks.clear();
+		freeTrucks.clear();
+		nextFluidArrival = 0;
+		analyticMeanWait = Double.NaN;
+	}
+
+	/**
+	 * Checks if this model may be passed to HeadlessRunner.runReplication()
+	 * again for another replication of the same configuration: its runs are
+	 * answered analytically, or it has been connected to an experiment and
+	 * its runs are FifoWaitKernel runs, which reset it (see
+	 * resetReplication()). Other models have to be built anew.
+	 *
+	 * @return boolean true if the model can run another replication
+	 */
+	public boolean isReusable() {
+		return isAnsweredAnalytically() || (getExperiment() != null && FifoWaitKernel.isApplicable(this));
+	}
+
+	/**
+	 * Checks if waitGradient holds valid IPA estimates. The derivatives
+	 * follow the sample path of a single FIFO station fed by its own arrival
+	 * stream. Trucks transferred from other terminals and the estimated
+	 * arrival times of the fluid mode are no such sample path, and arrival
+	 * times inverted from a time-varying rate don't scale with
+	 * truckArrivalMean. Trucks leaving unserviced make the waits jump, and
+	 * in a yard the travel times depend on which VC is dispatched.
+	 *
+	 * @return boolean true if the model is neither part of a terminal network
+	 *         nor uses the fluid mode, a time-varying arrival rate,
+	 *         reneging, balking or a yard layout
+	 */
+	public boolean isGradientValid() {
+		return network == null && fluidThreshold == 0 && truckArrivalProfile == null && patienceMean == 0
+				&& balkLength == 0 && yardLayoutFile.isEmpty();
+	}
+
+	/**
+	 * Returns a sample out of the random stream used to route serviced
+	 * trucks to other terminals, uniform on [0,1).
+	 *
+	 * @return double a truckRouting sample
+	 */
+	public double getRoutingSample() {
+		return truckRouting.sample();
+	}
+
+	/**
+	 * Checks if this model is a plain FIFO multi-server station: vcNumber
+	 * identical VCs serving a single FIFO queue of patient trucks, not part
+	 * of a terminal network and without the fluid mode, appointments,
+	 * balking or a yard. The truck arrival rate may vary in time.
+	 *
+	 * @return boolean true if the waits follow the Kiefer-Wolfowitz recursion
+	 *         of FifoWaitKernel
+	 */
+	public boolean isFifoStation() {
+		return vcNumber > 0 && network == null && fluidThreshold == 0 && appointmentShare == 0 && patienceMean == 0
+				&& balkLength == 0 && yardLayoutFile.isEmpty();
+	}
+
+	/**
+	 * Checks if this model is a pure M/M/c queue: a plain FIFO station (see
+	 * isFifoStation()) with a constant truck arrival rate.
+	 *
+	 * @return boolean true if getErlangC() describes this model
+	 */
+	public boolean isMMc() {
+		return isFifoStation() && arrivalProfileFile.isEmpty();
+	}
+
+	/**
+	 * Returns the analytic M/M/c model matching the current configuration:
+	 * exponential truck arrivals and service times, vcNumber VCs. It only
+	 * describes the model if isMMc() holds.
+	 *
+	 * @return ErlangC the analytic counterpart of this model
+	 */
+	public ErlangC getErlangC() {
+		return new ErlangC(vcNumber, truckArrivalMean, serviceMean);
+	}
+
+	/**
+	 * Takes the result of a run from the Erlang-C formula if the
+	 * analyticShortCut parameter is set and this model is a stable pure
+	 * M/M/c queue (see isMMc()). The run then needs no experiment, and
+	 * getMeanWait() returns the analytic steady-state mean wait.
+	 *
+	 * @return boolean true if the run was answered analytically
+	 */
+	public boolean answerAnalytically() {
+		if (!analyticShortCut || !isMMc()) {
+			return false;
+		}
+		ErlangC mmc = getErlangC();
+		if (!mmc.isStable()) {
+			return false;
+		}
+		analyticMeanWait = mmc.getMeanWait();
+		return true;
+	}
+
+	/**
+	 * Checks if the last run was answered by answerAnalytically(). Only
+	 * getMeanWait() holds a result then, the statistics are not built.
+	 *
+	 * @return boolean true for an analytic run
+	 */
+	public boolean isAnsweredAnalytically() {
+		return !Double.isNaN(analyticMeanWait);
+	}
+
+	/**
+	 * Returns the mean truck wait of the last run, simulated or analytic.
+	 *
+	 * @return double the mean wait
+	 */
+	public double getMeanWait() {
+		return isAnsweredAnalytically() ? analyticMeanWait : waitTimeHistogram.getMean();
 	}
 
 	/**
@@ -191,6 +849,11 @@ public class VancarrierModel extends Model implements Parameterizable {
 		trucksArrived = new TimeSeries(this, "arrived", new TimeInstant(0), new TimeInstant(1500), true, false);
 		trucksServiced = new TimeSeries(this, "finished", new TimeInstant(0), new TimeInstant(1500), true, false);
 		waitTimeHistogram = new Histogram(this, "Truck Wait Times", 0, 16, 10, true, false);
+		renegedTrucks = new Count(this, "Reneged Trucks", true, false);
+		balkedTrucks = new Count(this, "Balked Trucks", true, false);
+		waitGradient = new WaitGradient("truckArrivalMean", "serviceMean");
+		traceWindow = new ModelComponent(this, "TraceWindow", true);
+		timeSpans = new TimeSpanCache(Experiment.getReferenceUnit(), TimeSpanCache.DEFAULT_SIZE);
 
 		// distributions DEFAULT
 		// serviceTime = new ContDistUniform(this, "ServiceTimeStream", 3.0, 7.0, true, false);
@@ -199,12 +862,62 @@ public class VancarrierModel extends Model implements Parameterizable {
 		// distributions PROBLEM DESCRIPTION
 		// serviceTime = new ContDistUniform(this, "ServiceTimeStream", 3.5,6.5, true, false);
 		// truckArrivalTime = new ContDistExponential(this, "TruckArrivalTimeStream", 2.0, true, false);
-		serviceTime = new ContDistExponential(this, "ServiceTimeStream", 4.0, true, false);
-		truckArrivalTime = new ContDistExponential(this, "TruckArrivalTimeStream", 2.0, true, false);
+		serviceTime = new ContDistExponential(this, "ServiceTimeStream", serviceMean, true, false);
+		truckArrivalTime = new ContDistExponential(this, "TruckArrivalTimeStream", truckArrivalMean, true, false);
+		if (!arrivalProfileFile.isEmpty()) {
+			try {
+				truckArrivalProfile = ArrivalRateProfile.read(new File(arrivalProfileFile));
+			} catch (IOException e) {
+				throw new IllegalStateException("Cannot read arrival profile " + arrivalProfileFile, e);
+			}
+		}
+		if (network != null) {
+			truckRouting = new ContDistUniform(this, "TruckRoutingStream", 0.0, 1.0, true, false);
+		}
+		if (patienceMean > 0) {
+			truckPatience = new ContDistExponential(this, "TruckPatienceStream", patienceMean, true, false);
+		}
+		if (appointmentShare > 0) {
+			truckAppointment = new ContDistUniform(this, "TruckAppointmentStream", 0.0, 1.0, true, false);
+		}
+		if (!yardLayoutFile.isEmpty()) {
+			try {
+				yard = YardLayout.read(new File(yardLayoutFile));
+			} catch (IOException e) {
+				throw new IllegalStateException("Cannot read yard layout " + yardLayoutFile, e);
+			}
+			containerStack = new ContDistUniform(this, "ContainerStackStream", 0.0, 1.0, true, false);
+		}
 
 		// queues
-		truckQueue = new ProcessQueue<Truck>(this, "Truck Queue", true, false);
-		idleVCQueue = new ProcessQueue<VC>(this, "idle VC Queue", true, false);
+		truckQueue = new HeapQueue<Truck>(this, "Truck Queue", appointmentShare > 0 ? Truck.APPOINTMENTS_FIRST : null,
+				"appointments first", true, false);
+		idleVCQueue = new HeapQueue<VC>(this, "idle VC Queue", null, null, true, false);
+		LiveMetrics.register(this, truckQueue, idleVCQueue);
+	}
+
+	/**
+	 * Writes the summary of this replication: the truck counters, queue
+	 * statistics, wait time moments, reneging and balking counts and the
+	 * number of draws of each stream. FifoWaitKernel runs don't fill the
+	 * queues, so their records leave the queue statistics out.
+	 *
+	 * @param reporter SummaryReporter  the reporter to write to
+	 * @param replication int  index of the replication
+	 * @param seed long  seed of the replication
+	 */
+	public void writeSummary(SummaryReporter reporter, int replication, long seed) throws IOException {
+		Map<String, Long> counters = new LinkedHashMap<String, Long>();
+		counters.put("arrivedTrucks", (long) arrivedTrucks);
+		counters.put("servicedTrucks", (long) servicedTrucks);
+		if (FifoWaitKernel.isApplicable(this)) {
+			reporter.write(getName(), replication, seed, counters, waitTimeHistogram, renegedTrucks, balkedTrucks,
+					truckArrivalTime, serviceTime, truckRouting, truckPatience, truckAppointment, containerStack);
+		} else {
+			reporter.write(getName(), replication, seed, counters, truckQueue, idleVCQueue, waitTimeHistogram,
+					renegedTrucks, balkedTrucks, truckArrivalTime, serviceTime, truckRouting, truckPatience,
+					truckAppointment, containerStack);
+		}
 	}
 
 	/**
@@ -215,67 +928,187 @@ public class VancarrierModel extends Model implements Parameterizable {
 	 * outputs - start the simulation - set the ending criteria (normally the
 	 * time) - initiate reporting - clean up the experiment
 	 *
+	 * If the system property desmoj.summary names a file (- for the
+	 * standard output), every replication writes a line to it through the
+	 * SummaryReporter instead of writing an HTML report and trace. Model
+	 * parameters are set by system properties, see
+	 * setParametersFromSystemProperties().
+	 *
 	 * @param args
 	 *            : is an array of command-line arguments
 	 */
-	public static void main(java.lang.String[] args) {
+	public static void main(java.lang.String[] args) throws IOException {
+		VancarrierModel configuration = new VancarrierModel(null, "Vancarrier Model", false, false);
+		configuration.setParametersFromSystemProperties();
+		ErlangC mmc = configuration.isMMc() ? configuration.getErlangC() : null;
+
+		// a pure M/M/c design point can be answered without simulating
+		if (configuration.answerAnalytically()) {
+			System.out.println("Truck Wait Times Mean of " + mmc + " (Erlang-C): " + configuration.getMeanWait());
+			return;
+		}
+
+		LiveMetrics.startIfConfigured();
+		SummaryReporter summary = SummaryReporter.fromProperty();
 		double TotalWaitTimeHistogram = 0;
+		double TotalSquaredWaitTimeHistogram = 0;
+		double TotalArrivalMeanDerivative = 0;
+		double TotalServiceMeanDerivative = 0;
+		ControlVariates controlVariates = new ControlVariates(2);
+		Experiment experiment = null;
+		VancarrierModel vc_1st_p_Model = null;
 		int k = 0;
 		while (k < 20) {
-			// make a new experiment
-			// Use as experiment name a OS filename compatible string!!
-			// Otherwise your simulation will crash!!
-		
-			Experiment experiment = new Experiment("Vancarrier Model");
-
-			// make a new model
-			// null as first parameter because it is the main model and has no
-			// mastermodel
-			VancarrierModel vc_1st_p_Model = new VancarrierModel(null, "Vancarrier Model", true, false);
-
-			// connect Experiment and Model
-			vc_1st_p_Model.connectToExperiment(experiment);
-
-			// set trace
-			experiment.tracePeriod(new TimeInstant(0), new TimeInstant(100));
-
-			// now set the time this simulation should stop at
-			// let him work 1500 Minutes
-			//experiment.stop(new TimeInstant(1500));
-			experiment.stop(new TimeInstant(1500));
-			experiment.setShowProgressBar(false);
-
-			// start the Experiment with start time 0.0
-			experiment.start();
-
-			// --> now the simulation is running until it reaches its ending
-			// criteria
-			// ...
-			// ...
-			// <-- after reaching ending criteria, the main thread returns here
-
-			// print the report about the already existing reporters into the
-			// report file
-			experiment.report();
-
-			// stop all threads still alive and close all output files
-			experiment.finish();
+			if (vc_1st_p_Model != null && vc_1st_p_Model.isReusable()) {
+				// fast path runs don't touch the experiment, so the model
+				// can be reused with fresh seeds, derived as for a new model
+				vc_1st_p_Model.resetReplication(REPLICATION_SEED + k);
+			} else {
+				// make a new experiment
+				// Use as experiment name a OS filename compatible string!!
+				// Otherwise your simulation will crash!!
+			
+				// summary runs don't create any output files
+				experiment = summary == null ? new Experiment("Vancarrier Model")
+						: new Experiment("Vancarrier Model", false);
+				// every replication needs its own seeds
+				experiment.setSeedGenerator(REPLICATION_SEED + k);
+
+				// make a new model
+				// null as first parameter because it is the main model and has
+				// no mastermodel
+				vc_1st_p_Model = new VancarrierModel(null, "Vancarrier Model", true, false);
+				vc_1st_p_Model.setParametersFromSystemProperties();
+
+				// connect Experiment and Model
+				vc_1st_p_Model.connectToExperiment(experiment);
+				vc_1st_p_Model.seedStreams(REPLICATION_SEED + k);
+
+				// set trace, which rules out the fast path
+				if (summary == null) {
+					vc_1st_p_Model.tracePeriod(new TimeInstant(0), new TimeInstant(100));
+				}
+			}
+
+			if (FifoWaitKernel.isApplicable(vc_1st_p_Model)) {
+				// plain FIFO multi-server run: compute the wait times
+				// directly, no need to start the experiment
+				FifoWaitKernel.run(vc_1st_p_Model, 1500);
+			} else {
+				// now set the time this simulation should stop at
+				// let him work 1500 Minutes
+				//experiment.stop(new TimeInstant(1500));
+				experiment.stop(new TimeInstant(1500));
+				experiment.setShowProgressBar(false);
 
-			TotalWaitTimeHistogram += vc_1st_p_Model.waitTimeHistogram.getMean();
+				// start the Experiment with start time 0.0
+				experiment.start();
 
+				// --> now the simulation is running until it reaches its
+				// ending criteria
+				// ...
+				// ...
+				// <-- after reaching ending criteria, the main thread returns
+				// here
+
+				// print the report about the already existing reporters into
+				// the report file
+				if (summary == null) {
+					FlightRecorderEvents.ReportFlush flush = FlightRecorderEvents.reportFlush(experiment.getName());
+					experiment.report();
+					flush.commit();
+				}
+
+				// stop all threads still alive and close all output files
+				experiment.finish();
+			}
+
+			double mean = vc_1st_p_Model.waitTimeHistogram.getMean();
+			TotalWaitTimeHistogram += mean;
+			TotalSquaredWaitTimeHistogram += mean * mean;
+			TotalArrivalMeanDerivative += vc_1st_p_Model.waitGradient.getDerivative(ARRIVAL_MEAN);
+			TotalServiceMeanDerivative += vc_1st_p_Model.waitGradient.getDerivative(SERVICE_MEAN);
+			controlVariates.add(mean, vc_1st_p_Model.getControls());
+			if (summary != null) {
+				vc_1st_p_Model.writeSummary(summary, k, REPLICATION_SEED + k);
+			}
+
+			LiveMetrics.replicationCompleted();
 			k++;
 		}
 
-		System.out.println("Truck Wait Times Mean of " + k + " iterations: " + (TotalWaitTimeHistogram / k));
+		// the reused experiment of the fast path is still open
+		if (FifoWaitKernel.isApplicable(vc_1st_p_Model)) {
+			experiment.finish();
+		}
+		if (summary != null) {
+			summary.close();
+		}
+
+		double mean = TotalWaitTimeHistogram / k;
+		System.out.println("Truck Wait Times Mean of " + k + " iterations: " + mean);
+		System.out.println("Truck Wait Times Mean with control variates: " + controlVariates);
+
+		// sensitivities of the mean from the same runs (IPA)
+		if (vc_1st_p_Model.isGradientValid()) {
+			System.out.println("d Truck Wait Times Mean / d truckArrivalMean: " + TotalArrivalMeanDerivative / k);
+			System.out.println("d Truck Wait Times Mean / d serviceMean: " + TotalServiceMeanDerivative / k);
+		}
+
+		// regression oracle: the simulated mean of a pure M/M/c queue has to
+		// match Erlang-C, up to the bias of the runs starting empty
+		if (mmc != null && mmc.isStable()) {
+			double variance = (TotalSquaredWaitTimeHistogram - k * mean * mean) / (k - 1);
+			double standardError = Math.sqrt(Math.max(variance, 0) / k);
+			System.out.println("Truck Wait Times Mean of " + mmc + " (Erlang-C): " + mmc.getMeanWait());
+			if (!mmc.agreesWith(mean, standardError, 1500)) {
+				System.err.println("WARNING: simulated mean wait " + mean + " (standard error " + standardError
+						+ ") deviates from the Erlang-C value " + mmc.getMeanWait());
+			}
+		}
+	}
+
+	/**
+	 * Sets the model parameters given as system properties
+	 * vancarrier.model.&lt;name&gt; (see createParameters()), e.g.
+	 * -Dvancarrier.model.useFastPath=true. The command-line entry points call
+	 * this right after creating a model, before setting the parameters they
+	 * vary themselves.
+	 */
+	public void setParametersFromSystemProperties() {
+		ModelParameters.setFromSystemProperties(this, PARAMETER_PROPERTY_PREFIX);
 	}
 
 	/**
 	 * Returns the model parameters: vcNumber : Number of VCs working in the
-	 * yard.
+	 * yard. truckArrivalMean, serviceMean : means of the exponential streams.
+	 * arrivalProfileFile : time-varying truck arrival rate. appointmentShare :
+	 * share of trucks served first. patienceMean, balkLength : trucks
+	 * reneging and balking. yardLayoutFile, vcSpeed : container stacks and
+	 * nearest VC dispatch with travel times.
+	 * analyticShortCut : answer the run with Erlang-C instead of simulating.
+	 * batchArrivals, arrivalBlockLength : block-wise generation of
+	 * truck arrivals. useFastPath : compute plain FIFO
+	 * runs with FifoWaitKernel. fluidThreshold, fluidStep : hybrid fluid mode
+	 * of the truck queue.
 	 */
 	public Map<String, AccessPoint> createParameters() {
 		Map<String, AccessPoint> pm = new TreeMap<String, AccessPoint>();
 		pm.put("vcNumber", new MutableFieldAccessPoint("vcNumber", this));
+		pm.put("truckArrivalMean", new MutableFieldAccessPoint("truckArrivalMean", this));
+		pm.put("arrivalProfileFile", new MutableFieldAccessPoint("arrivalProfileFile", this));
+		pm.put("appointmentShare", new MutableFieldAccessPoint("appointmentShare", this));
+		pm.put("patienceMean", new MutableFieldAccessPoint("patienceMean", this));
+		pm.put("balkLength", new MutableFieldAccessPoint("balkLength", this));
+		pm.put("serviceMean", new MutableFieldAccessPoint("serviceMean", this));
+		pm.put("yardLayoutFile", new MutableFieldAccessPoint("yardLayoutFile", this));
+		pm.put("vcSpeed", new MutableFieldAccessPoint("vcSpeed", this));
+		pm.put("analyticShortCut", new MutableFieldAccessPoint("analyticShortCut", this));
+		pm.put("batchArrivals", new MutableFieldAccessPoint("batchArrivals", this));
+		pm.put("arrivalBlockLength", new MutableFieldAccessPoint("arrivalBlockLength", this));
+		pm.put("useFastPath", new MutableFieldAccessPoint("useFastPath", this));
+		pm.put("fluidThreshold", new MutableFieldAccessPoint("fluidThreshold", this));
+		pm.put("fluidStep", new MutableFieldAccessPoint("fluidStep", this));
 		return pm;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+package desmoj.demo.vc_model;
+
+import desmoj.demo.shared.WaitSurrogate;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fits a WaitSurrogate metamodel of the mean truck wait of the Vancarrier
+ * model as a function of vcNumber and truckArrivalMean, and answers queries
+ * from it.
+ */
+public class VancarrierWaitSurrogate {
+
+	/**
+	 * Fits a metamodel of the mean truck wait over 2 to 6 VCs and truck
+	 * arrival means from 1 to 3 minutes to a sweep, then answers queries
+	 * read from standard input, one per line: vcNumber truckArrivalMean.
+	 * Queries with a standard error above 0.2 minutes are simulated. The
+	 * sweep leaves out overloaded configurations, their waits only grow with
+	 * the run length and would distort the metamodel.
+	 */
+	public static void main(java.lang.String[] args) throws Exception {
+		WaitSurrogate.Simulator vancarrier = new WaitSurrogate.Simulator() {
+			/**
+			 * The model last run by a thread, reused for the thread's next
+			 * replication of the same point if it allows
+			 */
+			private final ThreadLocal<VancarrierModel> models = new ThreadLocal<VancarrierModel>();
+
+			public double simulate(double[] point, long seed) {
+				int vcNumber = (int) Math.round(point[0]);
+				VancarrierModel model = models.get();
+				if (model == null || !model.isReusable() || model.vcNumber != vcNumber
+						|| model.truckArrivalMean != point[1]) {
+					// named by its configuration, as points are simulated side by side
+					model = new VancarrierModel(null, "Vancarrier Model " + vcNumber + " VCs " + point[1], false,
+							false);
+					model.setParametersFromSystemProperties();
+					model.vcNumber = vcNumber;
+					model.truckArrivalMean = point[1];
+					models.set(model);
+				}
+				return HeadlessRunner.runReplication(model, seed, 1500).getMeanWait();
+			}
+		};
+		VancarrierModel configuration = new VancarrierModel(null, "Vancarrier Model", false, false);
+		configuration.setParametersFromSystemProperties();
+		WaitSurrogate surrogate = new WaitSurrogate(vancarrier, 10, VancarrierModel.REPLICATION_SEED,
+				new double[] { 2, 1 }, new double[] { 6, 3 }, Runtime.getRuntime().availableProcessors());
+
+		List<double[]> sweep = new ArrayList<double[]>();
+		for (int vcs = 2; vcs <= 6; vcs++) {
+			for (double arrivalMean = 1.0; arrivalMean <= 3.0; arrivalMean += 0.5) {
+				if (new ErlangC(vcs, arrivalMean, configuration.serviceMean).isStable()) {
+					sweep.add(new double[] { vcs, arrivalMean });
+				}
+			}
+		}
+		surrogate.simulate(sweep);
+		System.out.println("Metamodel fitted to " + surrogate.getDesignPoints() + " design points");
+
+		BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+		String line;
+		while ((line = in.readLine()) != null) {
+			String[] fields = line.trim().split("\\s+");
+			if (fields.length != 2) {
+				continue;
+			}
+			double[] point = { Double.parseDouble(fields[0]), Double.parseDouble(fields[1]) };
+			System.out.println("Truck Wait Times Mean at " + fields[0] + " VCs, arrival mean " + fields[1] + ": "
+					+ surrogate.query(0.2, point));
+		}
+	}
+}
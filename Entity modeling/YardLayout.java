@@ -0,0 +1,270 @@
+package desmoj.demo.vc_model;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The layout of a container yard: the positions of the container stacks
+ * and of the points the VCs start their shift at.
+ *
+ * A VC drives along the rectangular grid of yard lanes, so the distance of
+ * two points is their Manhattan distance. VCs are always at one of the
+ * points of the layout: at their start point, or at the stack they served
+ * last. The points are arranged in a balanced k-d tree once, which the
+ * IdleCarrierIndex of every replication uses to find the idle VC nearest to
+ * a stack.
+ *
+ * The tree is implicit: the points are ordered such that the subtree of the
+ * points from lo to hi (exclusive) has the median point (lo + hi) / 2 at
+ * its root, which splits the subtree at its x coordinate on even depths and
+ * at its y coordinate on odd depths. Its positions in this order are called
+ * slots.
+ *
+ * A layout is immutable and can be shared by models running in parallel.
+ */
+public class YardLayout {
+
+	/** Coordinates of the points, the stacks first, then the start points */
+	private final double[] x;
+	private final double[] y;
+
+	/** Number of stacks */
+	private final int stacks;
+
+	/** The point at every slot of the tree */
+	private final int[] pointAt;
+
+	/** The slot of every point */
+	private final int[] slotOf;
+
+	/** Parent, children and splitting axis (0 for x, 1 for y) of every slot */
+	private final int[] parent;
+	private final int[] left;
+	private final int[] right;
+	private final byte[] axis;
+
+	/**
+	 * Creates a layout.
+	 *
+	 * @param stackX double[]  x coordinates of the stacks
+	 * @param stackY double[]  y coordinates of the stacks
+	 * @param startX double[]  x coordinates of the VC start points, may be
+	 *            empty
+	 * @param startY double[]  y coordinates of the VC start points
+	 */
+	public YardLayout(double[] stackX, double[] stackY, double[] startX, double[] startY) {
+		if (stackX.length == 0 || stackX.length != stackY.length || startX.length != startY.length) {
+			throw new IllegalArgumentException("Invalid yard layout with " + stackX.length + " stacks and "
+					+ startX.length + " start points");
+		}
+		stacks = stackX.length;
+		int points = stacks + startX.length;
+		x = Arrays.copyOf(stackX, points);
+		y = Arrays.copyOf(stackY, points);
+		System.arraycopy(startX, 0, x, stacks, startX.length);
+		System.arraycopy(startY, 0, y, stacks, startY.length);
+		for (int i = 0; i < points; i++) {
+			if (Double.isNaN(x[i]) || Double.isInfinite(x[i]) || Double.isNaN(y[i]) || Double.isInfinite(y[i])) {
+				throw new IllegalArgumentException("Invalid yard position " + x[i] + " " + y[i]);
+			}
+		}
+
+		Integer[] order = new Integer[points];
+		for (int i = 0; i < points; i++) {
+			order[i] = i;
+		}
+		parent = new int[points];
+		left = new int[points];
+		right = new int[points];
+		axis = new byte[points];
+		build(order, 0, points, 0, -1);
+
+		pointAt = new int[points];
+		slotOf = new int[points];
+		for (int slot = 0; slot < points; slot++) {
+			pointAt[slot] = order[slot];
+			slotOf[order[slot]] = slot;
+		}
+	}
+
+	/**
+	 * Reads a layout from a text file. Every line holds a stack ("stack x
+	 * y") or a VC start point ("start x y"). Without start points the VCs
+	 * start at stacks spread over the whole layout. Blank lines and lines
+	 * starting with # are ignored.
+	 *
+	 * @param file File  the file to read
+	 * @return YardLayout the layout
+	 */
+	public static YardLayout read(File file) throws IOException {
+		List<double[]> stackPoints = new ArrayList<double[]>();
+		List<double[]> startPoints = new ArrayList<double[]>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			int number = 0;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				number++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] fields = line.split("\\s+");
+				try {
+					if (fields.length != 3 || !(fields[0].equals("stack") || fields[0].equals("start"))) {
+						throw new NumberFormatException("stack or start and two numbers expected");
+					}
+					double[] point = { Double.parseDouble(fields[1]), Double.parseDouble(fields[2]) };
+					(fields[0].equals("stack") ? stackPoints : startPoints).add(point);
+				} catch (NumberFormatException e) {
+					throw new IOException(file + ":" + number + ": invalid yard position \"" + line + "\"", e);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+
+		double[][] stacks = coordinates(stackPoints);
+		double[][] starts = coordinates(startPoints);
+		return new YardLayout(stacks[0], stacks[1], starts[0], starts[1]);
+	}
+
+	/**
+	 * Returns the number of stacks, which are the points 0 to getStacks() - 1.
+	 */
+	public int getStacks() {
+		return stacks;
+	}
+
+	/**
+	 * Returns the number of points, stacks and start points.
+	 */
+	public int getPoints() {
+		return x.length;
+	}
+
+	/**
+	 * Returns the point a VC starts at. The VCs take the start points in
+	 * turn, or without start points stacks evenly spread over the stack
+	 * list.
+	 *
+	 * @param carrier int  number of the VC, from 0 to carriers - 1
+	 * @param carriers int  number of VCs
+	 * @return int the start point
+	 */
+	public int getStartPoint(int carrier, int carriers) {
+		int starts = x.length - stacks;
+		if (starts > 0) {
+			return stacks + carrier % starts;
+		}
+		return (int) ((long) carrier * stacks / carriers);
+	}
+
+	/**
+	 * Returns the driving distance between two points.
+	 *
+	 * @param from int  a point
+	 * @param to int  another point
+	 * @return double the Manhattan distance of the points
+	 */
+	public double getDistance(int from, int to) {
+		return Math.abs(x[from] - x[to]) + Math.abs(y[from] - y[to]);
+	}
+
+	public double getX(int point) {
+		return x[point];
+	}
+
+	public double getY(int point) {
+		return y[point];
+	}
+
+	/**
+	 * Returns the slot at the root of the tree.
+	 */
+	int getRoot() {
+		return x.length >>> 1;
+	}
+
+	int getPointAt(int slot) {
+		return pointAt[slot];
+	}
+
+	int getSlotOf(int point) {
+		return slotOf[point];
+	}
+
+	/**
+	 * Returns the parent of a slot, -1 for the root.
+	 */
+	int getParent(int slot) {
+		return parent[slot];
+	}
+
+	/**
+	 * Returns the child of a slot on the side of smaller coordinates, -1 if
+	 * there is none.
+	 */
+	int getLeft(int slot) {
+		return left[slot];
+	}
+
+	/**
+	 * Returns the child of a slot on the side of larger coordinates, -1 if
+	 * there is none.
+	 */
+	int getRight(int slot) {
+		return right[slot];
+	}
+
+	/**
+	 * Returns the signed distance of a position from the splitting line of
+	 * a slot, negative on the side of its left child.
+	 */
+	double getOffset(int slot, double positionX, double positionY) {
+		int point = pointAt[slot];
+		return axis[slot] == 0 ? positionX - x[point] : positionY - y[point];
+	}
+
+	/**
+	 * Orders the points from lo to hi (exclusive) into a subtree splitting
+	 * at the given axis, and links it to its parent slot.
+	 */
+	private void build(Integer[] order, int lo, int hi, int depth, int parentSlot) {
+		final int splitAxis = depth % 2;
+		Arrays.sort(order, lo, hi, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return splitAxis == 0 ? Double.compare(x[a], x[b]) : Double.compare(y[a], y[b]);
+			}
+		});
+		int slot = (lo + hi) >>> 1;
+		parent[slot] = parentSlot;
+		axis[slot] = (byte) splitAxis;
+		left[slot] = lo < slot ? (lo + slot) >>> 1 : -1;
+		right[slot] = slot + 1 < hi ? (slot + 1 + hi) >>> 1 : -1;
+		if (lo < slot) {
+			build(order, lo, slot, depth + 1, slot);
+		}
+		if (slot + 1 < hi) {
+			build(order, slot + 1, hi, depth + 1, slot);
+		}
+	}
+
+	/**
+	 * Splits a list of points into their x and y coordinates.
+	 */
+	private static double[][] coordinates(List<double[]> points) {
+		double[][] coordinates = new double[2][points.size()];
+		for (int i = 0; i < points.size(); i++) {
+			coordinates[0][i] = points.get(i)[0];
+			coordinates[1][i] = points.get(i)[1];
+		}
+		return coordinates;
+	}
+}
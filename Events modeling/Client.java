@@ -1,6 +1,7 @@
 package desmoj.demo.mcburger_model_events;
 
 import desmoj.core.simulator.*;
+import desmoj.demo.shared.HeapQueue;
 /**
  * The Client entity encapsulates all information associated with a client.
  * Due to the fact that the only thing a client wants in our model is a single
@@ -8,12 +9,41 @@ import desmoj.core.simulator.*;
  * All necessary statistical information are collected by the queue object.
  * @author Olaf Neidhardt, Ruth Meyer
  */
-public class Client extends Entity {
+public class Client extends Entity implements HeapQueue.Member {
 	
 
-	private TimeInstant startWait;
+	/**
+	 * Point of time this client entered McBurger, kept as a plain double in
+	 * the model's time unit
+	 */
+	private double startWait = Double.NaN;
 	
-	private TimeInstant endWait;
+	/**
+	 * Point of time this client paid and left McBurger
+	 */
+	private double endWait = Double.NaN;
+
+	/**
+	 * Derivatives of the arrival time of this client with respect to the
+	 * model's stream means (see WaitGradient)
+	 */
+	private double[] arrivalDerivative = new double[McBurger.GRADIENT_PARAMETERS];
+
+	/**
+	 * Derivatives of the point of time of this client's latest event: order
+	 * placed, order ready or paid
+	 */
+	private double[] eventDerivative = arrivalDerivative;
+
+	/**
+	 * Number of times this client was reused, see McBurger.newClient()
+	 */
+	private long visit = 0;
+
+	/**
+	 * Position of this client in the heap of the client queue
+	 */
+	private int queueIndex = -1;
 	
 	/**
 	 * Constructor of the client entity.
@@ -26,31 +56,90 @@ public class Client extends Entity {
 		super(owner, name, showInTrace);
 	}
 
-	public TimeInstant getStartWait() {
+	/**
+	 * Clears this client's times and derivatives so it can arrive again,
+	 * see McBurger.newClient().
+	 */
+	void recycle() {
+		startWait = Double.NaN;
+		endWait = Double.NaN;
+		arrivalDerivative = new double[McBurger.GRADIENT_PARAMETERS];
+		eventDerivative = arrivalDerivative;
+		visit++;
+	}
+
+	/**
+	 * Returns the number of times this client was reused, which tells its
+	 * visits to McBurger apart.
+	 */
+	public long getVisit() {
+		return visit;
+	}
+
+	public int getQueueIndex() {
+		return queueIndex;
+	}
+
+	public void setQueueIndex(int index) {
+		queueIndex = index;
+	}
+
+	public double getStartWait() {
 		return startWait;
 	}
 
-	public void setStartWait(TimeInstant startWait) {
+	public void setStartWait(double startWait) {
 		this.startWait = startWait;
 	}
 
-	public TimeInstant getEndWait() {
+	public double getEndWait() {
 		return endWait;
 	}
 
-	public void setEndWait(TimeInstant endWait) {
+	public void setEndWait(double endWait) {
 		this.endWait = endWait;
 	}
 	
 	public void endWait() {
-		this.endWait = presentTime();
+		this.endWait = ((McBurger)getModel()).currentTime();
+	}
+
+	/**
+	 * Sets the derivatives of this client's arrival time, which are also the
+	 * derivatives of its latest event until the next one.
+	 */
+	public void setArrivalDerivative(double[] arrivalDerivative) {
+		this.arrivalDerivative = arrivalDerivative;
+		this.eventDerivative = arrivalDerivative;
+	}
+
+	public double[] getEventDerivative() {
+		return eventDerivative;
+	}
+
+	public void setEventDerivative(double[] eventDerivative) {
+		this.eventDerivative = eventDerivative;
+	}
+
+	/**
+	 * Returns the derivatives of the time this client spent at McBurger,
+	 * valid once it has paid.
+	 */
+	public double[] getWaitDerivative() {
+		double[] waitDerivative = new double[eventDerivative.length];
+		for (int i = 0; i < waitDerivative.length; i++) {
+			waitDerivative[i] = eventDerivative[i] - arrivalDerivative[i];
+		}
+		return waitDerivative;
 	}
 	
+	/**
+	 * Returns the time this client spent at McBurger, measured in the
+	 * model's time unit, or NaN if it has not left yet.
+	 */
 	public double getWaitTime() {
-		if (this.startWait != null && this.endWait != null) 
-			return TimeOperations.diff(this.startWait, this.endWait).getTimeAsDouble();
-		else
-			return Double.NaN;
+		// NaN propagates if either end of the wait is missing
+		return this.endWait - this.startWait;
 	}
 
 }
@@ -1,8 +1,7 @@
 package desmoj.demo.mcburger_model_events;
 
-import java.util.concurrent.TimeUnit;
-
 import desmoj.core.simulator.*;
+import desmoj.demo.shared.FlightRecorderEvents;
 
 /**
  * This class represents the client arrival event
@@ -43,10 +42,28 @@ public class ClientArrivalEvent extends Event<Client> {
 	 * Otherwise the client just waits (does nothing).
 	 */
 	public void eventRoutine(Client client) {
+		FlightRecorderEvents.Dispatch dispatch = FlightRecorderEvents.dispatch(this);
+		myModel.arrivedClients++;
+
+		// in batch arrival mode the arriving client releases its successor
+		if (myModel.batchArrivals) {
+			myModel.clientGenerator.clientArrived();
+		}
+
+		// a client seeing too long a queue does not even enter
+		if (myModel.balkLength > 0 && myModel.clientQueue.length() >= myModel.balkLength) {
+			sendTraceNote(client + " balks at the queue and leaves McBurger.");
+			myModel.balkedClients.update();
+			myModel.releaseClient(client);
+			dispatch.commit();
+			return;
+		}
 
 		// client enters McBurger
 		myModel.clientQueue.insert(client);
-		client.setStartWait(presentTime());
+		FlightRecorderEvents.queueOperation(myModel.clientQueue, "insert");
+		client.setStartWait(myModel.currentTime());
+		client.setArrivalDerivative(myModel.getArrivalDerivative(client.getStartWait()));
 		sendTraceNote(client + " arrives at McBurger.");
 		sendTraceNote("Clients queue: " + myModel.clientQueue.length() + ".");
 
@@ -57,16 +74,37 @@ public class ClientArrivalEvent extends Event<Client> {
 			Dependent dependent = myModel.idleDependentQueue.first();
 			// remove it from the queue
 			myModel.idleDependentQueue.remove(dependent);
+			FlightRecorderEvents.queueOperation(myModel.idleDependentQueue, "remove");
 			// remove the client from the queue
 			myModel.clientQueue.remove(client);
+			FlightRecorderEvents.queueOperation(myModel.clientQueue, "remove");
 			sendTraceNote(client + " is being attended by " + dependent + ".");
 			sendTraceNote("Clients queue: " + myModel.clientQueue.length() + ". Available dependents: " + myModel.idleDependentQueue.length() + ".");
  
-			Order order = new Order(myModel, "Order", true, dependent, client);
+			Order order = myModel.newOrder(dependent, client);
 			// create a new order arrival event
 			OrderArrivalEvent orderArrival = new OrderArrivalEvent(myModel, "OrderArrivalEvent", true);
-			// and schedule it
-			orderArrival.schedule(order, new TimeSpan(myModel.getServiceTimeClientDependent(), TimeUnit.MINUTES));
+			// and schedule it, the idle dependent starts at the arrival
+			double serviceTime = myModel.getServiceTimeClientDependent();
+			myModel.advanceDerivative(client, client.getEventDerivative(), McBurger.DEPENDENT_MEAN, serviceTime);
+			orderArrival.schedule(order, serviceTime);
+		}
+		else if (myModel.patienceMean > 0) {
+			// the client waits as long as its patience lasts
+			ClientRenegeEvent renege = new ClientRenegeEvent(myModel, "ClientRenegeEvent", true);
+			renege.schedule(client, myModel.getPatience());
 		}
+		dispatch.commit();
+	}
+
+	/**
+	 * Schedules this client arrival event after the given delay
+	 * (see McBurger.timeSpan()).
+	 *
+	 * @param client the client arriving
+	 * @param delay time until the arrival, in the model's time unit
+	 */
+	public void schedule(Client client, double delay) {
+		schedule(client, myModel.timeSpan(delay));
 	}
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+package desmoj.demo.mcburger_model_events;
+
+import desmoj.core.simulator.*;
+import desmoj.demo.shared.FlightRecorderEvents;
+/**
+ * This class advances the fluid part of the client queue during a fluid
+ * phase (see McBurger.fluidThreshold).
+ *
+ * Instead of one arrival event per client it adds the clients arriving
+ * within the last fluid step as one cohort, lets idle dependents
+ * attend it and reschedules itself one step later. Once the backlog has
+ * drained below half the threshold, the remaining fluid is turned back into
+ * client entities and the client generator takes over again.
+ */
+public class ClientFluidStepEvent extends ExternalEvent {
+
+	/** a reference to the model this event is a part of.
+	 * Useful shortcut to access the model's static components
+	 */
+	private McBurger myModel;
+
+	/**
+	 * Constructs a new ClientFluidStepEvent.
+	 *
+	 * @param owner the model this event belongs to
+	 * @param name this event's name
+	 * @param showInTrace flag to indicate if this event shall produce output for the trace
+	 */
+	public ClientFluidStepEvent(Model owner, String name, boolean showInTrace) {
+		super(owner, name, showInTrace);
+		myModel = (McBurger)owner;
+	}
+
+	/**
+	 * Integrates the arrivals of the last fluid step and decides whether the
+	 * fluid phase goes on.
+	 */
+	public void eventRoutine() {
+		FlightRecorderEvents.Dispatch dispatch = FlightRecorderEvents.dispatch(this);
+
+		double now = myModel.currentTime();
+
+		// the arrivals of the step form one cohort
+		myModel.addFluidArrivals(now);
+
+		// idle dependents attend the fluid
+		while (myModel.fluidClients.mass() >= 1 && !myModel.idleDependentQueue.isEmpty()) {
+			Dependent dependent = myModel.idleDependentQueue.first();
+			myModel.idleDependentQueue.remove(dependent);
+			FlightRecorderEvents.queueOperation(myModel.idleDependentQueue, "remove");
+			myModel.serveFluidClient(dependent);
+		}
+
+		if (myModel.clientQueue.length() + myModel.fluidClients.mass() < myModel.fluidThreshold / 2.0) {
+			myModel.endFluidPhase();
+		} else {
+			schedule(myModel.timeSpan(myModel.fluidStep));
+		}
+		dispatch.commit();
+	}
+}
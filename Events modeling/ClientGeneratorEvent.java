@@ -1,7 +1,8 @@
 package desmoj.demo.mcburger_model_events;
 
 import desmoj.core.simulator.*;
-import java.util.concurrent.TimeUnit;
+import desmoj.demo.shared.FlightRecorderEvents;
+import java.util.Arrays;
 /**
  * This class represents an entity (and event) source, which continually generates
  * clients (and their arrival events) in order to keep the simulation running.
@@ -9,10 +10,29 @@ import java.util.concurrent.TimeUnit;
  * It will create a new client, schedule its arrival at the McBurger (i.e. create
  * and schedule an arrival event) and then schedule itself for the point in
  * time when the next client arrival is due.
+ *
+ * In batch arrival mode (see McBurger.batchArrivals) the generator only fires
+ * once. It pre-draws the arrival times of a whole block of simulated time
+ * into a sorted buffer, and every client arrival event schedules the arrival
+ * of the next client from that buffer. So just one pending arrival sits on the
+ * event list and the generator itself causes no further events, while the
+ * interarrival times are drawn from the same stream in the same order.
  * @author Olaf Neidhardt, Ruth Meyer
  */
 public class ClientGeneratorEvent extends ExternalEvent {
 
+	/**
+	 * Absolute arrival times of the current block in ascending order,
+	 * only used in batch arrival mode
+	 */
+	private double[] arrivals = new double[32];
+
+	/** Number of valid entries in the arrival buffer */
+	private int bufferedArrivals = 0;
+
+	/** Index of the next arrival to be released from the buffer */
+	private int nextArrival = 0;
+
 	/**
 	 * Constructs a new ClientGeneratorEvent.
 	 *
@@ -31,12 +51,89 @@ public class ClientGeneratorEvent extends ExternalEvent {
 	 * and schedules itself again for the next new client generation.
 	 */
 	public void eventRoutine() {
+		FlightRecorderEvents.Dispatch dispatch = FlightRecorderEvents.dispatch(this);
 
 		McBurger model = (McBurger)getModel();
 
-		Client client = new Client(model, "Client", true);
+		if (model.batchArrivals) {
+			// the first client opens the buffer, every later client
+			// is released by its predecessor (see clientArrived())
+			fillBlock(model, model.currentTime());
+			releaseNextClient(model);
+			dispatch.commit();
+			return;
+		}
+
+		Client client = model.newClient();
+		ClientArrivalEvent clientArrival = new ClientArrivalEvent(model, "ClientArrivalEvent", true);
+		clientArrival.schedule(client, 0.0);
+
+		// if McBurger is overloaded, the client queue switches to its fluid
+		// representation and takes over the arrivals; the new client is
+		// counted, it only joins the queue when its arrival event occurs
+		if (model.fluidThreshold > 0 && model.clientQueue.length() + 1 >= model.fluidThreshold) {
+			model.startFluidPhase();
+			dispatch.commit();
+			return;
+		}
+		schedule(model.getClientArrivalTime(model.currentTime()));
+		dispatch.commit();
+	}
+
+	/**
+	 * Called by every client arrival event in batch arrival mode.
+	 * Schedules the arrival of the next client from the buffer.
+	 */
+	public void clientArrived() {
+		releaseNextClient((McBurger)getModel());
+	}
+
+	/**
+	 * Creates the client for the next buffered arrival time and schedules its
+	 * arrival. Draws a new block first if only the carry-over arrival of the
+	 * current block is left.
+	 */
+	private void releaseNextClient(McBurger model) {
+		if (nextArrival == bufferedArrivals - 1) {
+			fillBlock(model, arrivals[nextArrival]);
+		}
+		double arrivalTime = arrivals[nextArrival++];
+
+		Client client = model.newClient();
 		ClientArrivalEvent clientArrival = new ClientArrivalEvent(model, "ClientArrivalEvent", true);
-		clientArrival.schedule(client, new TimeSpan(0, TimeUnit.MINUTES));
-		schedule(new TimeSpan(model.getClientArrivalTime(), TimeUnit.MINUTES));
+		clientArrival.schedule(client, arrivalTime - model.currentTime());
+	}
+
+	/**
+	 * Pre-draws all arrivals from the given arrival time up to the end of the
+	 * block. The last drawn arrival lies beyond the block end and is kept as
+	 * the first arrival of the next block, so no sample is wasted.
+	 *
+	 * @param model the McBurger model providing the arrival stream
+	 * @param start absolute time of the first arrival of the block
+	 */
+	private void fillBlock(McBurger model, double start) {
+		double end = start + model.arrivalBlockLength;
+		double time = start;
+		arrivals[0] = start;
+		bufferedArrivals = 1;
+		do {
+			time += model.getClientArrivalTime(time);
+			if (bufferedArrivals == arrivals.length) {
+				arrivals = Arrays.copyOf(arrivals, 2 * arrivals.length);
+			}
+			arrivals[bufferedArrivals++] = time;
+		} while (time < end);
+		nextArrival = 0;
+	}
+
+	/**
+	 * Schedules this generator after the given delay (see McBurger.timeSpan()).
+	 *
+	 * @param delay time until the next client generation, in the model's
+	 *            time unit
+	 */
+	public void schedule(double delay) {
+		schedule(((McBurger)getModel()).timeSpan(delay));
 	}
 }
@@ -0,0 +1,79 @@
+package desmoj.demo.mcburger_model_events;
+
+import desmoj.core.simulator.*;
+import desmoj.demo.shared.FlightRecorderEvents;
+
+/**
+ * This class represents the end of a client's patience
+ * in the McBurger model.
+ * It is scheduled when an arriving client has to wait for a dependent.
+ * If the client is still waiting when it occurs, the client leaves
+ * McBurger without ordering.
+ *
+ * A client attended in time is no longer in the client queue, and the
+ * event does nothing: the timeout is cancelled lazily instead of being
+ * searched and removed from the event-list. Clients are reused (see
+ * McBurger.newClient()), so the event also checks that the client is
+ * still on the visit the timeout was scheduled for.
+ *
+ * The event is an ExternalEvent holding its client instead of an event
+ * scheduled for the client, so the pending timeout does not count as a
+ * scheduled event-note of the client when its next event is scheduled.
+ */
+public class ClientRenegeEvent extends ExternalEvent {
+
+	/** a reference to the model this event is a part of.
+	 * Useful shortcut to access the model's static components
+	 */
+	private McBurger myModel;
+
+	/** the waiting client */
+	private Client client;
+
+	/** the visit of the client this timeout belongs to */
+	private long visit;
+
+	/**
+	 * Constructor of the client renege event
+	 *
+	 * @param owner the model this event belongs to
+	 * @param name this event's name
+	 * @param showInTrace flag to indicate if this event shall produce output for the trace
+	 */
+	public ClientRenegeEvent(Model owner, String name, boolean showInTrace) {
+		super(owner, name, showInTrace);
+		myModel = (McBurger)owner;
+	}
+
+	/**
+	 * This eventRoutine() describes what happens when a client
+	 * runs out of patience.
+	 *
+	 * If the client is still waiting, it is taken out of the client
+	 * queue through its position (see HeapQueue.Member) and leaves.
+	 */
+	public void eventRoutine() {
+		FlightRecorderEvents.Dispatch dispatch = FlightRecorderEvents.dispatch(this);
+
+		if (client.getVisit() == visit && myModel.clientQueue.remove(client)) {
+			FlightRecorderEvents.queueOperation(myModel.clientQueue, "remove");
+			sendTraceNote(client + " runs out of patience and leaves McBurger.");
+			myModel.renegedClients.update();
+			myModel.releaseClient(client);
+		}
+		dispatch.commit();
+	}
+
+	/**
+	 * Schedules the end of the patience of a client on its current visit.
+	 *
+	 * @param client the waiting client
+	 * @param patience time until the client leaves, in the model's time
+	 *            unit
+	 */
+	public void schedule(Client client, double patience) {
+		this.client = client;
+		visit = client.getVisit();
+		schedule(myModel.timeSpan(patience));
+	}
+}
@@ -1,8 +1,25 @@
 package desmoj.demo.mcburger_model_events;
 
 import desmoj.core.simulator.*;
+import desmoj.demo.shared.ArrivalRateProfile;
+import desmoj.demo.shared.FlightRecorderEvents;
+import desmoj.demo.shared.FluidQueue;
+import desmoj.demo.shared.HeapQueue;
+import desmoj.demo.shared.LiveMetrics;
+import desmoj.demo.shared.ModelParameters;
+import desmoj.demo.shared.TimeSpanCache;
+import desmoj.demo.shared.WaitGradient;
+import desmoj.core.statistic.Count;
 import desmoj.core.statistic.Histogram;
 import desmoj.core.dist.*;
+import desmoj.core.util.AccessPoint;
+import desmoj.core.util.Parameterizable;
+import desmoj.extensions.experimentation.reflect.MutableFieldAccessPoint;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -16,17 +33,147 @@ import java.util.concurrent.TimeUnit;
  * 
  * @author Olaf Neidhardt, Ruth Meyer
  */
-public class McBurger extends Model {
+public class McBurger extends Model implements Parameterizable {
 
+	/**
+	 * default number of dependents
+	 */
+	public static final int DEFAULT_NUM_DEPENDENTS = 4;
+	
+	/**
+	 * default number of chefs
+	 */
+	public static final int DEFAULT_NUM_CHEFS = 1;
+
+	/**
+	 * prefix of the system properties setting model parameters, see
+	 * setParametersFromSystemProperties()
+	 */
+	public static final String PARAMETER_PROPERTY_PREFIX = "mcburger.model.";
+	
+	/**
+	 * set once DESMO-J's JVM-wide time settings have been made
+	 */
+	private static boolean timeConfigured = false;
+	
 	/**
 	 * model parameter: the number of dependents
 	 */
-	protected static int NUM_DEPENDENTS = 4;
+	protected final int numDependents;
 	
 	/**
 	 * model parameter: the number of chefs
 	 */
-	protected static int NUM_CHEFS = 1;
+	protected final int numChefs;
+	
+	/**
+	 * model parameter: the time unit all durations of this model (stream
+	 * means, fluid step, wait times) are given in
+	 */
+	protected final TimeUnit timeUnit;
+
+	/**
+	 * length of one timeUnit in DESMO-J's reference unit, fixed by init() as
+	 * the reference unit is set once before the first experiment (see
+	 * configureTime())
+	 */
+	private double referenceUnitsPerTimeUnit = 1.0;
+
+	/** the TimeSpans handed out by timeSpan(), built by init() */
+	private TimeSpanCache timeSpans;
+	
+	/**
+	 * model parameter: if true, client arrivals are pre-drawn block-wise by
+	 * the client generator instead of rescheduling it for every client
+	 */
+	protected boolean batchArrivals = false;
+
+	/**
+	 * model parameter: if true, the chefs prepare the pending order with the
+	 * shortest preparation time first instead of the oldest one. The
+	 * preparation time is then drawn when the order is placed.
+	 */
+	protected boolean shortestOrderFirst = false;
+	
+	/**
+	 * model parameter: length of simulated time covered by one block of
+	 * pre-drawn client arrivals in batch arrival mode
+	 */
+	protected double arrivalBlockLength = 60.0;
+	
+	/**
+	 * the client generator, needed by client arrivals in batch arrival mode
+	 */
+	protected ClientGeneratorEvent clientGenerator;
+	
+	/**
+	 * model parameter: the mean time between two client arrivals
+	 */
+	protected double clientArrivalMean = 7.0;
+
+	/**
+	 * model parameter: the mean time a dependent takes to place an order
+	 */
+	protected double orderPlacementMean = 5.0;
+
+	/**
+	 * model parameter: the mean time a chef takes to prepare an order
+	 */
+	protected double preparationMean = 10.0;
+
+	/**
+	 * model parameter: the mean time of the payment
+	 */
+	protected double paymentMean = 2.0;
+
+	/**
+	 * model parameter: time-varying client arrival rate, null for a constant
+	 * rate of 1 / clientArrivalMean. The arrival gaps are then drawn by
+	 * inversion of the profile from the same stream, normalized by
+	 * clientArrivalMean.
+	 */
+	protected ArrivalRateProfile clientArrivalProfile = null;
+	
+	/**
+	 * model parameter: client queue length from which the queue switches to
+	 * its fluid representation (see ClientFluidStepEvent), 0 disables the
+	 * hybrid mode. Only used with per-arrival client generation.
+	 *
+	 * During a fluid phase the clients arriving within a fluid step are not
+	 * turned into entities but join the fluid queue as one cohort. Their
+	 * arrivals are still drawn one by one from the client arrival stream
+	 * (see addFluidArrivals()), so their number scatters as with single
+	 * arrivals and the clients are attended at the same times. Only their
+	 * arrival times are replaced by the mean arrival time of their cohort,
+	 * which moves the wait of a client by less than fluidStep and leaves the
+	 * mean wait of the cohort unchanged. Everything from the moment a
+	 * dependent attends the client on is simulated as usual.
+	 */
+	protected int fluidThreshold = 0;
+
+	/**
+	 * model parameter: mean of the exponential patience of a client that has
+	 * to wait for a dependent. A client still waiting when its patience ends
+	 * leaves (see ClientRenegeEvent). 0 for clients waiting forever. Clients
+	 * of the fluid queue are always patient.
+	 */
+	protected double patienceMean = 0;
+
+	/**
+	 * model parameter: client queue length at which arriving clients leave
+	 * right away, 0 for clients always joining the queue
+	 */
+	protected int balkLength = 0;
+	
+	/**
+	 * model parameter: length of a fluid integration step
+	 */
+	protected double fluidStep = 5.0;
+	
+	/**
+	 * fluid part of the client queue, only filled during fluid phases
+	 */
+	protected FluidQueue fluidClients = new FluidQueue();
 	
 
 	/**
@@ -49,19 +196,25 @@ public class McBurger extends Model {
 	 */
 	private ContDistExponential serviceTimePayment;
 
+	/**
+	 * To determine the patience of a waiting client, only used if
+	 * patienceMean is positive.
+	 */
+	private ContDistExponential clientPatience;
+
 	/**
 	 * A waiting queue object is used to represent client's queue at McBurger.
 	 * Every time a client arrives it is inserted into this queue and will be 
 	 * removed when attended by a dependent.
 	 */
-	protected Queue<Client> clientQueue;
+	protected HeapQueue<Client> clientQueue;
 	
 	/**
 	 * A waiting queue object is used to represent order's queue at McBurger.
 	 * Every time an order is placed it is inserted into this queue and will be 
 	 * removed when attended by a chef.
 	 */
-	protected Queue<Order> orderQueue;
+	protected HeapQueue<Order> orderQueue;
 
 	/**
 	 * A waiting queue object is used to represent the McBurger cash register for the dependent.
@@ -77,6 +230,59 @@ public class McBurger extends Model {
 	
 	protected Histogram waitTimeHistogram;
 
+	/** Number of clients arrived so far, whole fluid clients included */
+	protected long arrivedClients = 0;
+
+	/** Number of clients that have paid and left so far */
+	protected long servedClients = 0;
+
+	/** Arrival time of the next client of a fluid phase, drawn ahead */
+	private double nextFluidArrival = 0;
+
+	/** Counts clients leaving the client queue before being attended */
+	protected Count renegedClients;
+
+	/** Counts clients leaving at the sight of the client queue */
+	protected Count balkedClients;
+
+	/** Index of the client arrival mean in waitGradient and getControls() */
+	public static final int ARRIVAL_MEAN = 0;
+
+	/** Index of the mean time of placing an order in waitGradient and getControls() */
+	public static final int DEPENDENT_MEAN = 1;
+
+	/** Index of the mean time of preparing an order in waitGradient and getControls() */
+	public static final int CHEF_MEAN = 2;
+
+	/** Index of the mean time of the payment in waitGradient and getControls() */
+	public static final int PAYMENT_MEAN = 3;
+
+	/** Number of stream means waitGradient is estimated for */
+	public static final int GRADIENT_PARAMETERS = 4;
+
+	/**
+	 * IPA estimates of the derivatives of the mean client wait with respect
+	 * to the means of the four streams, see isGradientValid()
+	 */
+	protected WaitGradient waitGradient;
+
+	/**
+	 * Clients and orders done with, reused by newClient() and newOrder()
+	 * outside the trace window
+	 */
+	private final ArrayDeque<Client> freeClients = new ArrayDeque<Client>();
+	private final ArrayDeque<Order> freeOrders = new ArrayDeque<Order>();
+
+	/**
+	 * Component shown in the trace, which sends trace notes exactly while
+	 * the experiment is within its trace window (see inTraceWindow())
+	 */
+	private ModelComponent traceWindow;
+
+	/** Number and sum of the draws per stream, for control variates */
+	private long[] drawCounts = new long[GRADIENT_PARAMETERS];
+	private double[] drawSums = new double[GRADIENT_PARAMETERS];
+
 	/**
 	 * McBurger constructor.
 	 *
@@ -96,7 +302,39 @@ public class McBurger extends Model {
 	 *            trace file
 	 */
 	public McBurger(Model owner, String modelName, boolean showInReport, boolean showInTrace) {
+		this(owner, modelName, showInReport, showInTrace, DEFAULT_NUM_DEPENDENTS, DEFAULT_NUM_CHEFS, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * McBurger constructor with an explicit configuration.
+	 *
+	 * All configuration is kept per instance, so differently configured
+	 * McBurger models can be simulated side by side in one JVM.
+	 *
+	 * @param owner
+	 *            the model this model is part of (set to <tt>null</tt> when
+	 *            there is no such model)
+	 * @param modelName
+	 *            this model's name
+	 * @param showInReport
+	 *            flag to indicate if this model shall produce output to the
+	 *            report file
+	 * @param showInTrace
+	 *            flag to indicate if this model shall produce output to the
+	 *            trace file
+	 * @param numDependents
+	 *            the number of dependents
+	 * @param numChefs
+	 *            the number of chefs
+	 * @param timeUnit
+	 *            the time unit the durations of this model are given in
+	 */
+	public McBurger(Model owner, String modelName, boolean showInReport, boolean showInTrace, int numDependents,
+			int numChefs, TimeUnit timeUnit) {
 		super(owner, modelName, showInReport, showInTrace);
+		this.numDependents = numDependents;
+		this.numChefs = numChefs;
+		this.timeUnit = timeUnit;
 	}
 
 	/**
@@ -127,8 +365,8 @@ public class McBurger extends Model {
 	 */
 	public void doInitialSchedules() {
 
-		ClientGeneratorEvent clientGenerator = new ClientGeneratorEvent(this, "ClientGenerator", true);
-		clientGenerator.schedule(new TimeSpan(0, TimeUnit.MINUTES));	
+		clientGenerator = new ClientGeneratorEvent(this, "ClientGenerator", true);
+		clientGenerator.schedule(0.0);	
 	}
 	
 	/**
@@ -136,45 +374,335 @@ public class McBurger extends Model {
 	 */
 	public void init() {
 		
+		referenceUnitsPerTimeUnit = (double) timeUnit.toNanos(1) / Experiment.getReferenceUnit().toNanos(1);
+		timeSpans = new TimeSpanCache(timeUnit, TimeSpanCache.DEFAULT_SIZE);
+		traceWindow = new ModelComponent(this, "TraceWindow", true);
 		waitTimeHistogram = new Histogram(this, "Client Wait Times", 0, 16, 10, true, false);
+		renegedClients = new Count(this, "Reneged Clients", true, false);
+		balkedClients = new Count(this, "Balked Clients", true, false);
+		waitGradient = new WaitGradient("clientArrivalMean", "serviceTimeClientDependent mean",
+				"serviceTimeOrderChef mean", "serviceTimePayment mean");
 
-		clientArrivalTime = new ContDistExponential(this, "ClientArrivalTimeStream", 7.0, true, false);
+		clientArrivalTime = new ContDistExponential(this, "ClientArrivalTimeStream", clientArrivalMean, true, false);
 		clientArrivalTime.setNonNegative(true);
-		serviceTimeClientDependent = new ContDistExponential(this, "ServiceTimeClientDependentStream", 5.0, true, false);
+		serviceTimeClientDependent = new ContDistExponential(this, "ServiceTimeClientDependentStream", orderPlacementMean, true, false);
 		serviceTimeClientDependent.setNonNegative(true);
-		serviceTimeOrderChef = new ContDistExponential(this, "ServiceTimeOrderChefStream", 10.0, true, false);
+		serviceTimeOrderChef = new ContDistExponential(this, "ServiceTimeOrderChefStream", preparationMean, true, false);
 		serviceTimeOrderChef.setNonNegative(true);
-		serviceTimePayment = new ContDistExponential(this, "PaymentArrivalTimeStream", 2.0, true, false);
+		serviceTimePayment = new ContDistExponential(this, "PaymentArrivalTimeStream", paymentMean, true, false);
 		serviceTimePayment.setNonNegative(true);
+		if (patienceMean > 0) {
+			clientPatience = new ContDistExponential(this, "ClientPatienceStream", patienceMean, true, false);
+		}
 		
-		clientQueue = new Queue<Client>(this, "Client Queue", true, true);
+		clientQueue = new HeapQueue<Client>(this, "Client Queue", null, null, true, true);
 		idleDependentQueue = new Queue<Dependent>(this, "idle dependent Queue", true, true);
-		orderQueue = new Queue<Order>(this, "Order Queue", true, true);
+		orderQueue = new HeapQueue<Order>(this, "Order Queue", shortestOrderFirst ? Order.SHORTEST_PREPARATION_FIRST
+				: null, "shortest preparation first", true, true);
 		idleChefQueue = new Queue<Chef>(this, "idle chef Queue", true, true);
+		LiveMetrics.register(this, clientQueue, orderQueue, idleDependentQueue, idleChefQueue);
 		
 		Dependent dependent;
-		for (int i = 0; i < NUM_DEPENDENTS; i++) {
+		for (int i = 0; i < numDependents; i++) {
 			dependent = new Dependent(this, "Dependent", true);
 			idleDependentQueue.insert(dependent);
 		}
 		
 		Chef chef;
-		for (int i = 0; i < NUM_CHEFS; i++) {
+		for (int i = 0; i < numChefs; i++) {
 			chef = new Chef(this, "Chef", true);
 			idleChefQueue.insert(chef);
 		}			
 	}
 	
 	/**
-	 * Returns a sample of the random stream used to determine the next client
-	 * arrival time.
+	 * Returns the current simulation time in this model's time unit.
+	 *
+	 * @return double the present time
+	 */
+	public double currentTime() {
+		return presentTime().getTimeAsDouble() / referenceUnitsPerTimeUnit;
+	}
+
+	/**
+	 * Returns a time span of the given duration.
+	 *
+	 * The events take their delays as plain doubles drawn from the random
+	 * streams and turn them into TimeSpans here. The duration is converted
+	 * to epsilon ticks by a factor fixed in init(), and durations of the
+	 * same number of ticks share one TimeSpan kept by a TimeSpanCache.
+	 * Scheduling an event thus converts no time units, and only delays
+	 * longer than the cache allocate a TimeSpan.
+	 *
+	 * @param duration the duration in the model's time unit
+	 * @return TimeSpan the time span
+	 */
+	public TimeSpan timeSpan(double duration) {
+		return timeSpans.get(duration);
+	}
+	
+	/**
+	 * Makes DESMO-J's time settings (epsilon of a second, reference unit of a
+	 * minute). DESMO-J keeps them JVM-wide, so they are made only once, before
+	 * the first experiment, and never changed while experiments may run in
+	 * other threads. The model itself only relies on its own time unit.
+	 */
+	public static synchronized void configureTime() {
+		if (!timeConfigured) {
+			Experiment.setEpsilon(TimeUnit.SECONDS);
+			Experiment.setReferenceUnit(TimeUnit.MINUTES);
+			timeConfigured = true;
+		}
+	}
+	
+	/**
+	 * Switches the client queue to its fluid representation. The client
+	 * generator stops, and a ClientFluidStepEvent takes over the arrivals.
+	 */
+	protected void startFluidPhase() {
+		sendTraceNote("Client queue switches to fluid mode at length " + clientQueue.length() + ".");
+		nextFluidArrival = currentTime() + getClientArrivalTime(currentTime());
+		ClientFluidStepEvent fluidStepEvent = new ClientFluidStepEvent(this, "ClientFluidStep", true);
+		fluidStepEvent.schedule(timeSpan(fluidStep));
+	}
+	
+	/**
+	 * Ends a fluid phase. The remaining whole clients of the fluid are turned
+	 * back into client entities at the end of the client queue, keeping their
+	 * estimated arrival times, and the client generator is restarted at the
+	 * next arrival already drawn.
+	 */
+	protected void endFluidPhase() {
+		while (fluidClients.mass() >= 1) {
+			Client client = newClient();
+			client.setStartWait(fluidClients.takeOne());
+			clientQueue.insert(client);
+			FlightRecorderEvents.queueOperation(clientQueue, "insert");
+		}
+		fluidClients.clear();
+		sendTraceNote("Client queue switches back to discrete mode.");
+		clientGenerator.schedule(nextFluidArrival - currentTime());
+	}
+	
+	/**
+	 * Draws the client arrivals of a fluid phase up to the given time, one
+	 * gap per client as the client generator would, and adds them to the
+	 * fluid queue as one cohort at their mean arrival time.
+	 *
+	 * @param to the end of the fluid step, in the model's time unit
+	 */
+	protected void addFluidArrivals(double to) {
+		long arrivals = 0;
+		double arrivalTimes = 0;
+		while (nextFluidArrival <= to) {
+			arrivals++;
+			arrivalTimes += nextFluidArrival;
+			nextFluidArrival += getClientArrivalTime(nextFluidArrival);
+		}
+		if (arrivals > 0) {
+			fluidClients.add(arrivalTimes / arrivals, arrivals);
+			arrivedClients += arrivals;
+		}
+	}
+
+	/**
+	 * Lets the given dependent attend one unit of the fluid client queue. The
+	 * client becomes an entity again, with its estimated arrival time, and
+	 * places its order as usual.
+	 *
+	 * @param dependent the dependent attending the client
+	 */
+	protected void serveFluidClient(Dependent dependent) {
+		Client client = newClient();
+		client.setStartWait(fluidClients.takeOne());
+		sendTraceNote(client + " is being attended by " + dependent + ".");
+
+		Order order = newOrder(dependent, client);
+		OrderArrivalEvent orderArrival = new OrderArrivalEvent(this, "OrderArrivalEvent", true);
+		orderArrival.schedule(order, getServiceTimeClientDependent());
+	}
+	
+	/**
+	 * Returns a client that has not arrived yet.
+	 *
+	 * Within the trace window every client is a new entity with its own
+	 * name, so the trace can follow it. Outside of it clients are only
+	 * counted by the queues and the histogram, so a client that has left is
+	 * reused instead: its entity is built and registered with DESMO-J once,
+	 * and the number of client entities stays at the largest number of
+	 * clients at McBurger at the same time.
+	 *
+	 * @return Client a client without arrival time
+	 */
+	protected Client newClient() {
+		if (inTraceWindow()) {
+			return new Client(this, "Client", true);
+		}
+		Client client = freeClients.pollLast();
+		if (client == null) {
+			return new Client(this, "Client", false);
+		}
+		client.recycle();
+		return client;
+	}
+
+	/**
+	 * Returns a client that has left McBurger for reuse by newClient(). It
+	 * must not be referenced by any queue or scheduled event any more.
+	 *
+	 * @param client the client that has left
+	 */
+	protected void releaseClient(Client client) {
+		freeClients.addLast(client);
+	}
+
+	/**
+	 * Returns an order placed by the given client, reused like the clients
+	 * (see newClient()).
+	 *
+	 * @param dependent the dependent taking the order
+	 * @param client the client placing it
+	 * @return Order the order
+	 */
+	protected Order newOrder(Dependent dependent, Client client) {
+		if (inTraceWindow()) {
+			return new Order(this, "Order", true, dependent, client);
+		}
+		Order order = freeOrders.pollLast();
+		if (order == null) {
+			return new Order(this, "Order", false, dependent, client);
+		}
+		order.setDependent(dependent);
+		order.setClient(client);
+		return order;
+	}
+
+	/**
+	 * Returns an order that is ready for reuse by newOrder(). It must not be
+	 * referenced by any queue or scheduled event any more.
+	 *
+	 * @param order the order that is ready
+	 */
+	protected void releaseOrder(Order order) {
+		order.setDependent(null);
+		order.setClient(null);
+		order.setPreparationTime(Double.NaN);
+		freeOrders.addLast(order);
+	}
+
+	/**
+	 * Checks if the experiment is within its trace window, i.e. if
+	 * components shown in the trace currently send trace notes.
+	 *
+	 * @return boolean true within the trace window
+	 */
+	protected boolean inTraceWindow() {
+		return traceWindow.currentlySendTraceNotes();
+	}
+
+	/**
+	 * Returns the derivatives of a client arrival time with respect to the
+	 * stream means. The arrival time is the sum of all arrival gaps so far,
+	 * so it scales with their mean.
+	 *
+	 * @param arrivalTime the arrival time, in the model's time unit
+	 * @return double[] one derivative per stream mean
+	 */
+	protected double[] getArrivalDerivative(double arrivalTime) {
+		double[] derivative = new double[GRADIENT_PARAMETERS];
+		derivative[ARRIVAL_MEAN] = arrivalTime / clientArrivalTime.getMean();
+		return derivative;
+	}
+
+	/**
+	 * Sets the derivatives of the next event of a client. The activity
+	 * leading to it starts at a point of time with the derivatives start and
+	 * lasts a sample of the stream with the given index. An exponential
+	 * sample scales with the mean of its stream.
+	 *
+	 * @param client the client the activity is done for
+	 * @param start derivatives of the start of the activity
+	 * @param parameter index of the stream the duration was drawn from
+	 * @param duration the drawn duration
+	 */
+	protected void advanceDerivative(Client client, double[] start, int parameter, double duration) {
+		double[] derivative = start.clone();
+		derivative[parameter] += duration / getStream(parameter).getMean();
+		client.setEventDerivative(derivative);
+	}
+
+	/**
+	 * Returns the stream with the given index of waitGradient.
+	 */
+	private ContDistExponential getStream(int parameter) {
+		switch (parameter) {
+		case ARRIVAL_MEAN:
+			return clientArrivalTime;
+		case DEPENDENT_MEAN:
+			return serviceTimeClientDependent;
+		case CHEF_MEAN:
+			return serviceTimeOrderChef;
+		default:
+			return serviceTimePayment;
+		}
+	}
+
+	/**
+	 * Returns the control variates of this run: for each of the four
+	 * streams the sample mean of its draws so far minus its true mean. All
+	 * of them have expectation zero (see ControlVariates).
+	 *
+	 * @return double[] one control per stream, indexed like waitGradient
+	 */
+	public double[] getControls() {
+		double[] controls = new double[GRADIENT_PARAMETERS];
+		for (int i = 0; i < GRADIENT_PARAMETERS; i++) {
+			controls[i] = drawCounts[i] == 0 ? 0 : drawSums[i] / drawCounts[i] - getStream(i).getMean();
+		}
+		return controls;
+	}
+
+	/**
+	 * Records a draw of the stream with the given index.
+	 */
+	private double draw(int stream, double sample) {
+		drawCounts[stream]++;
+		drawSums[stream] += sample;
+		return sample;
+	}
+
+	/**
+	 * Checks if waitGradient holds valid IPA estimates. The estimated
+	 * arrival times of the fluid mode are no sample path, arrival times
+	 * inverted from a time-varying rate don't scale with clientArrivalMean,
+	 * and clients leaving unattended make the waits jump, so the
+	 * derivatives are only valid without all of them.
+	 *
+	 * @return boolean true if the fluid mode is off, the arrival rate is
+	 *         constant and clients neither renege nor balk
+	 */
+	public boolean isGradientValid() {
+		return fluidThreshold == 0 && clientArrivalProfile == null && patienceMean == 0 && balkLength == 0;
+	}
+	
+	/**
+	 * Returns the time from the given client arrival to the next one, drawn
+	 * from the random stream of the client arrivals. With a time-varying
+	 * arrival rate the sample is turned into the next arrival by inversion
+	 * of clientArrivalProfile.
 	 *
+	 * @param time the point of time of the latest arrival
 	 * @return double a clientArrivalTime sample
 	 */
-	public double getClientArrivalTime() {
-		return clientArrivalTime.sample();
+	public double getClientArrivalTime(double time) {
+		double sample = draw(ARRIVAL_MEAN, clientArrivalTime.sample());
+		if (clientArrivalProfile == null) {
+			return sample;
+		}
+		return clientArrivalProfile.nextArrival(time, sample / clientArrivalMean) - time;
 	}
 
+
 	/**
 	 * Returns a sample of the random stream used to determine the service time
 	 * related to placing an order.
@@ -182,7 +710,7 @@ public class McBurger extends Model {
 	 * @return double a serviceTime sample
 	 */
 	public double getServiceTimeClientDependent() {
-		return serviceTimeClientDependent.sample();
+		return draw(DEPENDENT_MEAN, serviceTimeClientDependent.sample());
 	}
 	
 	/**
@@ -192,9 +720,31 @@ public class McBurger extends Model {
 	 * @return double a serviceTimeOrderChef sample
 	 */
 	public double getServiceTimeOrderChef() {
-		return serviceTimeOrderChef.sample();
+		return draw(CHEF_MEAN, serviceTimeOrderChef.sample());
 	}
 	
+	/**
+	 * Returns a sample of the random stream used to determine the patience
+	 * of a waiting client.
+	 *
+	 * @return double a clientPatience sample
+	 */
+	public double getPatience() {
+		return clientPatience.sample();
+	}
+
+	/**
+	 * Returns the preparation time of an order a chef starts on. It was
+	 * drawn at the placement of the order if the order queue is ordered by
+	 * it, and is drawn now otherwise.
+	 *
+	 * @param order the order to prepare
+	 * @return double the preparation time
+	 */
+	public double startPreparation(Order order) {
+		return shortestOrderFirst ? order.getPreparationTime() : getServiceTimeOrderChef();
+	}
+
 	/**
 	 * Returns a sample of the random stream used to determine the service time
 	 * related to the payment.
@@ -202,7 +752,42 @@ public class McBurger extends Model {
 	 * @return double a serviceTimePayment sample
 	 */
 	public double getServiceTimePayment() {
-		return serviceTimePayment.sample();
+		return draw(PAYMENT_MEAN, serviceTimePayment.sample());
+	}
+
+	/**
+	 * Sets the model parameters given as system properties
+	 * mcburger.model.&lt;name&gt; (see createParameters()), e.g.
+	 * -Dmcburger.model.batchArrivals=true.
+	 */
+	public void setParametersFromSystemProperties() {
+		ModelParameters.setFromSystemProperties(this, PARAMETER_PROPERTY_PREFIX);
+	}
+
+	/**
+	 * Returns the model parameters: clientArrivalMean : mean time between
+	 * two client arrivals. orderPlacementMean, preparationMean, paymentMean :
+	 * means of the exponential service streams. batchArrivals, arrivalBlockLength : block-wise
+	 * generation of client arrivals. shortestOrderFirst : order queue
+	 * discipline of the chefs. patienceMean, balkLength : clients reneging
+	 * and balking. fluidThreshold, fluidStep : hybrid fluid mode of the
+	 * client queue. The numbers of dependents and chefs are fixed by the
+	 * constructor.
+	 */
+	public Map<String, AccessPoint> createParameters() {
+		Map<String, AccessPoint> pm = new TreeMap<String, AccessPoint>();
+		pm.put("clientArrivalMean", new MutableFieldAccessPoint("clientArrivalMean", this));
+		pm.put("orderPlacementMean", new MutableFieldAccessPoint("orderPlacementMean", this));
+		pm.put("preparationMean", new MutableFieldAccessPoint("preparationMean", this));
+		pm.put("paymentMean", new MutableFieldAccessPoint("paymentMean", this));
+		pm.put("batchArrivals", new MutableFieldAccessPoint("batchArrivals", this));
+		pm.put("arrivalBlockLength", new MutableFieldAccessPoint("arrivalBlockLength", this));
+		pm.put("shortestOrderFirst", new MutableFieldAccessPoint("shortestOrderFirst", this));
+		pm.put("patienceMean", new MutableFieldAccessPoint("patienceMean", this));
+		pm.put("balkLength", new MutableFieldAccessPoint("balkLength", this));
+		pm.put("fluidThreshold", new MutableFieldAccessPoint("fluidThreshold", this));
+		pm.put("fluidStep", new MutableFieldAccessPoint("fluidStep", this));
+		return pm;
 	}
 
 	/**
@@ -214,14 +799,20 @@ public class McBurger extends Model {
 	 * simulation - initiate reporting - clean up the experiment
 	 *
 	 * @param args
-	 *            is an array of command-line arguments (will be ignored here)
+	 *            optionally the file of a time-varying client arrival rate
+	 *            (see ArrivalRateProfile); model parameters are set by
+	 *            system properties, see setParametersFromSystemProperties()
 	 */
-	public static void main(java.lang.String[] args) {
+	public static void main(java.lang.String[] args) throws IOException {
 
+		LiveMetrics.startIfConfigured();
 		McBurger model = new McBurger(null, "McBurger", true, true);
+		model.setParametersFromSystemProperties();
+		if (args.length > 0) {
+			model.clientArrivalProfile = ArrivalRateProfile.read(new File(args[0]));
+		}
 		
-		Experiment.setEpsilon(TimeUnit.SECONDS);
-		Experiment.setReferenceUnit(TimeUnit.MINUTES);
+		configureTime();
 		Experiment exp = new Experiment("McBurgerExperiment");		
 
 		model.connectToExperiment(exp);
@@ -231,7 +822,14 @@ public class McBurger extends Model {
 		exp.tracePeriod(new TimeInstant(0), new TimeInstant(100, TimeUnit.MINUTES)); 																				// trace
 		exp.debugPeriod(new TimeInstant(0), new TimeInstant(50, TimeUnit.MINUTES)); 
 		exp.start();
+		FlightRecorderEvents.ReportFlush flush = FlightRecorderEvents.reportFlush(exp.getName());
 		exp.report();
+		flush.commit();
 		exp.finish();
+
+		// sensitivities of the mean wait from the same run (IPA)
+		if (model.isGradientValid()) {
+			System.out.println(model.waitGradient);
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,86 @@
+package desmoj.demo.mcburger_model_events;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks that McBurger models simulated side by side on a thread pool give
+ * exactly the results of the same replications simulated one after the
+ * other, i.e. that no configuration or state leaks between models through
+ * static fields or DESMO-J's JVM-wide settings.
+ *
+ * Every staffing configuration of McBurgerStaffingStudy is simulated with
+ * the same seeds sequentially and then concurrently, and the mean and the
+ * number of observations of every waitTimeHistogram are compared bit for
+ * bit. The check exits with status 1 on the first mismatch.
+ */
+public class McBurgerConcurrencyCheck {
+
+	/**
+	 * Runs the check.
+	 *
+	 * @param args optionally the number of replications per configuration
+	 *            (2) and the number of threads (number of processors)
+	 */
+	public static void main(java.lang.String[] args) throws Exception {
+		int replications = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+		List<int[]> runs = new ArrayList<int[]>();
+		for (int dependents = 1; dependents <= 6; dependents++) {
+			for (int chefs = 1; chefs <= 3; chefs++) {
+				for (int r = 0; r < replications; r++) {
+					runs.add(new int[] { dependents, chefs, r });
+				}
+			}
+		}
+
+		List<double[]> sequential = new ArrayList<double[]>();
+		for (int[] run : runs) {
+			sequential.add(simulate(run));
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<double[]>> concurrent = new ArrayList<Future<double[]>>();
+		try {
+			for (final int[] run : runs) {
+				concurrent.add(pool.submit(new Callable<double[]>() {
+					public double[] call() {
+						return simulate(run);
+					}
+				}));
+			}
+
+			for (int i = 0; i < runs.size(); i++) {
+				double[] expected = sequential.get(i);
+				double[] actual = concurrent.get(i).get();
+				if (Double.doubleToLongBits(expected[0]) != Double.doubleToLongBits(actual[0])
+						|| expected[1] != actual[1]) {
+					int[] run = runs.get(i);
+					System.err.println("MISMATCH: " + run[0] + " dependents, " + run[1] + " chefs, replication "
+							+ run[2] + ": sequential mean wait " + expected[0] + " of " + (long) expected[1]
+							+ " clients, concurrent " + actual[0] + " of " + (long) actual[1]);
+					System.exit(1);
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+		System.out.println(runs.size() + " replications on " + threads
+				+ " threads match their sequential counterparts exactly");
+	}
+
+	/**
+	 * Simulates one replication of a run (dependents, chefs, replication).
+	 *
+	 * @return double[] the mean client wait and the number of observations
+	 */
+	private static double[] simulate(int[] run) {
+		McBurger model = McBurgerStaffingStudy.runReplication(run[0], run[1], 979L + run[2], 1500);
+		return new double[] { model.waitTimeHistogram.getMean(), model.waitTimeHistogram.getObservations() };
+	}
+}
@@ -0,0 +1,68 @@
+package desmoj.demo.mcburger_model_events;
+
+import desmoj.demo.shared.ReplicationCache;
+import desmoj.demo.shared.ReplicationFarm;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Worker process running McBurger replications for a replication farm
+ * (see desmoj.demo.shared.ReplicationFarm for the protocol).
+ *
+ * Reads replications from the standard input and answers each of them with
+ * a ReplicationFarm.Summary on the standard output, counting arrived and
+ * served clients. Stops on a negative index or when the input is closed.
+ * With -Dmcburger.cache=<directory> the replications are looked up in and
+ * added to a ReplicationCache (see McBurgerStaffingStudy.cacheKey()).
+ */
+public class McBurgerReplicationWorker {
+
+	/**
+	 * Serves replications for the coordinator.
+	 *
+	 * @param args number of dependents and number of chefs (defaults of
+	 *            McBurger if missing)
+	 */
+	public static void main(java.lang.String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+
+		int numDependents = args.length > 0 ? Integer.parseInt(args[0]) : McBurger.DEFAULT_NUM_DEPENDENTS;
+		int numChefs = args.length > 1 ? Integer.parseInt(args[1]) : McBurger.DEFAULT_NUM_CHEFS;
+		String cacheDirectory = System.getProperty("mcburger.cache");
+		ReplicationCache cache = cacheDirectory == null ? null
+				: new ReplicationCache(new File(cacheDirectory), 256L * 1024 * 1024);
+
+		DataOutputStream out = ReplicationFarm.openWorkerOutput();
+		DataInputStream in = ReplicationFarm.openWorkerInput();
+		try {
+			while (true) {
+				int replication = in.readInt();
+				if (replication < 0) {
+					break;
+				}
+				long seed = in.readLong();
+				double stopTime = in.readDouble();
+
+				McBurger model = McBurgerStaffingStudy.createModel(numDependents, numChefs);
+				if (cache != null) {
+					// the cached summary carries the replication it was first simulated as
+					ReplicationFarm.Summary summary = McBurgerStaffingStudy.runCached(cache, model, replication,
+							seed, stopTime).summary;
+					new ReplicationFarm.Summary(replication, seed, summary.meanWait, summary.stdDevWait,
+							summary.observations, summary.arrived, summary.serviced).write(out);
+				} else {
+					McBurgerStaffingStudy.runReplication(model, seed, stopTime);
+					new ReplicationFarm.Summary(replication, seed, model.waitTimeHistogram.getMean(),
+							model.waitTimeHistogram.getStdDev(), model.waitTimeHistogram.getObservations(),
+							model.arrivedClients, model.servedClients).write(out);
+				}
+				out.flush();
+			}
+		} catch (EOFException e) {
+			// the coordinator went away, nothing left to do
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package desmoj.demo.mcburger_model_events;
+
+import desmoj.demo.shared.RankingAndSelection;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Selects the best mix of dependents and chefs for McBurger with the KN
+ * ranking-and-selection procedure (see RankingAndSelection).
+ *
+ * The cost of a configuration per minute is the staff cost plus the cost of
+ * the clients' time at McBurger: a dependent costs 1, a chef 1.5 and a
+ * waiting client 0.5 per minute.
+ */
+public class McBurgerStaffingSelection {
+
+	/**
+	 * Runs the selection over 1 to 6 dependents and 1 to 3 chefs.
+	 *
+	 * @param args is an array of command-line arguments (will be ignored here)
+	 */
+	public static void main(java.lang.String[] args) throws Exception {
+		final double dependentCost = 1.0;
+		final double chefCost = 1.5;
+		final double waitCost = 0.5;
+
+		List<RankingAndSelection.Candidate> candidates = new ArrayList<RankingAndSelection.Candidate>();
+		for (int dependents = 1; dependents <= 6; dependents++) {
+			for (int chefs = 1; chefs <= 3; chefs++) {
+				final int numDependents = dependents;
+				final int numChefs = chefs;
+				candidates.add(new RankingAndSelection.Candidate() {
+					public String getName() {
+						return numDependents + " dependents, " + numChefs + " chefs";
+					}
+
+					public double simulate(long seed) {
+						McBurger model = McBurgerStaffingStudy.runReplication(numDependents, numChefs, seed, 1500);
+						// clients arrive at 1 / clientArrivalMean per minute,
+						// each of them stays meanWait minutes on average
+						return numDependents * dependentCost + numChefs * chefCost
+								+ waitCost * model.waitTimeHistogram.getMean() / model.clientArrivalMean;
+					}
+				});
+			}
+		}
+
+		RankingAndSelection selection = new RankingAndSelection(candidates, 10, 0.1, 0.05, 200, 979L,
+				Runtime.getRuntime().availableProcessors());
+		RankingAndSelection.Candidate best = selection.select();
+		for (RankingAndSelection.Candidate candidate : candidates) {
+			System.out.println(candidate.getName() + ": " + selection.getReplications(candidate)
+					+ " replications, mean cost " + selection.getMean(candidate));
+		}
+		System.out.println("Selected: " + best.getName());
+	}
+}
@@ -0,0 +1,213 @@
+package desmoj.demo.mcburger_model_events;
+
+import desmoj.core.simulator.*;
+import desmoj.demo.shared.ControlVariates;
+import desmoj.demo.shared.FlightRecorderEvents;
+import desmoj.demo.shared.LiveMetrics;
+import desmoj.demo.shared.ReplicationCache;
+import desmoj.demo.shared.ReplicationFarm;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the McBurger model for many staffing configurations at once.
+ *
+ * Every configuration is simulated by its own McBurger and experiment on a
+ * thread of a shared pool, which works since the model keeps its whole
+ * configuration per instance.
+ */
+public class McBurgerStaffingStudy {
+
+	/**
+	 * Code version of the McBurger results for ReplicationCache: the
+	 * classes of this package and of the shared utilities it uses.
+	 */
+	private static final String CODE_VERSION = ReplicationCache.codeVersion(McBurger.class,
+			ReplicationCache.class);
+
+	/**
+	 * Simulates one replication of a staffing configuration without trace
+	 * and report output.
+	 *
+	 * @param numDependents the number of dependents
+	 * @param numChefs the number of chefs
+	 * @param seed the seed of the experiment's seed generator
+	 * @param stopTime the time the simulation stops at, in minutes
+	 * @return the mean client wait time in minutes
+	 */
+	public static double simulate(int numDependents, int numChefs, long seed, double stopTime) {
+		return runReplication(numDependents, numChefs, seed, stopTime).waitTimeHistogram.getMean();
+	}
+
+	/**
+	 * Simulates one replication of a staffing configuration without trace
+	 * and report output. The other model parameters are taken from the
+	 * mcburger.model.* system properties (see
+	 * McBurger.setParametersFromSystemProperties()).
+	 *
+	 * @param numDependents the number of dependents
+	 * @param numChefs the number of chefs
+	 * @param seed the seed of the experiment's seed generator
+	 * @param stopTime the time the simulation stops at, in minutes
+	 * @return the simulated model holding the results
+	 */
+	public static McBurger runReplication(int numDependents, int numChefs, long seed, double stopTime) {
+		McBurger model = createModel(numDependents, numChefs);
+		runReplication(model, seed, stopTime);
+		return model;
+	}
+
+	/**
+	 * Creates a model of a staffing configuration, with the other model
+	 * parameters taken from the mcburger.model.* system properties.
+	 *
+	 * @param numDependents the number of dependents
+	 * @param numChefs the number of chefs
+	 * @return the model, not connected to an experiment yet
+	 */
+	public static McBurger createModel(int numDependents, int numChefs) {
+		McBurger.configureTime();
+		McBurger model = new McBurger(null, "McBurger", true, false, numDependents, numChefs, TimeUnit.MINUTES);
+		model.setParametersFromSystemProperties();
+		return model;
+	}
+
+	/**
+	 * Simulates one replication of a configured model without trace and
+	 * report output.
+	 *
+	 * @param model the model, not connected to an experiment yet
+	 * @param seed the seed of the experiment's seed generator
+	 * @param stopTime the time the simulation stops at, in minutes
+	 */
+	public static void runReplication(McBurger model, long seed, double stopTime) {
+		String configuration = "McBurger_" + model.numDependents + "d_" + model.numChefs + "c";
+		FlightRecorderEvents.Replication replication = FlightRecorderEvents.replication(configuration, seed);
+
+		// no output files, so runs in parallel threads don't clash
+		Experiment exp = new Experiment(configuration + "_" + seed, false);
+		exp.setSeedGenerator(seed);
+
+		model.connectToExperiment(exp);
+
+		exp.setShowProgressBar(false);
+		exp.stop(new TimeInstant(stopTime, TimeUnit.MINUTES));
+		exp.start();
+		exp.finish();
+		replication.commit();
+		LiveMetrics.replicationCompleted();
+	}
+
+	/**
+	 * Computes the ReplicationCache key of a McBurger replication: its
+	 * parameters, the staffing, the time unit, the arrival rate profile, the
+	 * code version, the stop time and the seed.
+	 *
+	 * @param model the configured model
+	 * @param stopTime the time the simulation stops at, in minutes
+	 * @param seed the seed of the experiment's seed generator
+	 * @return the key as hex string
+	 */
+	public static String cacheKey(McBurger model, double stopTime, long seed) throws IOException {
+		Map<String, Object> parameters = ReplicationCache.parameters(model);
+		parameters.put("numDependents", model.numDependents);
+		parameters.put("numChefs", model.numChefs);
+		parameters.put("timeUnit", model.timeUnit);
+		parameters.put("clientArrivalProfile", String.valueOf(model.clientArrivalProfile));
+		return ReplicationCache.key(McBurger.class, parameters, CODE_VERSION, stopTime, seed);
+	}
+
+	/**
+	 * Looks a replication up in a cache, simulating and storing it on a
+	 * miss.
+	 *
+	 * @param cache the cache
+	 * @param model the configured model, not connected to an experiment
+	 *            yet
+	 * @param replication the index of the replication
+	 * @param seed the seed of the experiment's seed generator
+	 * @param stopTime the time the simulation stops at, in minutes
+	 * @return the results of the replication
+	 */
+	public static ReplicationCache.Entry runCached(ReplicationCache cache, McBurger model, int replication,
+			long seed, double stopTime) throws IOException {
+		String key = cacheKey(model, stopTime, seed);
+		ReplicationCache.Entry entry = cache.get(key);
+		if (entry == null) {
+			runReplication(model, seed, stopTime);
+			entry = new ReplicationCache.Entry(
+					new ReplicationFarm.Summary(replication, seed, model.waitTimeHistogram.getMean(),
+							model.waitTimeHistogram.getStdDev(), model.waitTimeHistogram.getObservations(),
+							model.arrivedClients, model.servedClients),
+					ReplicationCache.cells(model.waitTimeHistogram));
+			cache.put(key, entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * Simulates replications of a staffing configuration and aggregates
+	 * their mean client wait times with the four streams as control
+	 * variates.
+	 *
+	 * @param numDependents the number of dependents
+	 * @param numChefs the number of chefs
+	 * @param replications the number of replications, replication r uses
+	 *            seed 979 + r
+	 * @param stopTime the time the simulation stops at, in minutes
+	 * @return the aggregated mean client wait times
+	 */
+	public static ControlVariates estimate(int numDependents, int numChefs, int replications, double stopTime) {
+		ControlVariates result = new ControlVariates(McBurger.GRADIENT_PARAMETERS);
+		for (int r = 0; r < replications; r++) {
+			McBurger model = runReplication(numDependents, numChefs, 979L + r, stopTime);
+			result.add(model.waitTimeHistogram.getMean(), model.getControls());
+		}
+		return result;
+	}
+
+	/**
+	 * Simulates all combinations of 1 to 6 dependents and 1 to 3 chefs in
+	 * parallel, 10 replications each, and prints their mean client wait
+	 * times adjusted by control variates.
+	 *
+	 * @param args is an array of command-line arguments (will be ignored here)
+	 */
+	public static void main(java.lang.String[] args) throws Exception {
+		LiveMetrics.startIfConfigured();
+
+		ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		List<int[]> configurations = new ArrayList<int[]>();
+		List<Future<ControlVariates>> results = new ArrayList<Future<ControlVariates>>();
+
+		for (int dependents = 1; dependents <= 6; dependents++) {
+			for (int chefs = 1; chefs <= 3; chefs++) {
+				final int numDependents = dependents;
+				final int numChefs = chefs;
+				configurations.add(new int[] { numDependents, numChefs });
+				results.add(pool.submit(new Callable<ControlVariates>() {
+					public ControlVariates call() {
+						return estimate(numDependents, numChefs, 10, 1500);
+					}
+				}));
+			}
+		}
+
+		try {
+			for (int i = 0; i < results.size(); i++) {
+				int[] configuration = configurations.get(i);
+				System.out.println(configuration[0] + " dependents, " + configuration[1] + " chefs: mean client wait "
+						+ results.get(i).get());
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
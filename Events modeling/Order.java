@@ -1,5 +1,7 @@
 package desmoj.demo.mcburger_model_events;
 
+import java.util.Comparator;
+
 import desmoj.core.simulator.*;
 /**
  * The Order entity encapsulates all information associated with an order.
@@ -7,10 +9,26 @@ import desmoj.core.simulator.*;
  * @author Olaf Neidhardt, Ruth Meyer
  */
 public class Order extends Entity {
+
+	/**
+	 * Discipline of the order queue preparing the orders with the shortest
+	 * preparation time first (see McBurger.shortestOrderFirst)
+	 */
+	public static final Comparator<Order> SHORTEST_PREPARATION_FIRST = new Comparator<Order>() {
+		public int compare(Order a, Order b) {
+			return Double.compare(a.preparationTime, b.preparationTime);
+		}
+	};
 	
 	private Dependent dependent;
 	private Client client;
 
+	/**
+	 * Time the chef needs to prepare this order, only known from its
+	 * placement on if the order queue is ordered by it
+	 */
+	private double preparationTime = Double.NaN;
+
 	/**
 	 * Constructor of the order entity.
 	 *
@@ -29,6 +47,12 @@ public class Order extends Entity {
 	public void setDependent(Dependent dependent) {
 		this.dependent = dependent;
 	}
+	public double getPreparationTime() {
+		return preparationTime;
+	}
+	public void setPreparationTime(double preparationTime) {
+		this.preparationTime = preparationTime;
+	}
 	public Client getClient() {
 		return client;
 	}
@@ -1,8 +1,7 @@
 package desmoj.demo.mcburger_model_events;
 
-import java.util.concurrent.TimeUnit;
-
 import desmoj.core.simulator.*;
+import desmoj.demo.shared.FlightRecorderEvents;
 /**
  * This class represents the order arrival event
  * in the McBurger model.
@@ -42,9 +41,16 @@ public class OrderArrivalEvent extends Event<Order> {
 	 * Otherwise the order just waits (does nothing).
 	 */
 	public void eventRoutine(Order order) {
+		FlightRecorderEvents.Dispatch dispatch = FlightRecorderEvents.dispatch(this);
+
 		
-		// order is placed at McBurger
+		// order is placed at McBurger, its preparation time is needed to
+		// rank it in a shortest-preparation-first queue
+		if (myModel.shortestOrderFirst) {
+			order.setPreparationTime(myModel.getServiceTimeOrderChef());
+		}
 		myModel.orderQueue.insert(order);
+		FlightRecorderEvents.queueOperation(myModel.orderQueue, "insert");
 		sendTraceNote(order.getClient() + " places " + order + ".");
 		sendTraceNote("Pending orders: " + myModel.orderQueue.length() + ".");
         
@@ -55,15 +61,33 @@ public class OrderArrivalEvent extends Event<Order> {
 			Chef chef = myModel.idleChefQueue.first();
 			// remove it from the queue
 			myModel.idleChefQueue.remove(chef);
+			FlightRecorderEvents.queueOperation(myModel.idleChefQueue, "remove");
 			// remove the order from the queue
 			myModel.orderQueue.remove(order);
+			FlightRecorderEvents.queueOperation(myModel.orderQueue, "remove");
 			sendTraceNote(order + " is being prepared by " + chef + ".");
 			sendTraceNote("Pending orders: " + myModel.orderQueue.length() + ". Available chefs: " + myModel.idleChefQueue.length() + ".");
 			
 			// create a new order departure event
 			OrderDepartureEvent orderDeparture = new OrderDepartureEvent(myModel, "OrderDepartureEvent", true);
-			// and schedule it
-			orderDeparture.schedule(chef, order, new TimeSpan(myModel.getServiceTimeOrderChef(), TimeUnit.MINUTES));
+			// and schedule it, the idle chef starts when the order is placed
+			double serviceTime = myModel.startPreparation(order);
+			myModel.advanceDerivative(order.getClient(), order.getClient().getEventDerivative(), McBurger.CHEF_MEAN,
+					serviceTime);
+			orderDeparture.schedule(chef, order, serviceTime);
 		}
+		dispatch.commit();
+	}
+
+	/**
+	 * Schedules this order arrival event after the given delay
+	 * (see McBurger.timeSpan()).
+	 *
+	 * @param order the order placed
+	 * @param delay time until the order is placed, in the model's time
+	 *            unit
+	 */
+	public void schedule(Order order, double delay) {
+		schedule(order, myModel.timeSpan(delay));
 	}
 }
\ No newline at end of file
@@ -1,7 +1,7 @@
 package desmoj.demo.mcburger_model_events;
 
 import desmoj.core.simulator.*;
-import java.util.concurrent.TimeUnit;
+import desmoj.demo.shared.FlightRecorderEvents;
 /**
  * This class represents the order departure event
  * in the McBurger model.
@@ -43,14 +43,22 @@ public class OrderDepartureEvent extends EventOf2Entities<Chef, Order> {
 	 * Otherwise the chef is added to the idle queue.
 	 */
 	public void eventRoutine(Chef chef, Order order) {
+		FlightRecorderEvents.Dispatch dispatch = FlightRecorderEvents.dispatch(this);
+
 		
 		// order is ready at McBurger
         sendTraceNote(order.getClient() + " 's " + order + " is ready! " + order.getDependent() + " serves " + order + " to " + order.getClient() + " and waits for the payment.");
         
+		// derivatives of the point of time the order is ready, which is
+		// also when the chef becomes free
+		double[] readyDerivative = order.getClient().getEventDerivative();
+
 		// create a new payment event
 		PaymentEvent paymentArrival = new PaymentEvent(myModel, "PaymentArrivalEvent", true);
 		// and schedule it
-		paymentArrival.schedule(order.getDependent(), order.getClient(), new TimeSpan(myModel.getServiceTimePayment(),TimeUnit.MINUTES));
+		double paymentTime = myModel.getServiceTimePayment();
+		myModel.advanceDerivative(order.getClient(), readyDerivative, McBurger.PAYMENT_MEAN, paymentTime);
+		paymentArrival.schedule(order.getDependent(), order.getClient(), paymentTime);
  
 		// check if there are other orders waiting
 		sendTraceNote(chef + " check if there are more orders waiting to be prepared.");
@@ -61,19 +69,39 @@ public class OrderDepartureEvent extends EventOf2Entities<Chef, Order> {
 			sendTraceNote("There are more orders.");
 			Order nextOrder = myModel.orderQueue.first();
 			myModel.orderQueue.remove(nextOrder);
+			FlightRecorderEvents.queueOperation(myModel.orderQueue, "remove");
 			sendTraceNote(nextOrder + " is being prepared by " + chef + ".");
 			sendTraceNote("Pending orders: " + myModel.orderQueue.length() + ". Available chefs: " + myModel.idleChefQueue.length() + ".");
 
 			// create a new order departure event
 			OrderDepartureEvent event = new OrderDepartureEvent(myModel, "ServiceEndEvent", true);
  			// and schedule it
-			event.schedule(chef, nextOrder, new TimeSpan(myModel.getServiceTimeOrderChef(), TimeUnit.MINUTES));
+			double serviceTime = myModel.startPreparation(nextOrder);
+			myModel.advanceDerivative(nextOrder.getClient(), readyDerivative, McBurger.CHEF_MEAN, serviceTime);
+			event.schedule(chef, nextOrder, serviceTime);
 		}
 		else {
 			sendTraceNote("Still no orders.");
 			// --> the chef is placed on its idle queue
 			myModel.idleChefQueue.insert(chef);
+			FlightRecorderEvents.queueOperation(myModel.idleChefQueue, "insert");
 			sendTraceNote("Available chefs: " + myModel.idleChefQueue.length() + ".");
 		}	
+		// the order has been served, its entity can be reused
+		myModel.releaseOrder(order);
+		dispatch.commit();
+	}
+
+	/**
+	 * Schedules this order departure event after the given delay
+	 * (see McBurger.timeSpan()).
+	 *
+	 * @param chef the chef preparing the order
+	 * @param order the order being prepared
+	 * @param delay time until the order is ready, in the model's time
+	 *            unit
+	 */
+	public void schedule(Chef chef, Order order, double delay) {
+		schedule(chef, order, myModel.timeSpan(delay));
 	}
 }
\ No newline at end of file
@@ -1,7 +1,7 @@
 package desmoj.demo.mcburger_model_events;
 
 import desmoj.core.simulator.*;
-import java.util.concurrent.TimeUnit;
+import desmoj.demo.shared.FlightRecorderEvents;
 
 /**
  * This class represents the payment event
@@ -45,10 +45,13 @@ public class PaymentEvent extends EventOf2Entities<Dependent,Client> {
 	 */
 	@Override
 	public void eventRoutine(Dependent dependent, Client client) {
+		FlightRecorderEvents.Dispatch dispatch = FlightRecorderEvents.dispatch(this);
 
 		sendTraceNote(client + " pays to " + dependent + " and leaves McBurger.");
         client.endWait();
 		myModel.waitTimeHistogram.update(client.getWaitTime());
+		myModel.servedClients++;
+		myModel.waitGradient.update(client.getWaitDerivative());
 
 		// check if there are other clients waiting
         sendTraceNote(dependent + " check if there are more clients waiting at McBurger.");
@@ -58,19 +61,44 @@ public class PaymentEvent extends EventOf2Entities<Dependent,Client> {
 			// remove the first waiting client from the queue
 			Client nextClient = myModel.clientQueue.first();
 			myModel.clientQueue.remove(nextClient);
+			FlightRecorderEvents.queueOperation(myModel.clientQueue, "remove");
 			sendTraceNote(nextClient + " is being attended by " + dependent + ".");
 			sendTraceNote("Clients queue: " + myModel.clientQueue.length() + ". Available dependents: " + myModel.idleDependentQueue.length() + ".");
 
-			Order order = new Order(myModel, "Order", true, dependent, nextClient);
+			Order order = myModel.newOrder(dependent, nextClient);
 			OrderArrivalEvent orderArrival = new OrderArrivalEvent(myModel, "OrderArrivalEvent", true);
-			orderArrival.schedule(order, new TimeSpan(myModel.getServiceTimeClientDependent(), TimeUnit.MINUTES));
+			// the dependent starts when the previous client has paid
+			double serviceTime = myModel.getServiceTimeClientDependent();
+			myModel.advanceDerivative(nextClient, client.getEventDerivative(), McBurger.DEPENDENT_MEAN, serviceTime);
+			orderArrival.schedule(order, serviceTime);
+		}
+		else if (myModel.fluidClients.mass() >= 1) {
+			// only the fluid part of the client queue is left
+			myModel.serveFluidClient(dependent);
 		}
 		else {
 			sendTraceNote("Still no clients.");
 			// --> the dependent is placed on its McBurger cash register
 			myModel.idleDependentQueue.insert(dependent);
+			FlightRecorderEvents.queueOperation(myModel.idleDependentQueue, "insert");
 			sendTraceNote("Available dependents: " + myModel.idleDependentQueue.length() + ".");
 		}
+		// the client has left, its entity can be reused
+		myModel.releaseClient(client);
+		dispatch.commit();
+	}
+
+	/**
+	 * Schedules this payment event after the given delay
+	 * (see McBurger.timeSpan()).
+	 *
+	 * @param dependent the dependent collecting the payment
+	 * @param client the client paying
+	 * @param delay time until the payment is done, in the model's time
+	 *            unit
+	 */
+	public void schedule(Dependent dependent, Client client, double delay) {
+		schedule(dependent, client, myModel.timeSpan(delay));
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,20 @@
+#!/bin/sh
+# Measures the startup of a headless worker: the wall-clock time of a
+# replication of 1 minute, with and without the AppCDS archive recorded by
+# mvn package. Usage: [JAVA=<JDK 13+>/bin/java] measure-startup.sh [runs]
+cd "$(dirname "$0")" || exit 1
+runs=${1:-10}
+
+measure() {
+	start=$(date +%s%N)
+	i=0
+	while [ $i -lt "$runs" ]; do
+		"${JAVA:-java}" "$@" -jar target/vc-headless.jar 0 1 1 > /dev/null || exit 1
+		i=$((i + 1))
+	done
+	end=$(date +%s%N)
+	echo $(( (end - start) / runs / 1000000 ))
+}
+
+echo "without archive: $(measure -Xshare:auto) ms per worker"
+echo "with archive:    $(measure -XX:SharedArchiveFile=target/vc-worker.jsa) ms per worker"
@@ -0,0 +1,248 @@
+package desmoj.demo.shared;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A periodic arrival rate for non-homogeneous Poisson arrivals, e.g. the
+ * daily profile of gate traffic or restaurant demand.
+ *
+ * The rate is given at breakpoints 0 = t0 < t1 < ... < tn and is either
+ * constant between two breakpoints (the rate of the left one) or linear
+ * between them. tn is the period after which the profile repeats.
+ *
+ * Arrivals are generated by inversion: with the cumulative rate L(t), the
+ * arrival following time t is L^-1(L(t) + E) for a standard exponential E.
+ * Every arrival thus takes exactly one exponential draw, independent of how
+ * far the rate varies, unlike thinning, which draws candidates at the peak
+ * rate and discards most of them off-peak. Both L and its inverse are a
+ * binary search over the breakpoints, plus a square root for linear
+ * segments.
+ *
+ * A profile is immutable and can be shared by models running in parallel.
+ */
+public class ArrivalRateProfile {
+
+	/** Breakpoints, the last one is the period */
+	private final double[] times;
+
+	/** Rates at the breakpoints, in arrivals per time unit */
+	private final double[] rates;
+
+	/** True if the rate is linear between breakpoints, false if constant */
+	private final boolean linear;
+
+	/** Cumulative rate at the breakpoints, the last one of a whole period */
+	private final double[] cumulative;
+
+	/**
+	 * Creates a profile.
+	 *
+	 * @param times double[]  increasing breakpoints starting at 0, the last
+	 *            one is the period
+	 * @param rates double[]  non-negative rates at the breakpoints
+	 * @param linear boolean  true for a rate linear between breakpoints,
+	 *            false for a rate constant from one breakpoint to the next
+	 */
+	public ArrivalRateProfile(double[] times, double[] rates, boolean linear) {
+		if (times.length < 2 || times.length != rates.length || times[0] != 0) {
+			throw new IllegalArgumentException("Invalid arrival rate profile: " + Arrays.toString(times) + " / "
+					+ Arrays.toString(rates));
+		}
+		for (int i = 0; i < times.length; i++) {
+			if ((i > 0 && !(times[i] > times[i - 1])) || !(rates[i] >= 0)) {
+				throw new IllegalArgumentException("Invalid breakpoint " + times[i] + " with rate " + rates[i]);
+			}
+		}
+		this.times = times.clone();
+		this.rates = rates.clone();
+		this.linear = linear;
+
+		cumulative = new double[times.length];
+		for (int i = 1; i < times.length; i++) {
+			cumulative[i] = cumulative[i - 1] + mass(i - 1, times[i] - times[i - 1]);
+		}
+		if (!(getPeriodArrivals() > 0)) {
+			throw new IllegalArgumentException("Arrival rate profile without arrivals");
+		}
+	}
+
+	/**
+	 * Reads a profile from a text file. Every line holds a breakpoint and
+	 * the rate at it, separated by white space, e.g. "360 0.5". The last
+	 * breakpoint is the period. A line "linear" or "step" anywhere in the
+	 * file chooses the interpolation, step is the default. Blank lines and
+	 * lines starting with # are ignored.
+	 *
+	 * @param file File  the file to read
+	 * @return ArrivalRateProfile the profile
+	 */
+	public static ArrivalRateProfile read(File file) throws IOException {
+		List<double[]> breakpoints = new ArrayList<double[]>();
+		boolean linear = false;
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			int number = 0;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				number++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				} else if (line.equalsIgnoreCase("linear") || line.equalsIgnoreCase("step")) {
+					linear = line.equalsIgnoreCase("linear");
+					continue;
+				}
+				String[] fields = line.split("\\s+");
+				try {
+					if (fields.length != 2) {
+						throw new NumberFormatException("two numbers expected");
+					}
+					breakpoints.add(new double[] { Double.parseDouble(fields[0]), Double.parseDouble(fields[1]) });
+				} catch (NumberFormatException e) {
+					throw new IOException(file + ":" + number + ": invalid breakpoint \"" + line + "\"", e);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+
+		double[] times = new double[breakpoints.size()];
+		double[] rates = new double[breakpoints.size()];
+		for (int i = 0; i < times.length; i++) {
+			times[i] = breakpoints.get(i)[0];
+			rates[i] = breakpoints.get(i)[1];
+		}
+		return new ArrivalRateProfile(times, rates, linear);
+	}
+
+	/**
+	 * Returns the period of the profile.
+	 */
+	public double getPeriod() {
+		return times[times.length - 1];
+	}
+
+	/**
+	 * Returns the expected number of arrivals per period.
+	 */
+	public double getPeriodArrivals() {
+		return cumulative[cumulative.length - 1];
+	}
+
+	/**
+	 * Returns the rate at the given point of time.
+	 *
+	 * @param time double  a point of time, at least 0
+	 * @return double the rate in arrivals per time unit
+	 */
+	public double getRate(double time) {
+		double offset = time - Math.floor(time / getPeriod()) * getPeriod();
+		int i = segmentAt(times, offset);
+		return linear ? rates[i] + slope(i) * (offset - times[i]) : rates[i];
+	}
+
+	/**
+	 * Returns the expected number of arrivals between two points of time.
+	 *
+	 * @param from double  start of the interval, at least 0
+	 * @param to double  end of the interval
+	 * @return double the integral of the rate from from to to
+	 */
+	public double getExpectedArrivals(double from, double to) {
+		return cumulative(to) - cumulative(from);
+	}
+
+	/**
+	 * Returns the next arrival after the given point of time.
+	 *
+	 * @param time double  the latest arrival, at least 0
+	 * @param exponential double  a sample of the standard exponential
+	 *            distribution
+	 * @return double the point of time of the next arrival
+	 */
+	public double nextArrival(double time, double exponential) {
+		return inverse(cumulative(time) + exponential);
+	}
+
+	/**
+	 * Returns the cumulative rate from 0 to the given point of time.
+	 */
+	private double cumulative(double time) {
+		double periods = Math.floor(time / getPeriod());
+		double offset = time - periods * getPeriod();
+		int i = segmentAt(times, offset);
+		return periods * getPeriodArrivals() + cumulative[i] + mass(i, offset - times[i]);
+	}
+
+	/**
+	 * Returns the point of time the cumulative rate reaches the given value.
+	 */
+	private double inverse(double value) {
+		double periods = Math.floor(value / getPeriodArrivals());
+		double remainder = value - periods * getPeriodArrivals();
+		int i = segmentAt(cumulative, remainder);
+		double mass = remainder - cumulative[i];
+
+		// solve mass(i, d) = mass for d
+		double d;
+		if (mass <= 0) {
+			d = 0;
+		} else if (!linear || slope(i) == 0) {
+			d = mass / rates[i];
+		} else {
+			// the root of rates[i] d + slope d^2 / 2 = mass, in a form that
+			// does not cancel for small slopes
+			d = 2 * mass / (rates[i] + Math.sqrt(rates[i] * rates[i] + 2 * slope(i) * mass));
+		}
+		return periods * getPeriod() + times[i] + Math.min(d, times[i + 1] - times[i]);
+	}
+
+	/**
+	 * Returns the expected number of arrivals in the first d time units of
+	 * segment i.
+	 */
+	private double mass(int i, double d) {
+		return linear ? (rates[i] + slope(i) * d / 2) * d : rates[i] * d;
+	}
+
+	/**
+	 * Returns the slope of the rate in segment i if it is linear.
+	 */
+	private double slope(int i) {
+		return (rates[i + 1] - rates[i]) / (times[i + 1] - times[i]);
+	}
+
+	/**
+	 * Returns the last segment starting at or before the given value of an
+	 * increasing array of segment starts, by binary search. Segments of
+	 * zero length (i.e. of zero mass in the cumulative rate) are skipped.
+	 */
+	private static int segmentAt(double[] starts, double value) {
+		int low = 0;
+		int high = starts.length - 2;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (starts[middle] <= value) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Describes the profile by its breakpoints and rates, exact to the last
+	 * bit, so equal descriptions mean equal profiles.
+	 */
+	public String toString() {
+		return (linear ? "linear" : "step") + " profile, times " + Arrays.toString(times) + ", rates "
+				+ Arrays.toString(rates);
+	}
+}
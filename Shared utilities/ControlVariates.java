@@ -0,0 +1,267 @@
+package desmoj.demo.shared;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aggregates replications with the control variate estimator.
+ *
+ * Each replication reports its output (e.g. the mean wait) together with
+ * controls whose expectation is known to be zero, here the sample means of
+ * the draws of the model's random streams minus the true means of these
+ * streams. A replication with longer than average service times has longer
+ * than average waits, so the output is regressed on the controls over all
+ * replications and the part of its deviation explained by them is removed.
+ * The adjusted mean has the same expectation as the plain one but usually a
+ * much smaller variance, at no extra simulation cost.
+ *
+ * The number of draws of a run depends slightly on their values (a run with
+ * short arrival gaps draws more of them), so the controls are only
+ * approximately centred. For runs with many draws this bias is negligible.
+ */
+public class ControlVariates {
+
+	/** The 0.975 quantile of the standard normal distribution */
+	private static final double Z = 1.959963984540054;
+
+	/** Number of controls per replication */
+	private final int controls;
+
+	/** Outputs of the replications */
+	private final List<Double> outputs = new ArrayList<Double>();
+
+	/** Controls of the replications */
+	private final List<double[]> controlValues = new ArrayList<double[]>();
+
+	/**
+	 * Creates an empty aggregator.
+	 *
+	 * @param controls int  number of controls per replication
+	 */
+	public ControlVariates(int controls) {
+		this.controls = controls;
+	}
+
+	/**
+	 * Adds a replication.
+	 *
+	 * @param output double  the output of the replication
+	 * @param control double[]  its controls, each with expectation zero
+	 */
+	public void add(double output, double[] control) {
+		if (control.length != controls) {
+			throw new IllegalArgumentException("Expected " + controls + " controls, got " + control.length);
+		}
+		outputs.add(output);
+		controlValues.add(control.clone());
+	}
+
+	/**
+	 * Returns the number of replications.
+	 */
+	public int getReplications() {
+		return outputs.size();
+	}
+
+	/**
+	 * Returns the plain mean of the outputs.
+	 */
+	public double getMean() {
+		double sum = 0;
+		for (double output : outputs) {
+			sum += output;
+		}
+		return sum / outputs.size();
+	}
+
+	/**
+	 * Returns the standard error of the plain mean.
+	 */
+	public double getStandardError() {
+		int n = outputs.size();
+		double mean = getMean();
+		double squares = 0;
+		for (double output : outputs) {
+			squares += (output - mean) * (output - mean);
+		}
+		return Math.sqrt(squares / (n - 1) / n);
+	}
+
+	/**
+	 * Returns the half width of the 95% confidence interval of the plain
+	 * mean.
+	 */
+	public double getHalfWidth() {
+		return tQuantile(outputs.size() - 1) * getStandardError();
+	}
+
+	/**
+	 * Returns the regression coefficients of the output on the controls.
+	 */
+	public double[] getCoefficients() {
+		return fit().coefficients;
+	}
+
+	/**
+	 * Returns the control variate adjusted mean, or NaN if there are not
+	 * more replications than controls plus one.
+	 */
+	public double getAdjustedMean() {
+		return fit().mean;
+	}
+
+	/**
+	 * Returns the standard error of the adjusted mean.
+	 */
+	public double getAdjustedStandardError() {
+		return fit().standardError;
+	}
+
+	/**
+	 * Returns the half width of the 95% confidence interval of the adjusted
+	 * mean.
+	 */
+	public double getAdjustedHalfWidth() {
+		return tQuantile(outputs.size() - controls - 1) * getAdjustedStandardError();
+	}
+
+	public String toString() {
+		return getAdjustedMean() + " +- " + getAdjustedHalfWidth() + " (without controls " + getMean() + " +- "
+				+ getHalfWidth() + ")";
+	}
+
+	/**
+	 * The result of the regression.
+	 */
+	private static class Fit {
+		double mean = Double.NaN;
+		double standardError = Double.NaN;
+		double[] coefficients;
+	}
+
+	/**
+	 * Regresses the outputs on the controls by least squares.
+	 */
+	private Fit fit() {
+		int n = outputs.size();
+		Fit fit = new Fit();
+		fit.coefficients = new double[controls];
+		Arrays.fill(fit.coefficients, Double.NaN);
+		if (n <= controls + 1) {
+			return fit;
+		}
+
+		double outputMean = getMean();
+		double[] controlMean = new double[controls];
+		for (double[] control : controlValues) {
+			for (int j = 0; j < controls; j++) {
+				controlMean[j] += control[j] / n;
+			}
+		}
+
+		// centred sums of squares and products
+		double[][] sxx = new double[controls][controls];
+		double[] sxy = new double[controls];
+		for (int i = 0; i < n; i++) {
+			double[] control = controlValues.get(i);
+			for (int j = 0; j < controls; j++) {
+				double dj = control[j] - controlMean[j];
+				sxy[j] += dj * (outputs.get(i) - outputMean);
+				for (int k = 0; k < controls; k++) {
+					sxx[j][k] += dj * (control[k] - controlMean[k]);
+				}
+			}
+		}
+		double[] beta = solve(sxx, sxy);
+		if (beta == null) {
+			return fit;
+		}
+
+		double sse = 0;
+		for (int i = 0; i < n; i++) {
+			double[] control = controlValues.get(i);
+			double residual = outputs.get(i) - outputMean;
+			for (int j = 0; j < controls; j++) {
+				residual -= beta[j] * (control[j] - controlMean[j]);
+			}
+			sse += residual * residual;
+		}
+		double variance = sse / (n - controls - 1);
+
+		double adjusted = outputMean;
+		for (int j = 0; j < controls; j++) {
+			adjusted -= beta[j] * controlMean[j];
+		}
+		double[] scaled = solve(sxx, controlMean);
+		double leverage = 0;
+		for (int j = 0; j < controls; j++) {
+			leverage += controlMean[j] * scaled[j];
+		}
+
+		fit.mean = adjusted;
+		fit.standardError = Math.sqrt(variance * (1.0 / n + leverage));
+		fit.coefficients = beta;
+		return fit;
+	}
+
+	/**
+	 * Solves a x = b by Gaussian elimination with partial pivoting.
+	 *
+	 * @return double[] the solution, or null if a is singular
+	 */
+	private static double[] solve(double[][] a, double[] b) {
+		int n = b.length;
+		double[][] m = new double[n][];
+		for (int i = 0; i < n; i++) {
+			m[i] = Arrays.copyOf(a[i], n + 1);
+			m[i][n] = b[i];
+		}
+		for (int col = 0; col < n; col++) {
+			int pivot = col;
+			for (int row = col + 1; row < n; row++) {
+				if (Math.abs(m[row][col]) > Math.abs(m[pivot][col])) {
+					pivot = row;
+				}
+			}
+			if (m[pivot][col] == 0) {
+				return null;
+			}
+			double[] swap = m[col];
+			m[col] = m[pivot];
+			m[pivot] = swap;
+			for (int row = col + 1; row < n; row++) {
+				double factor = m[row][col] / m[col][col];
+				for (int k = col; k <= n; k++) {
+					m[row][k] -= factor * m[col][k];
+				}
+			}
+		}
+		double[] x = new double[n];
+		for (int row = n - 1; row >= 0; row--) {
+			double sum = m[row][n];
+			for (int k = row + 1; k < n; k++) {
+				sum -= m[row][k] * x[k];
+			}
+			x[row] = sum / m[row][row];
+		}
+		return x;
+	}
+
+	/**
+	 * Returns the 0.975 quantile of Student's t distribution with the given
+	 * degrees of freedom, by its Cornish-Fisher expansion around the normal
+	 * quantile.
+	 */
+	private static double tQuantile(int degreesOfFreedom) {
+		if (degreesOfFreedom < 1) {
+			return Double.NaN;
+		}
+		double v = degreesOfFreedom;
+		double z3 = Z * Z * Z;
+		double z5 = z3 * Z * Z;
+		double z7 = z5 * Z * Z;
+		return Z + (z3 + Z) / (4 * v) + (5 * z5 + 16 * z3 + 3 * Z) / (96 * v * v)
+				+ (3 * z7 + 19 * z5 + 17 * z3 - 15 * Z) / (384 * v * v * v);
+	}
+}
@@ -0,0 +1,247 @@
+package desmoj.demo.shared;
+
+import desmoj.core.simulator.QueueBased;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder event types for the internals of the demo models.
+ *
+ * Record a run with -XX:StartFlightRecording=filename=run.jfr (or from JDK
+ * Mission Control) and summarize it with FlightRecordingSummary. Without a
+ * recording the events are disabled, and the frequent ones are not even
+ * allocated: dispatch(), processRun() and queueOperation() check their
+ * event type first. dispatch() and processRun() then hand out a shared
+ * handle whose commit() does nothing. The handle of a process run is kept
+ * across the suspension of a process, so escape analysis could not remove
+ * a JFR event allocated for it.
+ *
+ * DESMO-J's scheduler itself is not instrumented, the events are recorded
+ * where the models hand control to it: event routines, process activations
+ * between two suspensions, queue operations, replications and reports.
+ * Dispatches, activations and replications are counted for LiveMetrics as
+ * well.
+ */
+public class FlightRecorderEvents {
+
+	/**
+	 * Not to be instantiated, all methods are static
+	 */
+	private FlightRecorderEvents() {
+	}
+
+	/**
+	 * One call of an event routine.
+	 */
+	@Name("desmoj.demo.EventDispatch")
+	@Label("Event Dispatch")
+	@Category({ "DESMO-J", "Scheduling" })
+	@Description("Execution of a DESMO-J event routine")
+	public static class DispatchEvent extends Event {
+
+		@Label("Event Class")
+		public String eventClass;
+	}
+
+	/**
+	 * One activation of a process, from its resumption to its next
+	 * suspension (hold, passivate or end of its life cycle).
+	 */
+	@Name("desmoj.demo.ProcessRun")
+	@Label("Process Run")
+	@Category({ "DESMO-J", "Scheduling" })
+	@Description("A simulation process running between two context switches")
+	public static class ProcessRunEvent extends Event {
+
+		@Label("Process Class")
+		public String processClass;
+	}
+
+	/**
+	 * A started event routine, see dispatch().
+	 */
+	public static final class Dispatch {
+
+		/** The timed JFR event, null if the event type was disabled */
+		private final DispatchEvent event;
+
+		private Dispatch(DispatchEvent event) {
+			this.event = event;
+		}
+
+		/**
+		 * Ends the event routine and records it.
+		 */
+		public void commit() {
+			if (event != null) {
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * A started process activation, see processRun().
+	 */
+	public static final class ProcessRun {
+
+		/** The timed JFR event, null if the event type was disabled */
+		private final ProcessRunEvent event;
+
+		private ProcessRun(ProcessRunEvent event) {
+			this.event = event;
+		}
+
+		/**
+		 * Ends the process activation and records it.
+		 */
+		public void commit() {
+			if (event != null) {
+				event.commit();
+			}
+		}
+	}
+
+	/** The event types checked before allocating an event */
+	private static final EventType DISPATCH_TYPE = EventType.getEventType(DispatchEvent.class);
+	private static final EventType PROCESS_RUN_TYPE = EventType.getEventType(ProcessRunEvent.class);
+	private static final EventType QUEUE_OPERATION_TYPE = EventType.getEventType(QueueOperation.class);
+
+	/** The handles given out while their event type is disabled */
+	private static final Dispatch NO_DISPATCH = new Dispatch(null);
+	private static final ProcessRun NO_PROCESS_RUN = new ProcessRun(null);
+
+	/**
+	 * An insertion into or a removal from a queue.
+	 */
+	@Name("desmoj.demo.QueueOperation")
+	@Label("Queue Operation")
+	@Category({ "DESMO-J", "Queues" })
+	@Description("An entity inserted into or removed from a named queue")
+	public static class QueueOperation extends Event {
+
+		@Label("Queue")
+		public String queue;
+
+		@Label("Operation")
+		public String operation;
+
+		@Label("Length")
+		@Description("Queue length after the operation")
+		public int length;
+	}
+
+	/**
+	 * One replication of a model.
+	 */
+	@Name("desmoj.demo.Replication")
+	@Label("Replication")
+	@Category({ "DESMO-J", "Experiment" })
+	public static class Replication extends Event {
+
+		@Label("Model")
+		public String model;
+
+		@Label("Seed")
+		public long seed;
+	}
+
+	/**
+	 * Writing the report of an experiment.
+	 */
+	@Name("desmoj.demo.ReportFlush")
+	@Label("Report Flush")
+	@Category({ "DESMO-J", "Experiment" })
+	public static class ReportFlush extends Event {
+
+		@Label("Experiment")
+		public String experiment;
+	}
+
+	/**
+	 * Starts timing an event routine, commit() the result when it ends.
+	 *
+	 * @param event Object  the event whose routine runs
+	 * @return Dispatch the handle of the started JFR event
+	 */
+	public static Dispatch dispatch(Object event) {
+		LiveMetrics.eventDispatched();
+		if (!DISPATCH_TYPE.isEnabled()) {
+			return NO_DISPATCH;
+		}
+		DispatchEvent dispatch = new DispatchEvent();
+		dispatch.eventClass = event.getClass().getSimpleName();
+		dispatch.begin();
+		return new Dispatch(dispatch);
+	}
+
+	/**
+	 * Starts timing a process activation, commit() the result right before
+	 * the process suspends.
+	 *
+	 * @param process Object  the resumed process
+	 * @return ProcessRun the handle of the started JFR event
+	 */
+	public static ProcessRun processRun(Object process) {
+		LiveMetrics.eventDispatched();
+		if (!PROCESS_RUN_TYPE.isEnabled()) {
+			return NO_PROCESS_RUN;
+		}
+		ProcessRunEvent run = new ProcessRunEvent();
+		run.processClass = process.getClass().getSimpleName();
+		run.begin();
+		return new ProcessRun(run);
+	}
+
+	/**
+	 * Records a queue operation, to be called right after it.
+	 *
+	 * @param queue QueueBased  the queue operated on
+	 * @param operation String  "insert" or "remove"
+	 */
+	public static void queueOperation(QueueBased queue, String operation) {
+		if (!QUEUE_OPERATION_TYPE.isEnabled()) {
+			return;
+		}
+		QueueOperation event = new QueueOperation();
+		event.queue = queue.getName();
+		event.operation = operation;
+		event.length = queue.length();
+		event.commit();
+	}
+
+	/**
+	 * Starts timing a replication, commit() the result when it is done.
+	 *
+	 * @param model String  name of the model
+	 * @param seed long  seed of the replication
+	 * @return Replication the started JFR event
+	 */
+	public static Replication replication(String model, long seed) {
+		Replication replication = new Replication();
+		if (replication.isEnabled()) {
+			replication.model = model;
+			replication.seed = seed;
+			replication.begin();
+		}
+		return replication;
+	}
+
+	/**
+	 * Starts timing a report, commit() the result when it is written.
+	 *
+	 * @param experiment String  name of the experiment
+	 * @return ReportFlush the started JFR event
+	 */
+	public static ReportFlush reportFlush(String experiment) {
+		ReportFlush flush = new ReportFlush();
+		if (flush.isEnabled()) {
+			flush.experiment = experiment;
+			flush.begin();
+		}
+		return flush;
+	}
+}
@@ -0,0 +1,114 @@
+package desmoj.demo.shared;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Summarizes the FlightRecorderEvents of a JFR recording: for every event
+ * type and event class, process class, queue or model it prints how often
+ * the event occurred and how much time it took in total, the most expensive
+ * first.
+ *
+ * Usage: FlightRecordingSummary recording.jfr
+ */
+public class FlightRecordingSummary {
+
+	/**
+	 * Count and total duration of one kind of event.
+	 */
+	private static class Row {
+
+		/** Event type and key, e.g. "Event Dispatch PaymentEvent" */
+		final String name;
+
+		/** Number of events */
+		long count = 0;
+
+		/** Total duration in nanoseconds */
+		long nanos = 0;
+
+		Row(String name) {
+			this.name = name;
+		}
+	}
+
+	/**
+	 * Not to be instantiated, all methods are static
+	 */
+	private FlightRecordingSummary() {
+	}
+
+	/**
+	 * Returns the key an event is summarized under, or null if it is none of
+	 * the FlightRecorderEvents.
+	 */
+	private static String key(RecordedEvent event) {
+		String type = event.getEventType().getName();
+		if (type.equals("desmoj.demo.EventDispatch")) {
+			return "Event Dispatch " + event.getString("eventClass");
+		} else if (type.equals("desmoj.demo.ProcessRun")) {
+			return "Process Run " + event.getString("processClass");
+		} else if (type.equals("desmoj.demo.QueueOperation")) {
+			return "Queue " + event.getString("operation") + " " + event.getString("queue");
+		} else if (type.equals("desmoj.demo.Replication")) {
+			return "Replication " + event.getString("model");
+		} else if (type.equals("desmoj.demo.ReportFlush")) {
+			return "Report Flush " + event.getString("experiment");
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the given recording and prints its summary.
+	 *
+	 * @param args the JFR file to summarize
+	 */
+	public static void main(java.lang.String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("Usage: FlightRecordingSummary recording.jfr");
+			System.exit(2);
+		}
+
+		Map<String, Row> rows = new HashMap<String, Row>();
+		RecordingFile recording = new RecordingFile(Paths.get(args[0]));
+		try {
+			while (recording.hasMoreEvents()) {
+				RecordedEvent event = recording.readEvent();
+				String key = key(event);
+				if (key == null) {
+					continue;
+				}
+				Row row = rows.get(key);
+				if (row == null) {
+					row = new Row(key);
+					rows.put(key, row);
+				}
+				row.count++;
+				row.nanos += event.getDuration().toNanos();
+			}
+		} finally {
+			recording.close();
+		}
+
+		List<Row> sorted = new ArrayList<Row>(rows.values());
+		Collections.sort(sorted, new Comparator<Row>() {
+			public int compare(Row a, Row b) {
+				return Long.compare(b.nanos, a.nanos);
+			}
+		});
+		System.out.println(String.format("%-50s %12s %14s %12s", "Event", "Count", "Total ms", "Mean us"));
+		for (Row row : sorted) {
+			System.out.println(String.format("%-50s %12d %14.3f %12.3f", row.name, row.count, row.nanos / 1e6,
+					row.nanos / 1e3 / row.count));
+		}
+	}
+}
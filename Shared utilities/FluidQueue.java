@@ -0,0 +1,108 @@
+package desmoj.demo.shared;
+
+import java.util.Arrays;
+
+/**
+ * This class is the fluid part of a queue in hybrid mode.
+ *
+ * While a queue is heavily overloaded, its waiting customers are not kept as
+ * single entities but as a FIFO of cohorts: all customers arriving during
+ * one fluid step form a cohort whose mass is their number and whose
+ * arrival time is their mean arrival time. Servers take one unit of mass
+ * at a time from the oldest cohorts.
+ */
+public class FluidQueue {
+
+	/** Arrival times of the cohorts, a ring buffer starting at head */
+	private double[] times = new double[16];
+
+	/** Remaining masses of the cohorts, parallel to times */
+	private double[] masses = new double[16];
+
+	/** Index of the oldest cohort */
+	private int head = 0;
+
+	/** Number of cohorts */
+	private int size = 0;
+
+	/** Sum of all cohort masses */
+	private double mass = 0;
+
+	/**
+	 * Appends a cohort.
+	 *
+	 * @param time double  (estimated) arrival time of the cohort
+	 * @param cohortMass double  number of customers in the cohort
+	 */
+	public void add(double time, double cohortMass) {
+		if (cohortMass <= 0) {
+			return;
+		}
+		if (size == times.length) {
+			grow();
+		}
+		int tail = (head + size) % times.length;
+		times[tail] = time;
+		masses[tail] = cohortMass;
+		size++;
+		mass += cohortMass;
+	}
+
+	/**
+	 * Removes one unit of mass from the front of the queue. The unit may be
+	 * made of several cohorts if the first one holds less than one unit.
+	 *
+	 * @return double the mass-weighted arrival time of the removed unit
+	 */
+	public double takeOne() {
+		if (mass < 1.0) {
+			throw new IllegalStateException("Less than one unit of mass left in the fluid queue: " + mass);
+		}
+		double need = 1.0;
+		double time = 0;
+		while (need > 0 && size > 0) {
+			double taken = Math.min(need, masses[head]);
+			time += taken * times[head];
+			masses[head] -= taken;
+			need -= taken;
+			if (masses[head] <= 0) {
+				head = (head + 1) % times.length;
+				size--;
+			}
+		}
+		mass -= 1.0;
+		return time;
+	}
+
+	/**
+	 * Returns the total mass, i.e. the (fractional) number of waiting
+	 * customers.
+	 */
+	public double mass() {
+		return mass;
+	}
+
+	/**
+	 * Removes all cohorts.
+	 */
+	public void clear() {
+		head = 0;
+		size = 0;
+		mass = 0;
+	}
+
+	/**
+	 * Doubles the capacity of the ring buffer, unwrapping it to start at 0.
+	 */
+	private void grow() {
+		double[] newTimes = Arrays.copyOf(times, 2 * times.length);
+		double[] newMasses = Arrays.copyOf(masses, 2 * masses.length);
+		for (int i = 0; i < size; i++) {
+			newTimes[i] = times[(head + i) % times.length];
+			newMasses[i] = masses[(head + i) % masses.length];
+		}
+		times = newTimes;
+		masses = newMasses;
+		head = 0;
+	}
+}
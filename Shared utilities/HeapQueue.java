@@ -0,0 +1,372 @@
+package desmoj.demo.shared;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import desmoj.core.report.QueueReporter;
+import desmoj.core.report.Reporter;
+import desmoj.core.simulator.Entity;
+import desmoj.core.simulator.Model;
+import desmoj.core.simulator.QueueBased;
+import desmoj.core.simulator.TimeInstant;
+
+/**
+ * A queue with a priority discipline, kept in a binary heap.
+ *
+ * DESMO-J's Queue and ProcessQueue keep their entities in a sorted list,
+ * which takes time proportional to the queue length for every insertion
+ * out of FIFO order. This queue orders its entities by a comparator, the
+ * first one in the comparator's order being the head, and entities equal
+ * to each other in FIFO order. Inserting and removing the head take
+ * logarithmic time.
+ *
+ * Without a comparator it is a FIFO queue and needs no heap: the entities
+ * are kept in insertion order in an array between a head and an end
+ * position, so inserting and removing the head take constant time. An
+ * entity removed from the middle leaves a hole the head skips later, and
+ * when the end reaches the end of the array, the holes are compacted
+ * away, or the array grows if it is more than half full, which keeps
+ * inserting constant in amortized time.
+ *
+ * The queue reports the standard queue statistics of DESMO-J (lengths,
+ * waits, zero waits) through QueueBased.
+ *
+ * Removing another entity than the head, e.g. one that reneges, has to
+ * search it first and thus takes linear time, unless the entity is a Member
+ * keeping its own position in the queue's array as a handle. Then it takes
+ * logarithmic time with a comparator and constant time without.
+ */
+public class HeapQueue<E extends Entity> extends QueueBased {
+
+	/**
+	 * An entity that keeps its position in the array of the HeapQueue it is
+	 * in. It may only be in one HeapQueue at a time.
+	 */
+	public interface Member {
+
+		/**
+		 * Returns the position set last, -1 if not in a queue.
+		 */
+		int getQueueIndex();
+
+		/**
+		 * Sets the position in the array, -1 when removed from the queue.
+		 */
+		void setQueueIndex(int index);
+	}
+
+	/** The discipline, null for FIFO */
+	private final Comparator<? super E> priority;
+
+	/** Name of the discipline in the report */
+	private final String strategy;
+
+	/** The heap of entities, or the FIFO array without a comparator */
+	private Object[] entities = new Object[16];
+
+	/** Insertion numbers of the entities, the tie-breaker */
+	private long[] sequence = new long[16];
+
+	/** Points of time the entities were inserted, for the wait statistics */
+	private TimeInstant[] entered = new TimeInstant[16];
+
+	/** Number of entities in the queue */
+	private int size = 0;
+
+	/**
+	 * Without a comparator: position of the head and position after the
+	 * last entity in the array. Removed entities leave null holes in
+	 * between, the head is never a hole.
+	 */
+	private int head = 0;
+	private int end = 0;
+
+	/** Number of insertions so far */
+	private long insertions = 0;
+
+	/**
+	 * Creates a queue.
+	 *
+	 * @param owner Model  the model this queue belongs to
+	 * @param name String  name of the queue
+	 * @param priority Comparator  the discipline, the smallest entity first,
+	 *            null for FIFO
+	 * @param strategy String  name of the discipline in the report
+	 * @param showInReport boolean  true if the queue shall be reported
+	 * @param showInTrace boolean  true if the queue shall produce trace
+	 *            output
+	 */
+	public HeapQueue(Model owner, String name, Comparator<? super E> priority, String strategy,
+			boolean showInReport, boolean showInTrace) {
+		super(owner, name, showInReport, showInTrace);
+		this.priority = priority;
+		this.strategy = priority == null ? "FIFO" : strategy;
+	}
+
+	/**
+	 * Inserts an entity.
+	 *
+	 * @param entity E  the entity to insert
+	 * @return boolean true, the queue has no capacity limit
+	 */
+	public boolean insert(E entity) {
+		int index;
+		if (priority == null) {
+			if (end == entities.length) {
+				compact();
+			}
+			index = end++;
+		} else {
+			if (size == entities.length) {
+				grow();
+			}
+			index = size;
+		}
+		entities[index] = entity;
+		sequence[index] = insertions++;
+		entered[index] = presentTime();
+		placed(index);
+		size++;
+		if (priority != null) {
+			siftUp(index);
+		}
+		addItem();
+		if (currentlySendTraceNotes()) {
+			sendTraceNote("inserts " + entity.getName() + " in " + getName());
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the head of the queue without removing it.
+	 *
+	 * @return E the head, or null if the queue is empty
+	 */
+	@SuppressWarnings("unchecked")
+	public E first() {
+		return size == 0 ? null : (E) entities[priority == null ? head : 0];
+	}
+
+	/**
+	 * Removes the head of the queue.
+	 *
+	 * @return E the removed head, or null if the queue is empty
+	 */
+	public E removeFirst() {
+		E first = first();
+		if (first != null) {
+			removeAt(priority == null ? head : 0);
+		}
+		return first;
+	}
+
+	/**
+	 * Removes an entity.
+	 *
+	 * @param entity E  the entity to remove
+	 * @return boolean true if it was in the queue
+	 */
+	public boolean remove(E entity) {
+		int index = indexOf(entity);
+		if (index < 0) {
+			return false;
+		}
+		removeAt(index);
+		return true;
+	}
+
+	/**
+	 * Checks if an entity is in the queue.
+	 *
+	 * @param entity E  the entity to look for
+	 * @return boolean true if it is in the queue
+	 */
+	public boolean contains(E entity) {
+		return indexOf(entity) >= 0;
+	}
+
+	public int length() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public String getQueueStrategy() {
+		return strategy;
+	}
+
+	public Reporter createReporter() {
+		return new QueueReporter(this);
+	}
+
+	/**
+	 * Returns the index of an entity in the array, or -1.
+	 */
+	private int indexOf(E entity) {
+		int from = priority == null ? head : 0;
+		int to = priority == null ? end : size;
+		if (entity instanceof Member) {
+			int index = ((Member) entity).getQueueIndex();
+			return index >= from && index < to && entities[index] == entity ? index : -1;
+		}
+		for (int i = from; i < to; i++) {
+			if (entities[i] == entity) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Removes the entity at the given index of the array.
+	 */
+	@SuppressWarnings("unchecked")
+	private void removeAt(int index) {
+		E entity = (E) entities[index];
+		TimeInstant entry = entered[index];
+		size--;
+		if (priority == null) {
+			entities[index] = null;
+			entered[index] = null;
+			// every hole is skipped once, so this is constant amortized
+			while (head < end && entities[head] == null) {
+				head++;
+			}
+			if (size == 0) {
+				head = 0;
+				end = 0;
+			}
+		} else {
+			if (index < size) {
+				move(size, index);
+				siftDown(index);
+				siftUp(index);
+			}
+			entities[size] = null;
+			entered[size] = null;
+		}
+		if (entity instanceof Member) {
+			((Member) entity).setQueueIndex(-1);
+		}
+		deleteItem(entry);
+		if (currentlySendTraceNotes()) {
+			sendTraceNote("removes " + entity.getName() + " from " + getName());
+		}
+	}
+
+	/**
+	 * Without a comparator: moves the entities to the start of the array,
+	 * closing the holes, after growing the array if it is more than half
+	 * full.
+	 */
+	private void compact() {
+		if (2 * size > entities.length) {
+			grow();
+		}
+		int to = 0;
+		for (int from = head; from < end; from++) {
+			if (entities[from] != null) {
+				if (from != to) {
+					move(from, to);
+				}
+				to++;
+			}
+		}
+		Arrays.fill(entities, to, end, null);
+		Arrays.fill(entered, to, end, null);
+		head = 0;
+		end = to;
+	}
+
+	/**
+	 * Doubles the length of the arrays.
+	 */
+	private void grow() {
+		entities = Arrays.copyOf(entities, 2 * entities.length);
+		sequence = Arrays.copyOf(sequence, 2 * sequence.length);
+		entered = Arrays.copyOf(entered, 2 * entered.length);
+	}
+
+	/**
+	 * Moves the entity at index i up until its parent comes before it.
+	 */
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!before(i, parent)) {
+				break;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	/**
+	 * Moves the entity at index i down until it comes before its children.
+	 */
+	private void siftDown(int i) {
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && before(child + 1, child)) {
+				child++;
+			}
+			if (!before(child, i)) {
+				break;
+			}
+			swap(i, child);
+			i = child;
+		}
+	}
+
+	/**
+	 * Checks if the entity at index i comes before the one at index j.
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean before(int i, int j) {
+		if (priority != null) {
+			int order = priority.compare((E) entities[i], (E) entities[j]);
+			if (order != 0) {
+				return order < 0;
+			}
+		}
+		return sequence[i] < sequence[j];
+	}
+
+	/**
+	 * Swaps the entities at two indices.
+	 */
+	private void swap(int i, int j) {
+		Object entity = entities[i];
+		long number = sequence[i];
+		TimeInstant entry = entered[i];
+		move(j, i);
+		entities[j] = entity;
+		sequence[j] = number;
+		entered[j] = entry;
+		placed(j);
+	}
+
+	/**
+	 * Copies the entity at index from to index to.
+	 */
+	private void move(int from, int to) {
+		entities[to] = entities[from];
+		sequence[to] = sequence[from];
+		entered[to] = entered[from];
+		placed(to);
+	}
+
+	/**
+	 * Tells the entity at the given index its position if it is a Member.
+	 */
+	private void placed(int index) {
+		if (entities[index] instanceof Member) {
+			((Member) entities[index]).setQueueIndex(index);
+		}
+	}
+}
@@ -0,0 +1,268 @@
+package desmoj.demo.shared;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.ObjectName;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import desmoj.core.simulator.Model;
+import desmoj.core.simulator.QueueBased;
+
+/**
+ * Live progress and throughput metrics of headless runs.
+ *
+ * Started with the system property desmoj.metrics.port (see
+ * startIfConfigured()), a daemon thread samples once per second the
+ * simulation time of the latest registered model, the number of events and
+ * process activations dispatched (counted by FlightRecorderEvents), the
+ * lengths of the registered queues and the number of completed
+ * replications. The simulation threads only bump lock-free counters, the
+ * sampler reads the queue lengths and the clock without locking them. The
+ * latest sample is published through JMX (desmoj.demo:type=LiveMetrics)
+ * and as plain text on http://localhost:port/metrics.
+ *
+ * DESMO-J keeps its event-list private, its size is not sampled. A
+ * replication that stalls or runs away shows as a simulation time and an
+ * event rate that stop moving or explode, and as a growing
+ * secondsSinceProgress.
+ */
+public class LiveMetrics implements LiveMetricsMBean {
+
+	/** Tells if the metrics were started, counters are only bumped then */
+	private static volatile boolean enabled = false;
+
+	/** Events and process activations dispatched */
+	private static final LongAdder events = new LongAdder();
+
+	/** Completed replications */
+	private static final LongAdder replications = new LongAdder();
+
+	/** Latest registered model */
+	private static volatile Model model;
+
+	/** Latest registered queue per queue name */
+	private static final Map<String, QueueBased> queues = new ConcurrentHashMap<String, QueueBased>();
+
+	/** The started instance */
+	private static LiveMetrics instance;
+
+	/**
+	 * One sample, immutable.
+	 */
+	private static class Sample {
+		final double simulationTime;
+		final double wallTime;
+		final long events;
+		final double eventsPerSecond;
+		final double secondsSinceProgress;
+		final long replications;
+		final Map<String, Integer> queueLengths;
+
+		Sample(double simulationTime, double wallTime, long events, double eventsPerSecond,
+				double secondsSinceProgress, long replications, Map<String, Integer> queueLengths) {
+			this.simulationTime = simulationTime;
+			this.wallTime = wallTime;
+			this.events = events;
+			this.eventsPerSecond = eventsPerSecond;
+			this.secondsSinceProgress = secondsSinceProgress;
+			this.replications = replications;
+			this.queueLengths = queueLengths;
+		}
+	}
+
+	/** Wall clock start in nanoseconds */
+	private final long start = System.nanoTime();
+
+	/** The latest sample */
+	private volatile Sample sample = new Sample(0, 0, 0, 0, 0, 0, new TreeMap<String, Integer>());
+
+	/** Wall time of the latest sample that saw an event */
+	private double lastProgress = 0;
+
+	/**
+	 * Only startIfConfigured() creates the instance
+	 */
+	private LiveMetrics() {
+	}
+
+	/**
+	 * Starts the sampler, the MBean and the HTTP endpoint if the system
+	 * property desmoj.metrics.port is set, 0 picks a free port. Does nothing
+	 * otherwise or if already started.
+	 */
+	public static synchronized void startIfConfigured() {
+		String port = System.getProperty("desmoj.metrics.port");
+		if (port == null || instance != null) {
+			return;
+		}
+		final LiveMetrics metrics = new LiveMetrics();
+		ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "LiveMetrics sampler");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+					new ObjectName("desmoj.demo:type=LiveMetrics"));
+
+			// started on the daemon sampler thread, so the server's own
+			// threads are daemons as well and don't keep the JVM alive
+			final int httpPort = Integer.parseInt(port);
+			HttpServer server = sampler.submit(new Callable<HttpServer>() {
+				public HttpServer call() throws IOException {
+					HttpServer server = HttpServer.create(
+							new InetSocketAddress(InetAddress.getLoopbackAddress(), httpPort), 0);
+					server.createContext("/metrics", new HttpHandler() {
+						public void handle(HttpExchange exchange) throws IOException {
+							byte[] body = metrics.toText().getBytes(StandardCharsets.UTF_8);
+							exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+							exchange.sendResponseHeaders(200, body.length);
+							OutputStream out = exchange.getResponseBody();
+							out.write(body);
+							out.close();
+						}
+					});
+					server.start();
+					return server;
+				}
+			}).get();
+			System.err.println("Live metrics on http://localhost:" + server.getAddress().getPort() + "/metrics");
+		} catch (Exception e) {
+			System.err.println("Live metrics not available: " + e);
+			sampler.shutdown();
+			return;
+		}
+
+		sampler.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				metrics.takeSample();
+			}
+		}, 1, 1, TimeUnit.SECONDS);
+
+		instance = metrics;
+		enabled = true;
+	}
+
+	/**
+	 * Counts a dispatched event or process activation.
+	 */
+	public static void eventDispatched() {
+		if (enabled) {
+			events.increment();
+		}
+	}
+
+	/**
+	 * Counts a completed replication.
+	 */
+	public static void replicationCompleted() {
+		if (enabled) {
+			replications.increment();
+		}
+	}
+
+	/**
+	 * Registers a model and its queues for sampling. They replace earlier
+	 * registered ones of the same names, so a sweep shows its latest model.
+	 *
+	 * @param owner Model  the model whose clock is sampled
+	 * @param modelQueues QueueBased[]  the queues whose lengths are sampled
+	 */
+	public static void register(Model owner, QueueBased... modelQueues) {
+		if (!enabled) {
+			return;
+		}
+		model = owner;
+		for (QueueBased queue : modelQueues) {
+			queues.put(queue.getName(), queue);
+		}
+	}
+
+	/**
+	 * Takes a sample, on the sampler thread.
+	 */
+	private void takeSample() {
+		Sample previous = sample;
+		double wallTime = (System.nanoTime() - start) / 1e9;
+		long eventCount = events.sum();
+		if (eventCount > previous.events) {
+			lastProgress = wallTime;
+		}
+		Model current = model;
+		double simulationTime = current == null ? 0 : current.presentTime().getTimeAsDouble();
+		Map<String, Integer> lengths = new TreeMap<String, Integer>();
+		for (Map.Entry<String, QueueBased> queue : queues.entrySet()) {
+			lengths.put(queue.getKey(), queue.getValue().length());
+		}
+		sample = new Sample(simulationTime, wallTime, eventCount,
+				(eventCount - previous.events) / (wallTime - previous.wallTime), wallTime - lastProgress,
+				replications.sum(), lengths);
+	}
+
+	/**
+	 * Returns the latest sample as plain text, one metric per line.
+	 */
+	private String toText() {
+		Sample s = sample;
+		StringBuilder text = new StringBuilder();
+		text.append("desmoj_simulation_time ").append(s.simulationTime).append('\n');
+		text.append("desmoj_wall_time_seconds ").append(s.wallTime).append('\n');
+		text.append("desmoj_events_total ").append(s.events).append('\n');
+		text.append("desmoj_events_per_second ").append(s.eventsPerSecond).append('\n');
+		text.append("desmoj_seconds_since_progress ").append(s.secondsSinceProgress).append('\n');
+		text.append("desmoj_replications_completed ").append(s.replications).append('\n');
+		for (Map.Entry<String, Integer> queue : s.queueLengths.entrySet()) {
+			text.append("desmoj_queue_length{queue=\"").append(queue.getKey()).append("\"} ")
+					.append(queue.getValue()).append('\n');
+		}
+		return text.toString();
+	}
+
+	public double getSimulationTime() {
+		return sample.simulationTime;
+	}
+
+	public double getWallTime() {
+		return sample.wallTime;
+	}
+
+	public long getEvents() {
+		return sample.events;
+	}
+
+	public double getEventsPerSecond() {
+		return sample.eventsPerSecond;
+	}
+
+	public double getSecondsSinceProgress() {
+		return sample.secondsSinceProgress;
+	}
+
+	public long getReplicationsCompleted() {
+		return sample.replications;
+	}
+
+	public String getQueueLengths() {
+		String lengths = sample.queueLengths.toString();
+		return lengths.substring(1, lengths.length() - 1);
+	}
+}
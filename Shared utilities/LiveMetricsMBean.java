@@ -0,0 +1,29 @@
+package desmoj.demo.shared;
+
+/**
+ * JMX view of LiveMetrics, registered as desmoj.demo:type=LiveMetrics.
+ * All values are taken from the latest sample.
+ */
+public interface LiveMetricsMBean {
+
+	/** Simulation time of the latest registered model */
+	double getSimulationTime();
+
+	/** Seconds since the metrics were started */
+	double getWallTime();
+
+	/** Events and process activations dispatched so far */
+	long getEvents();
+
+	/** Events and process activations per second since the previous sample */
+	double getEventsPerSecond();
+
+	/** Seconds since the last sample that saw an event */
+	double getSecondsSinceProgress();
+
+	/** Replications completed so far */
+	long getReplicationsCompleted();
+
+	/** Lengths of the registered queues, e.g. "Truck Queue=3, idle VC Queue=0" */
+	String getQueueLengths();
+}
@@ -0,0 +1,69 @@
+package desmoj.demo.shared;
+
+import java.util.Map;
+
+import desmoj.core.util.AccessPoint;
+import desmoj.core.util.MutableAccessPoint;
+import desmoj.core.util.Parameterizable;
+
+/**
+ * Sets the parameters of a Parameterizable model from system properties, so
+ * the command-line entry points can be configured like the experiment
+ * runner's GUI. The property prefix + name sets the parameter name of
+ * createParameters(), e.g. -Dvancarrier.model.useFastPath=true. The value
+ * is converted to the type of the parameter's current value.
+ */
+public class ModelParameters {
+
+	private ModelParameters() {
+	}
+
+	/**
+	 * Sets every parameter of the model that is given as a system property.
+	 *
+	 * @param model Parameterizable  the model, not connected yet
+	 * @param prefix String  the prefix of its properties, e.g.
+	 *            "vancarrier.model."
+	 * @throws IllegalArgumentException if a property with the prefix names
+	 *             no parameter of the model or has an invalid value
+	 */
+	public static void setFromSystemProperties(Parameterizable model, String prefix) {
+		Map<String, AccessPoint> parameters = model.createParameters();
+		for (String property : System.getProperties().stringPropertyNames()) {
+			if (!property.startsWith(prefix)) {
+				continue;
+			}
+			String name = property.substring(prefix.length());
+			AccessPoint parameter = parameters.get(name);
+			if (!(parameter instanceof MutableAccessPoint)) {
+				throw new IllegalArgumentException("Unknown model parameter " + property + ", known are "
+						+ parameters.keySet());
+			}
+			((MutableAccessPoint) parameter).setValue(convert(property, System.getProperty(property),
+					parameter.getValue()));
+		}
+	}
+
+	/**
+	 * Converts a property value to the type of the parameter's current value.
+	 */
+	private static Object convert(String property, String value, Object current) {
+		try {
+			if (current instanceof Integer) {
+				return Integer.valueOf(value.trim());
+			} else if (current instanceof Long) {
+				return Long.valueOf(value.trim());
+			} else if (current instanceof Double) {
+				return Double.valueOf(value.trim());
+			} else if (current instanceof Boolean) {
+				if (!value.trim().equalsIgnoreCase("true") && !value.trim().equalsIgnoreCase("false")) {
+					throw new NumberFormatException("true or false expected");
+				}
+				return Boolean.valueOf(value.trim());
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value \"" + value + "\" of " + property, e);
+		}
+		return value;
+	}
+}
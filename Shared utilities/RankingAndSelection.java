@@ -0,0 +1,251 @@
+package desmoj.demo.shared;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Selects the best of several model configurations with the fully
+ * sequential ranking-and-selection procedure of Kim and Nelson (KN).
+ *
+ * Every candidate is simulated with n0 replications first, then one more
+ * replication per stage. After each stage a candidate is dropped as soon as
+ * its sample mean is worse than that of another surviving candidate by more
+ * than a continuation region that shrinks with the number of replications
+ * and grows with the variance of their difference. Clearly inferior
+ * candidates are thus dropped after few replications, and the budget goes to
+ * the close contenders.
+ *
+ * The best candidate is the one with the smallest mean (e.g. cost or wait).
+ * If the best mean is at least delta better than all others (indifference
+ * zone), the procedure selects it with probability at least 1 - alpha, given
+ * normally distributed replication results. Replication r of all candidates
+ * uses the same seed (common random numbers), which KN allows and which
+ * makes the differences less noisy. The replications of a stage run in
+ * parallel.
+ */
+public class RankingAndSelection {
+
+	/**
+	 * A configuration to choose from.
+	 */
+	public interface Candidate {
+
+		/**
+		 * Returns the name of this configuration.
+		 */
+		String getName();
+
+		/**
+		 * Simulates one replication of this configuration.
+		 *
+		 * @param seed long  the seed of the replication
+		 * @return double the performance of the replication, smaller is better
+		 */
+		double simulate(long seed) throws Exception;
+	}
+
+	/** The candidates */
+	private final List<Candidate> candidates;
+
+	/** Number of first-stage replications per candidate, at least 2 */
+	private final int n0;
+
+	/** Indifference zone: differences below it don't matter */
+	private final double delta;
+
+	/** 1 - alpha is the guaranteed probability of correct selection */
+	private final double alpha;
+
+	/** Maximum number of replications per candidate */
+	private final int maxReplications;
+
+	/** Seed of replication 0, replication r uses this seed + r */
+	private final long baseSeed;
+
+	/** Number of threads to simulate with */
+	private final int threads;
+
+	/** Results of the replications, per candidate */
+	private double[][] results;
+
+	/** Number of replications run per candidate after select() */
+	private int[] replications;
+
+	/**
+	 * Creates a ranking-and-selection run.
+	 *
+	 * @param candidates List  the configurations to choose from
+	 * @param n0 int  first-stage replications per candidate, at least 2
+	 * @param delta double  indifference zone
+	 * @param alpha double  1 - alpha is the probability of correct selection
+	 * @param maxReplications int  budget per candidate
+	 * @param baseSeed long  seed of replication 0
+	 * @param threads int  number of threads to simulate with
+	 */
+	public RankingAndSelection(List<Candidate> candidates, int n0, double delta, double alpha, int maxReplications,
+			long baseSeed, int threads) {
+		if (candidates.isEmpty() || n0 < 2 || delta <= 0 || alpha <= 0 || alpha >= 1 || maxReplications < n0) {
+			throw new IllegalArgumentException("Invalid ranking-and-selection setup: candidates=" + candidates.size()
+					+ ", n0=" + n0 + ", delta=" + delta + ", alpha=" + alpha + ", max replications="
+					+ maxReplications);
+		}
+		this.candidates = new ArrayList<Candidate>(candidates);
+		this.n0 = n0;
+		this.delta = delta;
+		this.alpha = alpha;
+		this.maxReplications = maxReplications;
+		this.baseSeed = baseSeed;
+		this.threads = threads;
+	}
+
+	/**
+	 * Runs the procedure.
+	 *
+	 * @return Candidate the selected configuration. If the budget runs out
+	 *         before only one candidate is left, the surviving candidate with
+	 *         the smallest mean is returned without the guarantee.
+	 */
+	public Candidate select() throws InterruptedException, ExecutionException {
+		int k = candidates.size();
+		results = new double[k][maxReplications];
+		replications = new int[k];
+		boolean[] active = new boolean[k];
+		Arrays.fill(active, true);
+		if (k == 1) {
+			return candidates.get(0);
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			// first stage
+			simulate(pool, active, 0, n0);
+
+			// variances of the pairwise differences, from the first stage
+			double[][] variance = new double[k][k];
+			for (int i = 0; i < k; i++) {
+				for (int l = i + 1; l < k; l++) {
+					variance[i][l] = variance[l][i] = differenceVariance(i, l);
+				}
+			}
+			double eta = 0.5 * (Math.pow(2 * alpha / (k - 1), -2.0 / (n0 - 1)) - 1);
+			double h2 = 2 * eta * (n0 - 1);
+
+			int r = n0;
+			while (true) {
+				// screening: drop every candidate clearly worse than another one
+				double[] mean = new double[k];
+				for (int i = 0; i < k; i++) {
+					mean[i] = active[i] ? mean(i, r) : Double.NaN;
+				}
+				boolean[] survivors = active.clone();
+				for (int i = 0; i < k; i++) {
+					for (int l = 0; l < k && survivors[i]; l++) {
+						if (l == i || !active[l]) {
+							continue;
+						}
+						double w = Math.max(0, delta / (2 * r) * (h2 * variance[i][l] / (delta * delta) - r));
+						if (mean[i] - mean[l] > w) {
+							survivors[i] = false;
+						}
+					}
+				}
+				active = survivors;
+
+				int left = 0;
+				int best = -1;
+				for (int i = 0; i < k; i++) {
+					if (active[i]) {
+						left++;
+						if (best < 0 || mean[i] < mean[best]) {
+							best = i;
+						}
+					}
+				}
+				if (left == 1 || r == maxReplications) {
+					return candidates.get(best);
+				}
+
+				// one more replication for every survivor
+				simulate(pool, active, r, r + 1);
+				r++;
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Returns the number of replications the given candidate got.
+	 */
+	public int getReplications(Candidate candidate) {
+		return replications[candidates.indexOf(candidate)];
+	}
+
+	/**
+	 * Returns the sample mean of the given candidate over all its
+	 * replications.
+	 */
+	public double getMean(Candidate candidate) {
+		int i = candidates.indexOf(candidate);
+		return mean(i, replications[i]);
+	}
+
+	/**
+	 * Simulates replications from (inclusive) to to (exclusive) of all active
+	 * candidates in parallel.
+	 */
+	private void simulate(ExecutorService pool, boolean[] active, int from, int to)
+			throws InterruptedException, ExecutionException {
+		List<Future<?>> stage = new ArrayList<Future<?>>();
+		for (int i = 0; i < candidates.size(); i++) {
+			if (!active[i]) {
+				continue;
+			}
+			for (int r = from; r < to; r++) {
+				final int candidate = i;
+				final int replication = r;
+				stage.add(pool.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						results[candidate][replication] = candidates.get(candidate).simulate(baseSeed + replication);
+						return null;
+					}
+				}));
+			}
+			replications[i] = to;
+		}
+		for (Future<?> done : stage) {
+			done.get();
+		}
+	}
+
+	/**
+	 * Returns the mean of the first n results of candidate i.
+	 */
+	private double mean(int i, int n) {
+		double sum = 0;
+		for (int r = 0; r < n; r++) {
+			sum += results[i][r];
+		}
+		return sum / n;
+	}
+
+	/**
+	 * Returns the sample variance of the differences of candidates i and l
+	 * over the first stage.
+	 */
+	private double differenceVariance(int i, int l) {
+		double meanDifference = mean(i, n0) - mean(l, n0);
+		double sum = 0;
+		for (int r = 0; r < n0; r++) {
+			double deviation = results[i][r] - results[l][r] - meanDifference;
+			sum += deviation * deviation;
+		}
+		return sum / (n0 - 1);
+	}
+}
@@ -0,0 +1,353 @@
+package desmoj.demo.shared;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import desmoj.core.statistic.Histogram;
+import desmoj.core.util.AccessPoint;
+import desmoj.core.util.Parameterizable;
+
+/**
+ * A persistent, content-addressed cache of per-replication results.
+ *
+ * Every entry holds the ReplicationFarm.Summary of one replication plus the
+ * cell counts of its wait time histogram as a quantile sketch. Entries are
+ * stored one file per key, the key being a SHA-256 hash of the model class,
+ * the model parameters (including the distribution parameters and the
+ * contents of the input files they name), the horizon, the seed and a code
+ * version. The code version hashes all class files of the model's packages,
+ * so a changed model never hits old entries, which then age out.
+ *
+ * The cache is bounded in size: when it grows beyond its limit, the least
+ * recently used entries (by file modification time, refreshed on every hit)
+ * are deleted. Entries are written to a temporary file and moved into place,
+ * so several processes may share a cache directory.
+ */
+public class ReplicationCache {
+
+	/**
+	 * A cached replication.
+	 */
+	public static class Entry {
+
+		public final ReplicationFarm.Summary summary;
+
+		/** Observations per wait time histogram cell, underflow and overflow included */
+		public final long[] waitTimeCells;
+
+		public Entry(ReplicationFarm.Summary summary, long[] waitTimeCells) {
+			this.summary = summary;
+			this.waitTimeCells = waitTimeCells;
+		}
+	}
+
+	/** Suffix of cache entry files */
+	private static final String SUFFIX = ".rep";
+
+	/** The directory holding the entries */
+	private final File directory;
+
+	/** Maximum total size of all entries in bytes */
+	private final long maxBytes;
+
+	/**
+	 * Opens (or creates) a cache.
+	 *
+	 * @param directory File  the directory holding the entries
+	 * @param maxBytes long  maximum total size of all entries
+	 */
+	public ReplicationCache(File directory, long maxBytes) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create cache directory " + directory);
+		}
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Computes the key of a replication.
+	 *
+	 * @param modelClass Class  the model class
+	 * @param parameters Map  the model parameters, distribution parameters
+	 *            included
+	 * @param codeVersion String  version of the model code, see codeVersion()
+	 * @param horizon double  the stop time of the replication
+	 * @param seed long  the seed of the replication
+	 * @return String the key as hex string
+	 */
+	public static String key(Class<?> modelClass, Map<String, ?> parameters, String codeVersion, double horizon,
+			long seed) {
+		StringBuilder text = new StringBuilder(modelClass.getName());
+		// sorted, so the order the parameters were put in does not matter
+		for (Map.Entry<String, ?> parameter : new TreeMap<String, Object>(parameters).entrySet()) {
+			text.append('|').append(parameter.getKey()).append('=').append(parameter.getValue());
+		}
+		text.append("|code=").append(codeVersion);
+		text.append("|horizon=").append(horizon);
+		text.append("|seed=").append(seed);
+		return hex(sha256(text.toString().getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Collects the current values of a model's parameters for key(). A
+	 * String parameter naming an existing file, like an arrival profile or
+	 * a yard layout, adds the parameter name + ".sha256" with the hash of
+	 * the file's contents, so editing the file changes the key.
+	 *
+	 * @param model Parameterizable  the configured model
+	 * @return Map the parameter values by name, modifiable
+	 */
+	public static Map<String, Object> parameters(Parameterizable model) throws IOException {
+		Map<String, Object> parameters = new TreeMap<String, Object>();
+		for (Map.Entry<String, AccessPoint> parameter : model.createParameters().entrySet()) {
+			Object value = parameter.getValue().getValue();
+			parameters.put(parameter.getKey(), value);
+			if (value instanceof String && !((String) value).isEmpty()) {
+				File file = new File((String) value);
+				if (file.isFile()) {
+					parameters.put(parameter.getKey() + ".sha256", hex(sha256(Files.readAllBytes(file.toPath()))));
+				}
+			}
+		}
+		return parameters;
+	}
+
+	/**
+	 * Hashes all class files of the packages of the given classes, nested
+	 * and package-private classes included, so the result changes whenever
+	 * any class of these packages is recompiled with different code. The
+	 * class files are read from the directory or jar the classes were
+	 * loaded from.
+	 *
+	 * @param packages Class...  one class of every package the results
+	 *            depend on
+	 * @return String the code version as hex string
+	 */
+	public static String codeVersion(Class<?>... packages) {
+		MessageDigest digest = sha256();
+		for (Class<?> anchor : packages) {
+			for (Map.Entry<String, byte[]> classFile : classFiles(anchor).entrySet()) {
+				digest.update(classFile.getKey().getBytes(StandardCharsets.UTF_8));
+				digest.update(classFile.getValue());
+			}
+		}
+		return hex(digest.digest());
+	}
+
+	/**
+	 * Reads the class files of the package of a class, sorted by name.
+	 */
+	private static Map<String, byte[]> classFiles(Class<?> anchor) {
+		String name = anchor.getName();
+		String path = name.substring(0, name.lastIndexOf('.') + 1).replace('.', '/');
+		Map<String, byte[]> classFiles = new TreeMap<String, byte[]>();
+		CodeSource source = anchor.getProtectionDomain().getCodeSource();
+		if (source == null || source.getLocation() == null) {
+			throw new IllegalStateException("Unknown location of the class files of " + name);
+		}
+		try {
+			File location = new File(source.getLocation().toURI());
+			if (location.isDirectory()) {
+				File[] files = new File(location, path).listFiles(new FilenameFilter() {
+					public boolean accept(File dir, String file) {
+						return file.endsWith(".class");
+					}
+				});
+				if (files != null) {
+					for (File file : files) {
+						classFiles.put(path + file.getName(), Files.readAllBytes(file.toPath()));
+					}
+				}
+			} else {
+				JarFile jar = new JarFile(location);
+				try {
+					Enumeration<JarEntry> entries = jar.entries();
+					while (entries.hasMoreElements()) {
+						JarEntry entry = entries.nextElement();
+						String file = entry.getName();
+						if (file.startsWith(path) && file.endsWith(".class") && file.indexOf('/', path.length()) < 0) {
+							classFiles.put(file, readFully(jar.getInputStream(entry)));
+						}
+					}
+				} finally {
+					jar.close();
+				}
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot read the class files of " + name, e);
+		} catch (URISyntaxException e) {
+			throw new IllegalStateException("Cannot read the class files of " + name, e);
+		}
+		return classFiles;
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				bytes.write(buffer, 0, read);
+			}
+			return bytes.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Looks up an entry and marks it as recently used.
+	 *
+	 * @param key String  the key of the replication
+	 * @return Entry the cached replication or null if not cached
+	 */
+	public Entry get(String key) {
+		File file = new File(directory, key + SUFFIX);
+		if (!file.isFile()) {
+			return null;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			ReplicationFarm.Summary summary = ReplicationFarm.Summary.read(in);
+			long[] cells = new long[in.readInt()];
+			for (int i = 0; i < cells.length; i++) {
+				cells[i] = in.readLong();
+			}
+			file.setLastModified(System.currentTimeMillis());
+			return new Entry(summary, cells);
+		} catch (IOException e) {
+			// a damaged or half deleted entry is just a miss
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// nothing to do
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stores an entry and evicts least recently used entries if the cache
+	 * got too big.
+	 *
+	 * @param key String  the key of the replication
+	 * @param entry Entry  the replication's results
+	 */
+	public void put(String key, Entry entry) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		DataOutputStream out = new DataOutputStream(bytes);
+		entry.summary.write(out);
+		out.writeInt(entry.waitTimeCells.length);
+		for (long cell : entry.waitTimeCells) {
+			out.writeLong(cell);
+		}
+		out.flush();
+
+		File temp = File.createTempFile(key, ".tmp", directory);
+		BufferedOutputStream file = new BufferedOutputStream(new FileOutputStream(temp));
+		try {
+			bytes.writeTo(file);
+		} finally {
+			file.close();
+		}
+		Files.move(temp.toPath(), new File(directory, key + SUFFIX).toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+
+		evict();
+	}
+
+	/**
+	 * Deletes least recently used entries until the cache fits its size
+	 * limit.
+	 */
+	private void evict() {
+		File[] entries = directory.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.endsWith(SUFFIX);
+			}
+		});
+		if (entries == null) {
+			return;
+		}
+		long total = 0;
+		for (File entry : entries) {
+			total += entry.length();
+		}
+		if (total <= maxBytes) {
+			return;
+		}
+		Arrays.sort(entries, new Comparator<File>() {
+			public int compare(File a, File b) {
+				return Long.compare(a.lastModified(), b.lastModified());
+			}
+		});
+		for (int i = 0; i < entries.length && total > maxBytes; i++) {
+			long length = entries[i].length();
+			if (entries[i].delete()) {
+				total -= length;
+			}
+		}
+	}
+
+	/**
+	 * Returns the observations of all cells of a histogram, underflow and
+	 * overflow cell included.
+	 *
+	 * @param histogram Histogram  the histogram
+	 * @return long[] the cell counts
+	 */
+	public static long[] cells(Histogram histogram) {
+		long[] cells = new long[histogram.getCells() + 2];
+		for (int i = 0; i < cells.length; i++) {
+			cells[i] = histogram.getObservationsInCell(i);
+		}
+		return cells;
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 not available", e);
+		}
+	}
+
+	private static byte[] sha256(byte[] data) {
+		return sha256().digest(data);
+	}
+
+	private static String hex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(2 * bytes.length);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+}
@@ -0,0 +1,312 @@
+package desmoj.demo.shared;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Runs replications in a farm of local worker JVMs.
+ *
+ * The coordinator launches a number of worker processes running a worker
+ * main class (ReplicationWorker for the Vancarrier model,
+ * McBurgerReplicationWorker for McBurger) and hands out replications over
+ * the workers' standard input. A worker answers every replication with a
+ * compact binary Summary on its standard output. Both directions use
+ * DataOutput encoding, so the same protocol works over sockets once workers
+ * run on other machines:
+ *
+ * coordinator to worker: int replication, long seed, double stopTime; a
+ * negative replication index ends the worker.
+ * worker to coordinator: a Summary, see Summary.write().
+ *
+ * A worker that dies or breaks the protocol is restarted, and the
+ * replication it was working on is handed out again. So is a worker that
+ * does not answer a replication within the timeout (see setTimeout()): a
+ * watchdog kills it, which ends the coordinator's read. The seed of a
+ * replication only depends on its index and the results are kept by
+ * index, so the merged result does not depend on which worker ran what.
+ */
+public class ReplicationFarm {
+
+	/**
+	 * The compact result of one replication.
+	 */
+	public static class Summary {
+
+		public final int replication;
+
+		public final long seed;
+
+		public final double meanWait;
+
+		public final double stdDevWait;
+
+		/** Number of recorded wait times */
+		public final long observations;
+
+		/** Number of arrived customers */
+		public final long arrived;
+
+		/** Number of serviced customers */
+		public final long serviced;
+
+		public Summary(int replication, long seed, double meanWait, double stdDevWait, long observations,
+				long arrived, long serviced) {
+			this.replication = replication;
+			this.seed = seed;
+			this.meanWait = meanWait;
+			this.stdDevWait = stdDevWait;
+			this.observations = observations;
+			this.arrived = arrived;
+			this.serviced = serviced;
+		}
+
+		/**
+		 * Writes this summary in the farm's wire format (52 bytes).
+		 */
+		public void write(DataOutput out) throws IOException {
+			out.writeInt(replication);
+			out.writeLong(seed);
+			out.writeDouble(meanWait);
+			out.writeDouble(stdDevWait);
+			out.writeLong(observations);
+			out.writeLong(arrived);
+			out.writeLong(serviced);
+		}
+
+		/**
+		 * Reads a summary written by write().
+		 */
+		public static Summary read(DataInput in) throws IOException {
+			return new Summary(in.readInt(), in.readLong(), in.readDouble(), in.readDouble(), in.readLong(),
+					in.readLong(), in.readLong());
+		}
+	}
+
+	/** Main class of the worker JVMs */
+	private final String workerClass;
+
+	/** Command-line arguments of the worker JVMs */
+	private final String[] workerArgs;
+
+	/** Number of worker JVMs */
+	private final int workers;
+
+	/** Seed of replication 0, replication k uses this seed + k */
+	private final long baseSeed;
+
+	/** Number of worker restarts allowed before the farm gives up */
+	private int restartsLeft;
+
+	/** Milliseconds a worker may take for a replication, 10 minutes by default */
+	private long timeoutMillis = 10 * 60 * 1000L;
+
+	/**
+	 * Creates a replication farm.
+	 *
+	 * @param workers int  number of worker JVMs
+	 * @param baseSeed long  seed of replication 0
+	 * @param workerClass String  main class of the workers
+	 * @param workerArgs String...  arguments passed to every worker
+	 */
+	public ReplicationFarm(int workers, long baseSeed, String workerClass, String... workerArgs) {
+		this.workers = workers;
+		this.baseSeed = baseSeed;
+		this.workerClass = workerClass;
+		this.workerArgs = workerArgs;
+		this.restartsLeft = 3 * workers;
+	}
+
+	/**
+	 * Sets the time a worker may take for one replication before it is
+	 * considered hung, killed and replaced. It has to cover the startup of
+	 * a worker JVM as well.
+	 *
+	 * @param timeoutMillis long  the timeout in milliseconds
+	 */
+	public void setTimeout(long timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * Runs the given number of replications on the farm.
+	 *
+	 * @param replications int  number of replications
+	 * @param stopTime double  the time each replication stops at
+	 * @return Summary[] the summaries ordered by replication index
+	 */
+	public Summary[] run(int replications, final double stopTime) throws IOException, InterruptedException {
+		final Summary[] results = new Summary[replications];
+		final ConcurrentLinkedQueue<Integer> pending = new ConcurrentLinkedQueue<Integer>();
+		for (int k = 0; k < replications; k++) {
+			pending.add(k);
+		}
+		final List<IOException> failures = new ArrayList<IOException>();
+		final Timer watchdog = new Timer("ReplicationFarm-watchdog", true);
+
+		// one coordinator thread per worker process
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < Math.min(workers, replications); i++) {
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					try {
+						serve(pending, results, stopTime, watchdog);
+					} catch (IOException e) {
+						synchronized (failures) {
+							failures.add(e);
+						}
+					}
+				}
+			}, "ReplicationFarm-" + i);
+			threads.add(thread);
+			thread.start();
+		}
+		try {
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} finally {
+			watchdog.cancel();
+		}
+		if (!failures.isEmpty()) {
+			throw failures.get(0);
+		}
+		return results;
+	}
+
+	/**
+	 * Feeds one worker process with pending replications until none are
+	 * left, restarting the worker if it fails or times out.
+	 */
+	private void serve(ConcurrentLinkedQueue<Integer> pending, Summary[] results, double stopTime, Timer watchdog)
+			throws IOException {
+		Process worker = startWorker();
+		try {
+			Integer replication;
+			while ((replication = pending.poll()) != null) {
+				// a hung worker is killed, so the read below fails
+				final Process current = worker;
+				TimerTask kill = new TimerTask() {
+					public void run() {
+						current.destroyForcibly();
+					}
+				};
+				watchdog.schedule(kill, timeoutMillis);
+				try {
+					DataOutputStream out = new DataOutputStream(worker.getOutputStream());
+					out.writeInt(replication);
+					out.writeLong(baseSeed + replication);
+					out.writeDouble(stopTime);
+					out.flush();
+
+					Summary summary = Summary.read(new DataInputStream(worker.getInputStream()));
+					kill.cancel();
+					if (summary.replication != replication) {
+						throw new IOException("Worker answered replication " + summary.replication + " instead of "
+								+ replication);
+					}
+					results[replication] = summary;
+				} catch (IOException e) {
+					// hand the replication out again and replace the worker
+					kill.cancel();
+					pending.add(replication);
+					worker.destroy();
+					if (!allowRestart()) {
+						throw new IOException("Too many worker failures, giving up", e);
+					}
+					worker = startWorker();
+				}
+			}
+			DataOutputStream out = new DataOutputStream(worker.getOutputStream());
+			out.writeInt(-1);
+			out.flush();
+		} finally {
+			worker.getOutputStream().close();
+		}
+	}
+
+	/**
+	 * Counts a worker restart.
+	 *
+	 * @return boolean false if no restarts are left
+	 */
+	private synchronized boolean allowRestart() {
+		return restartsLeft-- > 0;
+	}
+
+	/**
+	 * Launches a worker JVM with the same Java installation and class path
+	 * as this one, see workerOptions() for its JVM options.
+	 */
+	private Process startWorker() throws IOException {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.addAll(workerOptions());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(workerClass);
+		for (String arg : workerArgs) {
+			command.add(arg);
+		}
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+		return builder.start();
+	}
+
+	/**
+	 * Returns the JVM options of this JVM a worker needs as well: Java
+	 * agents (e.g. Quasar's), system properties and heap sizes. Options
+	 * binding resources of this JVM, such as a debugger port
+	 * (-agentlib:jdwp), a flight recording or CDS archive file
+	 * (-XX:StartFlightRecording, -XX:ArchiveClassesAtExit) or a JMX port
+	 * (-Dcom.sun.management.*), would clash between the workers and are
+	 * left out, as are all other options.
+	 *
+	 * @return List the options to pass to a worker
+	 */
+	private static List<String> workerOptions() {
+		List<String> options = new ArrayList<String>();
+		for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+			if (option.startsWith("-Dcom.sun.management.")) {
+				continue;
+			}
+			if (option.startsWith("-javaagent:") || option.startsWith("-D") || option.startsWith("-Xmx")
+					|| option.startsWith("-Xms")) {
+				options.add(option);
+			}
+		}
+		return options;
+	}
+
+	/**
+	 * Opens the protocol streams of a worker: replications are read from the
+	 * standard input, summaries are written to the standard output. Everything
+	 * else printed to System.out (e.g. by DESMO-J) is sent to the standard
+	 * error instead, so it cannot corrupt the protocol.
+	 *
+	 * @return DataOutputStream the stream to write summaries to
+	 */
+	public static DataOutputStream openWorkerOutput() {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(System.out));
+		System.setOut(System.err);
+		return out;
+	}
+
+	/**
+	 * Returns the stream a worker reads its replications from.
+	 */
+	public static DataInputStream openWorkerInput() {
+		return new DataInputStream(new BufferedInputStream(System.in));
+	}
+}
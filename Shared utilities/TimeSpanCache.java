@@ -0,0 +1,69 @@
+package desmoj.demo.shared;
+
+import java.util.concurrent.TimeUnit;
+
+import desmoj.core.simulator.Experiment;
+import desmoj.core.simulator.TimeSpan;
+
+/**
+ * This class hands out the TimeSpans a model schedules its events and holds
+ * its processes with.
+ *
+ * DESMO-J takes every delay as a TimeSpan, an immutable object fully
+ * described by its length in epsilon ticks. Delays drawn from the random
+ * streams are short compared to the horizon, and with a coarse epsilon they
+ * fall on few distinct tick counts, so one TimeSpan per tick count is kept
+ * and shared by all scheduling calls of the model. Each model owns its
+ * cache, which keeps concurrent replications apart. Delays longer than the
+ * cache get a TimeSpan of their own.
+ *
+ * Durations are rounded to the nearest epsilon tick, as DESMO-J does when it
+ * builds a TimeSpan from a double.
+ */
+public class TimeSpanCache {
+
+	/** Delays in ticks below which the TimeSpans are kept */
+	public static final int DEFAULT_SIZE = 1 << 16;
+
+	/** The TimeSpans built so far, indexed by their length in ticks */
+	private final TimeSpan[] spans;
+
+	/** Epsilon ticks per unit of the durations passed to get() */
+	private final double ticksPerUnit;
+
+	/** DESMO-J's epsilon, the unit of the ticks */
+	private final TimeUnit epsilon;
+
+	/**
+	 * Creates an empty cache for durations in the given unit. DESMO-J's
+	 * epsilon is read once here, so it must be set before.
+	 *
+	 * @param unit TimeUnit  the unit of the durations passed to get()
+	 * @param size int  number of tick counts kept
+	 */
+	public TimeSpanCache(TimeUnit unit, int size) {
+		epsilon = Experiment.getEpsilon();
+		ticksPerUnit = (double) unit.toNanos(1) / epsilon.toNanos(1);
+		spans = new TimeSpan[size];
+	}
+
+	/**
+	 * Returns a TimeSpan of the given duration.
+	 *
+	 * @param duration double  the duration in the unit of this cache
+	 * @return TimeSpan the time span, shared with earlier calls of the same
+	 *         length in ticks
+	 */
+	public TimeSpan get(double duration) {
+		long ticks = Math.round(duration * ticksPerUnit);
+		if (ticks < 0 || ticks >= spans.length) {
+			return new TimeSpan(ticks, epsilon);
+		}
+		TimeSpan span = spans[(int) ticks];
+		if (span == null) {
+			span = new TimeSpan(ticks, epsilon);
+			spans[(int) ticks] = span;
+		}
+		return span;
+	}
+}
@@ -0,0 +1,115 @@
+package desmoj.demo.shared;
+
+import java.util.Arrays;
+
+/**
+ * This class collects infinitesimal perturbation analysis (IPA) estimates of
+ * the derivatives of the mean wait with respect to the means of the model's
+ * exponential streams.
+ *
+ * An exponential sample X with mean m is m times a sample of mean 1, so its
+ * derivative with respect to m is X / m. Every point of time on the sample
+ * path is a sum and maximum of such samples, and its derivative follows the
+ * same sums and maxima: a server starting service at an arrival inherits the
+ * derivative of that arrival, a busy server the derivative of the point of
+ * time it became free. The model hands the derivative of every observed
+ * wait to update(), this class averages them. One run thus gives the mean
+ * wait and its sensitivities without further replications.
+ */
+public class WaitGradient {
+
+	/** Names of the parameters, i.e. of the stream means */
+	private final String[] parameters;
+
+	/** Sums of the observed derivatives, one per parameter */
+	private final double[] sums;
+
+	/** Number of observed waits */
+	private long observations = 0;
+
+	/**
+	 * Creates a gradient estimator.
+	 *
+	 * @param parameters String[]  names of the parameters, the order is the
+	 *            order of the derivatives passed to update()
+	 */
+	public WaitGradient(String... parameters) {
+		this.parameters = parameters.clone();
+		this.sums = new double[parameters.length];
+	}
+
+	/**
+	 * Adds the derivatives of one wait.
+	 *
+	 * @param derivative double[]  derivative of the wait per parameter
+	 */
+	public void update(double[] derivative) {
+		for (int i = 0; i < sums.length; i++) {
+			sums[i] += derivative[i];
+		}
+		observations++;
+	}
+
+	/**
+	 * Adds the derivatives of one wait to a gradient of two parameters,
+	 * without the array of update(double[]).
+	 *
+	 * @param first double  derivative of the wait by the first parameter
+	 * @param second double  derivative of the wait by the second parameter
+	 */
+	public void update(double first, double second) {
+		sums[0] += first;
+		sums[1] += second;
+		observations++;
+	}
+
+	/**
+	 * Returns the estimated derivative of the mean wait with respect to the
+	 * given parameter, or NaN if no wait was observed yet.
+	 *
+	 * @param parameter int  index of the parameter
+	 */
+	public double getDerivative(int parameter) {
+		return observations == 0 ? Double.NaN : sums[parameter] / observations;
+	}
+
+	/**
+	 * Returns the number of observed waits.
+	 */
+	public long getObservations() {
+		return observations;
+	}
+
+	/**
+	 * Forgets all observations.
+	 */
+	public void reset() {
+		Arrays.fill(sums, 0);
+		observations = 0;
+	}
+
+	/**
+	 * Returns the name of the given parameter.
+	 */
+	public String getParameter(int parameter) {
+		return parameters[parameter];
+	}
+
+	/**
+	 * Returns the number of parameters.
+	 */
+	public int getParameterCount() {
+		return parameters.length;
+	}
+
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		for (int i = 0; i < parameters.length; i++) {
+			if (i > 0) {
+				result.append(", ");
+			}
+			result.append("d wait / d ").append(parameters[i]).append(" = ").append(getDerivative(i));
+		}
+		return result.toString();
+	}
+}
@@ -0,0 +1,443 @@
+package desmoj.demo.shared;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A stochastic kriging metamodel of a simulation output, e.g. the mean wait
+ * as a function of some model parameters.
+ *
+ * The metamodel is fitted to design points, each simulated with several
+ * replications. The output is modelled as a constant trend plus a Gaussian
+ * random field with squared exponential correlation. The simulation noise of
+ * every design point (the variance of its mean) is added to the diagonal of
+ * the covariance matrix, so the metamodel smooths noisy means instead of
+ * interpolating them. After fitting, a prediction costs a few vector
+ * operations over the design points and comes with a standard error.
+ *
+ * query() simulates a new design point only where the standard error of the
+ * prediction is above a given limit, and refits the metamodel with it.
+ *
+ * The covariance assumes the noise of different design points to be
+ * independent, so every simulated design point gets seeds of its own: the
+ * k-th point simulated replicates with the seeds baseSeed + k *
+ * replications to baseSeed + (k + 1) * replications - 1. Common random
+ * numbers across the points would correlate their noise.
+ */
+public class WaitSurrogate {
+
+	/**
+	 * Simulates the output at a design point.
+	 */
+	public interface Simulator {
+
+		/**
+		 * Simulates one replication.
+		 *
+		 * @param point double[]  the parameter values
+		 * @param seed long  the seed of the replication
+		 * @return double the output of the replication
+		 */
+		double simulate(double[] point, long seed) throws Exception;
+	}
+
+	/**
+	 * A prediction of the metamodel.
+	 */
+	public static class Prediction {
+
+		/** Predicted output */
+		public final double mean;
+
+		/** Standard error of the prediction */
+		public final double standardError;
+
+		/** Tells if the point was simulated to answer the query */
+		public final boolean simulated;
+
+		Prediction(double mean, double standardError, boolean simulated) {
+			this.mean = mean;
+			this.standardError = standardError;
+			this.simulated = simulated;
+		}
+
+		/**
+		 * Returns the lower end of the band of z standard errors.
+		 */
+		public double getLower(double z) {
+			return mean - z * standardError;
+		}
+
+		/**
+		 * Returns the upper end of the band of z standard errors.
+		 */
+		public double getUpper(double z) {
+			return mean + z * standardError;
+		}
+
+		public String toString() {
+			return mean + " +- " + 1.96 * standardError + (simulated ? " (simulated)" : "");
+		}
+	}
+
+	/** Correlation parameters tried by the maximum likelihood fit */
+	private static final double[] THETAS = { 0.5, 1, 2, 5, 10, 20, 50, 100 };
+
+	/** The simulator of new design points */
+	private final Simulator simulator;
+
+	/** Replications per new design point, at least 2 */
+	private final int replications;
+
+	/** Seed of the first replication of the first simulated design point */
+	private final long baseSeed;
+
+	/** Number of design points simulated so far, which numbers their seeds */
+	private long simulatedPoints = 0;
+
+	/** Lower and upper bounds of the parameters, to scale them to [0,1] */
+	private final double[] lower, upper;
+
+	/** Number of threads to simulate with */
+	private final int threads;
+
+	/** Scaled design points */
+	private final List<double[]> points = new ArrayList<double[]>();
+
+	/** Simulated means of the design points */
+	private final List<Double> means = new ArrayList<Double>();
+
+	/** Variances of these means */
+	private final List<Double> variances = new ArrayList<Double>();
+
+	/** Fitted trend, field variance and correlation parameter */
+	private double beta, tau2, theta;
+
+	/** Cholesky factor of the covariance matrix of the design points */
+	private double[][] cholesky;
+
+	/** Inverse covariance matrix times the means minus the trend */
+	private double[] weights;
+
+	/** Inverse covariance matrix times a vector of ones */
+	private double[] onesWeights;
+
+	/** Sum of onesWeights */
+	private double onesSum;
+
+	/**
+	 * Creates an empty metamodel.
+	 *
+	 * @param simulator Simulator  simulates new design points
+	 * @param replications int  replications per new design point, at least 2
+	 * @param baseSeed long  seed of the first replication of the first
+	 *            simulated design point
+	 * @param lower double[]  lower bounds of the parameters
+	 * @param upper double[]  upper bounds of the parameters
+	 * @param threads int  number of threads to simulate with
+	 */
+	public WaitSurrogate(Simulator simulator, int replications, long baseSeed, double[] lower, double[] upper,
+			int threads) {
+		if (replications < 2 || lower.length != upper.length) {
+			throw new IllegalArgumentException("Invalid metamodel setup: replications=" + replications
+					+ ", parameters=" + lower.length + "/" + upper.length);
+		}
+		this.simulator = simulator;
+		this.replications = replications;
+		this.baseSeed = baseSeed;
+		this.lower = lower.clone();
+		this.upper = upper.clone();
+		this.threads = threads;
+	}
+
+	/**
+	 * Adds the results of an already simulated design point, e.g. of a
+	 * sweep. fit() has to be called before the next prediction.
+	 *
+	 * @param point double[]  the parameter values
+	 * @param mean double  the mean output over the replications
+	 * @param variance double  the variance of this mean, i.e. the sample
+	 *            variance of the replications divided by their number
+	 */
+	public synchronized void addDesignPoint(double[] point, double mean, double variance) {
+		points.add(scale(point));
+		means.add(mean);
+		variances.add(variance);
+	}
+
+	/**
+	 * Simulates the given design points with replications in parallel,
+	 * adds them and refits the metamodel. Every point is simulated with
+	 * seeds no other point uses.
+	 *
+	 * @param design List  the parameter values of the design points
+	 */
+	public void simulate(List<double[]> design) throws InterruptedException, ExecutionException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<List<Future<Double>>> results = new ArrayList<List<Future<Double>>>();
+			for (final double[] point : design) {
+				long firstSeed = baseSeed + nextSimulatedPoint() * replications;
+				List<Future<Double>> pointResults = new ArrayList<Future<Double>>();
+				for (int r = 0; r < replications; r++) {
+					final long seed = firstSeed + r;
+					pointResults.add(pool.submit(new Callable<Double>() {
+						public Double call() throws Exception {
+							return simulator.simulate(point, seed);
+						}
+					}));
+				}
+				results.add(pointResults);
+			}
+			for (int i = 0; i < design.size(); i++) {
+				double sum = 0;
+				double squares = 0;
+				for (Future<Double> result : results.get(i)) {
+					double output = result.get();
+					sum += output;
+					squares += output * output;
+				}
+				double mean = sum / replications;
+				double variance = Math.max(squares - replications * mean * mean, 0) / (replications - 1);
+				addDesignPoint(design.get(i), mean, variance / replications);
+			}
+		} finally {
+			pool.shutdown();
+		}
+		fit();
+	}
+
+	/**
+	 * Numbers the next simulated design point.
+	 */
+	private synchronized long nextSimulatedPoint() {
+		return simulatedPoints++;
+	}
+
+	/**
+	 * Fits the metamodel to the design points. The correlation parameter is
+	 * chosen by maximum likelihood from a fixed grid, the field variance by
+	 * the method of moments.
+	 */
+	public synchronized void fit() {
+		int n = points.size();
+		if (n == 0) {
+			throw new IllegalStateException("No design points to fit the metamodel to");
+		}
+		double meanOfMeans = 0;
+		double meanNoise = 0;
+		for (int i = 0; i < n; i++) {
+			meanOfMeans += means.get(i) / n;
+			meanNoise += variances.get(i) / n;
+		}
+		double spread = 0;
+		for (int i = 0; i < n; i++) {
+			spread += (means.get(i) - meanOfMeans) * (means.get(i) - meanOfMeans);
+		}
+		spread = n > 1 ? spread / (n - 1) : 0;
+		// the spread of the means is field variance plus noise
+		tau2 = Math.max(spread - meanNoise, 1e-6 * Math.max(spread, 1));
+
+		double bestLikelihood = Double.NEGATIVE_INFINITY;
+		double bestTheta = THETAS[0];
+		for (double candidate : THETAS) {
+			double likelihood = factorize(candidate);
+			if (likelihood > bestLikelihood) {
+				bestLikelihood = likelihood;
+				bestTheta = candidate;
+			}
+		}
+		factorize(bestTheta);
+	}
+
+	/**
+	 * Factorizes the covariance matrix for the given correlation parameter
+	 * and computes the trend and weights.
+	 *
+	 * @return double the log likelihood of the means, up to a constant
+	 */
+	private double factorize(double theta) {
+		this.theta = theta;
+		int n = points.size();
+		double[][] covariance = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < i; j++) {
+				covariance[i][j] = covariance[j][i] = tau2 * correlation(points.get(i), points.get(j));
+			}
+			// a small nugget keeps noise free points factorizable
+			covariance[i][i] = tau2 * (1 + 1e-10) + variances.get(i);
+		}
+		cholesky = cholesky(covariance);
+
+		double[] ones = new double[n];
+		double[] y = new double[n];
+		for (int i = 0; i < n; i++) {
+			ones[i] = 1;
+			y[i] = means.get(i);
+		}
+		onesWeights = solve(ones);
+		onesSum = 0;
+		double yWeighted = 0;
+		for (int i = 0; i < n; i++) {
+			onesSum += onesWeights[i];
+			yWeighted += onesWeights[i] * y[i];
+		}
+		beta = yWeighted / onesSum;
+
+		for (int i = 0; i < n; i++) {
+			y[i] -= beta;
+		}
+		weights = solve(y);
+
+		double logDeterminant = 0;
+		double quadratic = 0;
+		for (int i = 0; i < n; i++) {
+			logDeterminant += 2 * Math.log(cholesky[i][i]);
+			quadratic += y[i] * weights[i];
+		}
+		return -0.5 * (logDeterminant + quadratic);
+	}
+
+	/**
+	 * Predicts the output at the given parameter values.
+	 *
+	 * @param point double[]  the parameter values
+	 * @return Prediction the predicted output and its standard error
+	 */
+	public synchronized Prediction predict(double... point) {
+		if (cholesky == null) {
+			throw new IllegalStateException("The metamodel is not fitted yet");
+		}
+		double[] x = scale(point);
+		int n = points.size();
+		double[] r = new double[n];
+		double mean = beta;
+		double onesR = 0;
+		for (int i = 0; i < n; i++) {
+			r[i] = tau2 * correlation(x, points.get(i));
+			mean += r[i] * weights[i];
+			onesR += onesWeights[i] * r[i];
+		}
+		// r' K^-1 r by forward substitution with the Cholesky factor
+		double explained = 0;
+		for (int i = 0; i < n; i++) {
+			double v = r[i];
+			for (int j = 0; j < i; j++) {
+				v -= cholesky[i][j] * r[j];
+			}
+			r[i] = v / cholesky[i][i];
+			explained += r[i] * r[i];
+		}
+		double trendError = 1 - onesR;
+		double variance = tau2 - explained + trendError * trendError / onesSum;
+		return new Prediction(mean, Math.sqrt(Math.max(variance, 0)), false);
+	}
+
+	/**
+	 * Predicts the output at the given parameter values. If the standard
+	 * error of the prediction is above the given limit, the point is
+	 * simulated first and added to the design.
+	 *
+	 * @param maxStandardError double  largest acceptable standard error
+	 * @param point double[]  the parameter values
+	 * @return Prediction the predicted output and its standard error
+	 */
+	public Prediction query(double maxStandardError, double... point) throws InterruptedException,
+			ExecutionException {
+		Prediction prediction = predict(point);
+		if (prediction.standardError <= maxStandardError) {
+			return prediction;
+		}
+		List<double[]> design = new ArrayList<double[]>();
+		design.add(point);
+		simulate(design);
+		prediction = predict(point);
+		return new Prediction(prediction.mean, prediction.standardError, true);
+	}
+
+	/**
+	 * Returns the number of design points.
+	 */
+	public synchronized int getDesignPoints() {
+		return points.size();
+	}
+
+	/**
+	 * Returns the correlation of two scaled points.
+	 */
+	private double correlation(double[] a, double[] b) {
+		double distance = 0;
+		for (int k = 0; k < a.length; k++) {
+			distance += (a[k] - b[k]) * (a[k] - b[k]);
+		}
+		return Math.exp(-theta * distance);
+	}
+
+	/**
+	 * Scales parameter values to [0,1] by the parameter bounds.
+	 */
+	private double[] scale(double[] point) {
+		if (point.length != lower.length) {
+			throw new IllegalArgumentException("Expected " + lower.length + " parameters, got " + point.length);
+		}
+		double[] scaled = new double[point.length];
+		for (int k = 0; k < point.length; k++) {
+			scaled[k] = (point[k] - lower[k]) / (upper[k] - lower[k]);
+		}
+		return scaled;
+	}
+
+	/**
+	 * Returns the lower Cholesky factor of a symmetric positive definite
+	 * matrix.
+	 */
+	private static double[][] cholesky(double[][] matrix) {
+		int n = matrix.length;
+		double[][] factor = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j <= i; j++) {
+				double sum = matrix[i][j];
+				for (int k = 0; k < j; k++) {
+					sum -= factor[i][k] * factor[j][k];
+				}
+				if (i == j) {
+					if (sum <= 0) {
+						throw new IllegalStateException("Covariance matrix of the design points is singular");
+					}
+					factor[i][i] = Math.sqrt(sum);
+				} else {
+					factor[i][j] = sum / factor[j][j];
+				}
+			}
+		}
+		return factor;
+	}
+
+	/**
+	 * Solves K x = b with the Cholesky factor of K.
+	 */
+	private double[] solve(double[] b) {
+		int n = b.length;
+		double[] x = new double[n];
+		for (int i = 0; i < n; i++) {
+			double sum = b[i];
+			for (int j = 0; j < i; j++) {
+				sum -= cholesky[i][j] * x[j];
+			}
+			x[i] = sum / cholesky[i][i];
+		}
+		for (int i = n - 1; i >= 0; i--) {
+			double sum = x[i];
+			for (int j = i + 1; j < n; j++) {
+				sum -= cholesky[j][i] * x[j];
+			}
+			x[i] = sum / cholesky[i][i];
+		}
+		return x;
+	}
+}